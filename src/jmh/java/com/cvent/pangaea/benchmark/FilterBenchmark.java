@@ -0,0 +1,137 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.filter.EnvironmentIdentifierFilter;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.filter.EnvironmentModifierFilter;
+import com.cvent.pangaea.filter.EnvironmentValidationFilter;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per request cost of the container filters. Every benchmark creates a fresh Jersey request, since the filters parse
+ * (and may replace) its URI; {@link #createRequest()} measures that part alone. Run with the gc profiler (the default
+ * {@code jmh.args}), {@code gc.alloc.rate.norm} is the number of bytes each request allocates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    private static final URI BASE_URI = URI.create("http://localhost:8080/");
+    private static final URI WITH_ENVIRONMENT = URI.create(
+            "http://localhost:8080/events/1234/attendees?environment=S410&limit=50&offset=100");
+    private static final URI WITH_PRODUCTION = URI.create(
+            "http://localhost:8080/events/1234/attendees?environment=production&limit=50&offset=100");
+    private static final URI WITH_UNKNOWN = URI.create(
+            "http://localhost:8080/events/1234/attendees?environment=junk&limit=50&offset=100");
+    private static final URI WITHOUT_ENVIRONMENT = URI.create(
+            "http://localhost:8080/events/1234/attendees?limit=50&offset=100");
+
+    private final EnvironmentIdentifierFilter identifierFilter = new EnvironmentIdentifierFilter();
+    private final EnvironmentModifierFilter modifierFilter = new EnvironmentModifierFilter("P2", "production", "prod");
+    private final EnvironmentValidationFilter validationFilter = new EnvironmentValidationFilter(
+            Collections.singletonList(environments()), Pattern.compile("S\\d+"));
+
+    private static MultiEnvAware<ServiceConfig> environments() {
+        MultiEnvAware<ServiceConfig> environments = new MultiEnvAware<>();
+        environments.put("S410", ServiceConfig.small("410"));
+        environments.put("P2", ServiceConfig.small("2"));
+        return environments;
+    }
+
+    private static ContainerRequest request(URI uri) {
+        return new ContainerRequest(BASE_URI, uri, "GET", null, new MapPropertiesDelegate());
+    }
+
+    @Benchmark
+    public ContainerRequest createRequest() {
+        return request(WITH_ENVIRONMENT);
+    }
+
+    /**
+     * The request and the response filter, as they run for every request
+     */
+    @Benchmark
+    public ContainerRequest identify() {
+        ContainerRequest request = request(WITH_ENVIRONMENT);
+        identifierFilter.filter(request);
+        identifierFilter.filter(request, null);
+        return request;
+    }
+
+    @Benchmark
+    public ContainerRequest identifyWithoutEnvironment() {
+        ContainerRequest request = request(WITHOUT_ENVIRONMENT);
+        identifierFilter.filter(request);
+        identifierFilter.filter(request, null);
+        return request;
+    }
+
+    @Benchmark
+    public ContainerRequest modifyUnchanged() {
+        ContainerRequest request = request(WITH_ENVIRONMENT);
+        modifierFilter.filter(request);
+        return request;
+    }
+
+    @Benchmark
+    public ContainerRequest modifyReplaced() {
+        ContainerRequest request = request(WITH_PRODUCTION);
+        modifierFilter.filter(request);
+        return request;
+    }
+
+    @Benchmark
+    public ContainerRequest validateKnown() {
+        ContainerRequest request = request(WITH_ENVIRONMENT);
+        validationFilter.filter(request);
+        return request;
+    }
+
+    /**
+     * A request for an unknown environment, aborted with a cached error body
+     */
+    @Benchmark
+    public ContainerRequest validateUnknown() {
+        ContainerRequest request = request(WITH_UNKNOWN);
+        validationFilter.filter(request);
+        return request;
+    }
+
+    /**
+     * Every filter of a request for an alias, sharing a single scan of the query
+     */
+    @Benchmark
+    public ContainerRequest filterChain() {
+        ContainerRequest request = request(WITH_PRODUCTION);
+        modifierFilter.filter(request);
+        validationFilter.filter(request);
+        identifierFilter.filter(request);
+        identifierFilter.filter(request, null);
+        return request;
+    }
+
+    /**
+     * What reading the environment used to cost: decoding the whole query into a map
+     */
+    @Benchmark
+    public String decodeQueryParameters() {
+        return request(WITH_ENVIRONMENT).getUriInfo().getQueryParameters().getFirst("environment");
+    }
+}
@@ -0,0 +1,77 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.BaseEnvironmentConfiguration;
+import com.cvent.pangaea.MultiEnvAware;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares lookups on a {@link MultiEnvAware} with lookups on a {@link MultiEnvAware#freeze() frozen} one
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrozenMultiEnvAwareBenchmark {
+
+    @Param({"10", "200"})
+    public int environments;
+
+    private MultiEnvAware<BaseEnvironmentConfiguration> mutable;
+    private MultiEnvAware<BaseEnvironmentConfiguration> frozen;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setup() {
+        mutable = new MultiEnvAware<>();
+        frozen = new MultiEnvAware<>();
+        keys = new String[environments];
+        for (int i = 0; i < environments; i++) {
+            BaseEnvironmentConfiguration config = new BaseEnvironmentConfiguration();
+            config.setDefaultEnvironmentConfiguration(i == 0);
+            // Build the keys the way requests do, so their hash codes aren't cached yet when they are looked up
+            keys[i] = new StringBuilder("S").append(100 + i).toString();
+            mutable.put(keys[i], config);
+            frozen.put(keys[i], config);
+        }
+        frozen.freeze();
+    }
+
+    private String nextKey() {
+        next = (next + 1) % keys.length;
+        return new String(keys[next]);
+    }
+
+    @Benchmark
+    public BaseEnvironmentConfiguration getConfigured() {
+        return mutable.get(nextKey());
+    }
+
+    @Benchmark
+    public BaseEnvironmentConfiguration getConfiguredFrozen() {
+        return frozen.get(nextKey());
+    }
+
+    @Benchmark
+    public BaseEnvironmentConfiguration getDefault() {
+        return mutable.get(null);
+    }
+
+    @Benchmark
+    public BaseEnvironmentConfiguration getDefaultFrozen() {
+        return frozen.get(null);
+    }
+}
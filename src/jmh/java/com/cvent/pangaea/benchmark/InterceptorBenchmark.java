@@ -0,0 +1,189 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.util.EnvironmentUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import retrofit.RequestInterceptor;
+
+/**
+ * Per request cost of the Retrofit 1 and Retrofit 2 interceptors, with a fixed environment and with the environment of
+ * the current request
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterceptorBenchmark {
+
+    private static final Request REQUEST = new Request.Builder()
+            .url("http://localhost:8080/events/1234/attendees?limit=50&offset=100")
+            .build();
+
+    private final com.cvent.pangaea.interceptor.EnvironmentInterceptor retrofitFixed =
+            new com.cvent.pangaea.interceptor.EnvironmentInterceptor("S410");
+    private final com.cvent.pangaea.interceptor.EnvironmentInterceptor retrofitFromRequest =
+            new com.cvent.pangaea.interceptor.EnvironmentInterceptor();
+    private final com.cvent.pangaea.retrofit2.interceptor.EnvironmentInterceptor retrofit2Fixed =
+            new com.cvent.pangaea.retrofit2.interceptor.EnvironmentInterceptor("S410");
+    private final com.cvent.pangaea.retrofit2.interceptor.EnvironmentInterceptor retrofit2FromRequest =
+            new com.cvent.pangaea.retrofit2.interceptor.EnvironmentInterceptor();
+
+    private final QueryCollector facade = new QueryCollector();
+    private final ProceedingChain chain = new ProceedingChain();
+
+    @Setup(Level.Iteration)
+    public void setEnvironment() {
+        EnvironmentUtil.setEnvironment("S410");
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeEnvironment() {
+        EnvironmentUtil.removeEnvironment();
+    }
+
+    @Benchmark
+    public int retrofitFixed() {
+        facade.reset();
+        retrofitFixed.intercept(facade);
+        return facade.length();
+    }
+
+    @Benchmark
+    public int retrofitFromRequest() {
+        facade.reset();
+        retrofitFromRequest.intercept(facade);
+        return facade.length();
+    }
+
+    @Benchmark
+    public Request retrofit2Fixed() throws IOException {
+        return retrofit2Fixed.intercept(chain).request();
+    }
+
+    @Benchmark
+    public Request retrofit2FromRequest() throws IOException {
+        return retrofit2FromRequest.intercept(chain).request();
+    }
+
+    /**
+     * Collects the query parameters added by a Retrofit 1 interceptor
+     */
+    private static final class QueryCollector implements RequestInterceptor.RequestFacade {
+
+        private final StringBuilder query = new StringBuilder();
+
+        void reset() {
+            query.setLength(0);
+        }
+
+        int length() {
+            return query.length();
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addPathParam(String name, String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addEncodedPathParam(String name, String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addQueryParam(String name, String value) {
+            query.append(name).append('=').append(value);
+        }
+
+        @Override
+        public void addEncodedQueryParam(String name, String value) {
+            query.append(name).append('=').append(value);
+        }
+    }
+
+    /**
+     * A Retrofit 2 chain that answers every request without sending it
+     */
+    private static final class ProceedingChain implements Interceptor.Chain {
+
+        @Override
+        public Request request() {
+            return REQUEST;
+        }
+
+        @Override
+        public Response proceed(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @Override
+        public Call call() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.LazyMultiEnvAware;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.MultiEnvSupportException;
+import com.cvent.pangaea.SiloTemplateResolver;
+import io.dropwizard.jackson.Jackson;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link MultiEnvAware#get} paths (configured, default, resolved from the template, unknown), single threaded and
+ * contended, with and without the silo index, and {@link MultiEnvAware#convert}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiEnvAwareBenchmark {
+
+    private static final int CONTENDED_THREADS = 4;
+
+    @Param({"10", "200"})
+    public int environments;
+
+    private MultiEnvAware<ServiceConfig> configured;
+    private MultiEnvAware<ServiceConfig> templated;
+    private MultiEnvAware<ServiceConfig> indexed;
+    private String[] keys;
+    private int[] silos;
+    private final AtomicLong nextSilo = new AtomicLong(100_000);
+
+    @Setup
+    public void setup() {
+        configured = new MultiEnvAware<>();
+        templated = new LazyMultiEnvAware<>(new SiloTemplateResolver<>(ServiceConfig.class,
+                Jackson.newObjectMapper()));
+        indexed = new MultiEnvAware<>();
+        indexed.setSiloIndex(true);
+        keys = new String[environments];
+        silos = new int[environments];
+        for (int i = 0; i < environments; i++) {
+            silos[i] = 100 + i;
+            keys[i] = "S" + silos[i];
+            ServiceConfig config = ServiceConfig.small(keys[i]);
+            config.setDefaultEnvironmentConfiguration(i == 0);
+            configured.put(keys[i], config);
+            indexed.put(keys[i], config);
+        }
+        ServiceConfig template = ServiceConfig.small("XXX");
+        template.setTemplate(true);
+        templated.put("template", template);
+        // Resolved once here, so the resolved benchmarks only measure the lookup
+        templated.get("S1");
+    }
+
+    /**
+     * The key of a request, each thread cycles through every configured environment
+     */
+    @State(Scope.Thread)
+    public static class Request {
+
+        private int next;
+
+        String key(String[] keys) {
+            next = (next + 1) % keys.length;
+            return keys[next];
+        }
+
+        int silo(int[] silos) {
+            next = (next + 1) % silos.length;
+            return silos[next];
+        }
+    }
+
+    @Benchmark
+    public ServiceConfig getConfigured(Request request) {
+        return configured.get(request.key(keys));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public ServiceConfig getConfiguredContended(Request request) {
+        return configured.get(request.key(keys));
+    }
+
+    @Benchmark
+    public ServiceConfig getIndexed(Request request) {
+        return indexed.get(request.key(keys));
+    }
+
+    @Benchmark
+    public ServiceConfig getIndexedBySilo(Request request) {
+        return indexed.get(request.silo(silos));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public ServiceConfig getIndexedBySiloContended(Request request) {
+        return indexed.get(request.silo(silos));
+    }
+
+    @Benchmark
+    public ServiceConfig getDefault() {
+        return configured.get(null);
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public ServiceConfig getDefaultContended() {
+        return configured.get(null);
+    }
+
+    @Benchmark
+    public ServiceConfig getResolved() {
+        return templated.get("S1");
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public ServiceConfig getResolvedContended() {
+        return templated.get("S1");
+    }
+
+    /**
+     * Resolve a new environment from the template, the environment is removed again so the instance doesn't grow
+     */
+    @Benchmark
+    public ServiceConfig resolveFromTemplate() {
+        String key = "S" + nextSilo.incrementAndGet();
+        ServiceConfig resolved = templated.get(key);
+        templated.remove(key);
+        return resolved;
+    }
+
+    @Benchmark
+    public Object getUnknown() {
+        try {
+            return configured.get("S1");
+        } catch (MultiEnvSupportException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public MultiEnvAware<String> convert() {
+        return configured.convert((env, config) -> config.getUrl());
+    }
+}
@@ -0,0 +1,114 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.BaseEnvironmentConfiguration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A representative environment configuration for the benchmarks, with {@code XXX} wherever the silo number goes
+ */
+public class ServiceConfig extends BaseEnvironmentConfiguration {
+
+    private static final int LARGE_SIZE = 50;
+
+    private String url;
+    private DatabaseConfig database = new DatabaseConfig();
+    private List<String> hosts = new ArrayList<>();
+    private Map<String, String> settings = new LinkedHashMap<>();
+
+    /**
+     * @param silo the silo number, or XXX for a template
+     * @return a configuration with a handful of fields
+     */
+    public static ServiceConfig small(String silo) {
+        ServiceConfig config = new ServiceConfig();
+        config.url = "https://a1-" + silo + "-api.a1.cvent.com/v1";
+        config.database.url = "jdbc:sqlserver://a1-dba-" + silo + ".a1.cvent.com;database=CVENT_PROD";
+        config.database.user = "svc_pangaea";
+        config.hosts.add("a1-" + silo + "-web01.a1.cvent.com");
+        config.settings.put("timeout", "5s");
+        return config;
+    }
+
+    /**
+     * @param silo the silo number, or XXX for a template
+     * @return a configuration with a few hundred fields, a few of them depending on the silo
+     */
+    public static ServiceConfig large(String silo) {
+        ServiceConfig config = small(silo);
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            config.hosts.add("a1-" + silo + "-web" + i + ".a1.cvent.com");
+            config.settings.put("feature.flag." + i, i % 2 == 0 ? "enabled" : "disabled");
+            config.settings.put("endpoint." + i, "https://shared-" + i + ".a1.cvent.com/api");
+        }
+        return config;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public DatabaseConfig getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(DatabaseConfig database) {
+        this.database = database;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<String> hosts) {
+        this.hosts = hosts;
+    }
+
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    public void setSettings(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Nested database settings
+     */
+    public static class DatabaseConfig {
+
+        private String url;
+        private String user;
+        private int maxSize = 32;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public void setUser(String user) {
+            this.user = user;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
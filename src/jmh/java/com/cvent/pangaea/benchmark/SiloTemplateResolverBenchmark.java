@@ -0,0 +1,57 @@
+package com.cvent.pangaea.benchmark;
+
+import com.cvent.pangaea.CompiledSiloTemplateResolver;
+import com.cvent.pangaea.SiloTemplateResolver;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving an environment from a small and a large template with {@link SiloTemplateResolver} and
+ * {@link CompiledSiloTemplateResolver}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SiloTemplateResolverBenchmark {
+
+    @Param({"small", "large"})
+    public String size;
+
+    private ServiceConfig template;
+    private SiloTemplateResolver<ServiceConfig> resolver;
+    private CompiledSiloTemplateResolver<ServiceConfig> compiledResolver;
+
+    @Setup
+    public void setup() {
+        ObjectMapper mapper = Jackson.newObjectMapper();
+        template = "large".equals(size) ? ServiceConfig.large("XXX") : ServiceConfig.small("XXX");
+        template.setTemplate(true);
+        resolver = new SiloTemplateResolver<>(ServiceConfig.class, mapper);
+        compiledResolver = new CompiledSiloTemplateResolver<>(ServiceConfig.class, mapper);
+    }
+
+    @Benchmark
+    public ServiceConfig resolve() {
+        return resolver.resolve("S410", template);
+    }
+
+    @Benchmark
+    public ServiceConfig resolveCompiled() {
+        return compiledResolver.resolve("S410", template);
+    }
+}
@@ -0,0 +1,66 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+
+/**
+ * A drop in replacement for {@link SiloTemplateResolver} that analyses the template once instead of writing it to JSON
+ * and parsing it back for every silo.
+ *
+ * The first resolve converts the template to a tree and records where the XXX placeholder appears. Every silo after
+ * that only copies the parts of the tree that hold the placeholder and binds the result directly from the tree, so
+ * the resolved values are the same as the ones {@link SiloTemplateResolver} produces.
+ *
+ * The plan is rebuilt whenever a different template instance is passed in.
+ *
+ * @param <T> The type T that will get dynamically resolved at runtime
+ */
+public class CompiledSiloTemplateResolver<T> implements TemplateResolver<T> {
+
+    private final Class<T> classType;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private volatile CompiledTemplate<T> compiled;
+
+    public CompiledSiloTemplateResolver(Class<T> classType, ObjectMapper mapper) {
+        this.classType = classType;
+        this.mapper = mapper;
+        this.reader = mapper.readerFor(classType);
+    }
+
+    @Override
+    public T resolve(String key, T value) {
+        if (value == null) {
+            return null;
+        }
+        CompiledTemplate<T> current = compiled;
+        if (current == null || current.template != value) {
+            current = new CompiledTemplate<>(value, TemplatePlan.compile(mapper.valueToTree(value),
+                    SiloTemplateResolver.SILO_REPLACEMENT_DIGITS));
+            compiled = current;
+        }
+        try {
+            return reader.readValue(current.plan.apply(key.substring(1)));
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Failed to resolve %s for environment %s",
+                    classType.getSimpleName(), key), ex);
+        }
+    }
+
+    /**
+     * The template instance a plan was compiled from
+     *
+     * @param <T> The type of the template
+     */
+    private static final class CompiledTemplate<T> {
+
+        private final T template;
+        private final TemplatePlan plan;
+
+        CompiledTemplate(T template, TemplatePlan plan) {
+            this.template = template;
+            this.plan = plan;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * The structural difference between two environment configuration trees, see {@link MultiEnvAware#reload}.
+ *
+ * Environments are compared by their whole subtree first, so an unchanged environment costs a single
+ * {@link JsonNode#equals}. Only changed environments are walked to find the JSON pointers (relative to the environment)
+ * of the values that differ: objects field by field, arrays of the same length element by element, and everything
+ * else as a whole.
+ */
+final class ConfigurationDiff {
+
+    private final Map<String, JsonNode> added = new LinkedHashMap<>();
+    private final Map<String, JsonNode> changed = new LinkedHashMap<>();
+    private final Map<String, List<String>> changedPaths = new LinkedHashMap<>();
+    private final Set<String> removed = new TreeSet<>();
+    private final Set<String> unchanged = new LinkedHashSet<>();
+
+    /**
+     * @param previous the environments before, or null if they aren't known, every environment counts as added then
+     * @param next the environments after
+     */
+    ConfigurationDiff(JsonNode previous, JsonNode next) {
+        for (Iterator<Map.Entry<String, JsonNode>> fields = next.fields(); fields.hasNext();) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode before = previous == null ? null : previous.get(field.getKey());
+            if (before == null) {
+                added.put(field.getKey(), field.getValue());
+            } else if (before.equals(field.getValue())) {
+                unchanged.add(field.getKey());
+            } else {
+                List<String> paths = new ArrayList<>();
+                compare("", before, field.getValue(), paths);
+                changed.put(field.getKey(), field.getValue());
+                changedPaths.put(field.getKey(), Collections.unmodifiableList(paths));
+            }
+        }
+        if (previous != null) {
+            previous.fieldNames().forEachRemaining(key -> {
+                if (!next.has(key)) {
+                    removed.add(key);
+                }
+            });
+        }
+    }
+
+    private static void compare(String path, JsonNode before, JsonNode after, List<String> paths) {
+        if (before.equals(after)) {
+            return;
+        }
+        if (before.isObject() && after.isObject()) {
+            Set<String> names = new TreeSet<>();
+            before.fieldNames().forEachRemaining(names::add);
+            after.fieldNames().forEachRemaining(names::add);
+            for (String name : names) {
+                String child = path + "/" + name.replace("~", "~0").replace("/", "~1");
+                if (!before.has(name) || !after.has(name)) {
+                    paths.add(child);
+                } else {
+                    compare(child, before.get(name), after.get(name), paths);
+                }
+            }
+        } else if (before.isArray() && after.isArray() && before.size() == after.size()) {
+            for (int i = 0; i < before.size(); i++) {
+                compare(path + "/" + i, before.get(i), after.get(i), paths);
+            }
+        } else {
+            paths.add(path.isEmpty() ? "/" : path);
+        }
+    }
+
+    /**
+     * @param <T> - configuration object for specific environment
+     * @param binder - binds the configuration of an environment
+     * @return every new or changed environment bound, by name
+     */
+    <T> Map<String, T> bind(BiFunction<String, JsonNode, ? extends T> binder) {
+        Map<String, T> bound = new LinkedHashMap<>();
+        added.forEach((key, node) -> bound.put(key, binder.apply(key, node)));
+        changed.forEach((key, node) -> bound.put(key, binder.apply(key, node)));
+        return bound;
+    }
+
+    /**
+     * @param filter - selects environments, for example template environments
+     * @return the new, changed and removed environments the filter selects
+     */
+    Set<String> touched(Predicate<String> filter) {
+        Set<String> touched = new TreeSet<>();
+        added.keySet().stream().filter(filter).forEach(touched::add);
+        changed.keySet().stream().filter(filter).forEach(touched::add);
+        removed.stream().filter(filter).forEach(touched::add);
+        return touched;
+    }
+
+    /**
+     * @return the configuration of every environment that is new, by name
+     */
+    Map<String, JsonNode> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the new configuration of every environment that changed, by name
+     */
+    Map<String, JsonNode> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the JSON pointers of the values that differ in every environment that changed, by name
+     */
+    Map<String, List<String>> getChangedPaths() {
+        return changedPaths;
+    }
+
+    /**
+     * @return the environments that are gone
+     */
+    Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the environments whose configuration is the same
+     */
+    Set<String> getUnchanged() {
+        return unchanged;
+    }
+}
@@ -0,0 +1,65 @@
+package com.cvent.pangaea;
+
+import java.util.Locale;
+
+/**
+ * What a {@link ValueDeduplicator} shared so far, see {@link ValueDeduplicator#getReport()}. The heap saved is an
+ * estimate, assuming compressed references and two bytes per char.
+ */
+public final class DeduplicationReport {
+
+    private static final double KIB = 1024;
+
+    private final long values;
+    private final long sharedValues;
+    private final long sharedObjects;
+    private final long bytesSaved;
+
+    /**
+     * @param values the number of values deduplicated
+     * @param sharedValues the number of strings and immutable values replaced with an equal instance
+     * @param sharedObjects the number of objects of shared types replaced with an identical instance
+     * @param bytesSaved the estimated heap the replaced instances took
+     */
+    DeduplicationReport(long values, long sharedValues, long sharedObjects, long bytesSaved) {
+        this.values = values;
+        this.sharedValues = sharedValues;
+        this.sharedObjects = sharedObjects;
+        this.bytesSaved = bytesSaved;
+    }
+
+    /**
+     * @return the number of values deduplicated
+     */
+    public long getValues() {
+        return values;
+    }
+
+    /**
+     * @return the number of strings and immutable values replaced with an equal instance
+     */
+    public long getSharedValues() {
+        return sharedValues;
+    }
+
+    /**
+     * @return the number of objects of shared types replaced with an identical instance
+     */
+    public long getSharedObjects() {
+        return sharedObjects;
+    }
+
+    /**
+     * @return the estimated heap the replaced instances took, which can be collected unless something else still
+     * references them
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Deduplicated %d values: shared %d strings and values and %d objects, "
+                + "saving about %.1f KiB", values, sharedValues, sharedObjects, bytesSaved / KIB);
+    }
+}
@@ -0,0 +1,124 @@
+package com.cvent.pangaea;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The origin, creation time and access count of the entries of one {@link MultiEnvAware}, see
+ * {@link MultiEnvAware#setEntryStatistics}. Counting an access is a map lookup and a {@link LongAdder} increment, so
+ * concurrent lookups of the same environment don't contend.
+ */
+final class EntryStatistics {
+
+    private final Clock clock;
+    private final ConcurrentMap<String, Stats> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param clock the clock to take creation times from
+     */
+    EntryStatistics(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Start over for an environment whose value was just added
+     *
+     * @param key - environment name
+     * @param origin - where the value came from
+     */
+    void added(String key, EnvironmentEntry.Origin origin) {
+        entries.put(key, new Stats(origin, clock.instant()));
+    }
+
+    /**
+     * Start counting an environment that was added before statistics were enabled, its creation time isn't known
+     *
+     * @param key - environment name
+     * @param origin - where the value came from
+     */
+    void seen(String key, EnvironmentEntry.Origin origin) {
+        entries.putIfAbsent(key, new Stats(origin, null));
+    }
+
+    /**
+     * Count a lookup of an environment
+     *
+     * @param key - environment name
+     */
+    void accessed(String key) {
+        Stats stats = entries.get(key);
+        if (stats != null) {
+            stats.accesses.increment();
+        }
+    }
+
+    /**
+     * Forget an environment whose value was removed
+     *
+     * @param key - environment name
+     */
+    void removed(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Forget every environment
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @param key - environment name
+     * @return what is known about the environment, or null if it wasn't added while statistics were enabled
+     */
+    Stats get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return the current time
+     */
+    Instant now() {
+        return clock.instant();
+    }
+
+    /**
+     * The statistics of one entry
+     */
+    static final class Stats {
+
+        private final EnvironmentEntry.Origin origin;
+        private final Instant created;
+        private final LongAdder accesses = new LongAdder();
+
+        private Stats(EnvironmentEntry.Origin origin, Instant created) {
+            this.origin = origin;
+            this.created = created;
+        }
+
+        /**
+         * @return where the value came from
+         */
+        EnvironmentEntry.Origin origin() {
+            return origin;
+        }
+
+        /**
+         * @return when the value was added, or null if not known
+         */
+        Instant created() {
+            return created;
+        }
+
+        /**
+         * @return how often the value was looked up
+         */
+        long accesses() {
+            return accesses.sum();
+        }
+    }
+}
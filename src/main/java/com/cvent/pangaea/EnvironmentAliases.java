@@ -0,0 +1,244 @@
+package com.cvent.pangaea;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Maps alternative names of environments (for example "production", "prod" and "pr01") to their canonical name ("P2").
+ * Shared by {@link MultiEnvAware#setAliases}, the filters and the interceptors, so an alias can be used anywhere an
+ * environment name is accepted without rewriting the request.
+ *
+ * The aliases and canonical names are kept in an open addressing table, so canonicalizing a name is a single hash
+ * lookup that doesn't allocate, even when matching ignores case. Every alias of an environment resolves to the very
+ * same canonical String instance.
+ *
+ * <pre>
+ *    EnvironmentAliases aliases = EnvironmentAliases.builder()
+ *            .alias("P2", "production", "prod", "pr01")
+ *            .caseInsensitive(true)
+ *            .build();
+ * </pre>
+ */
+public final class EnvironmentAliases {
+
+    /**
+     * No aliases at all, every name is canonical
+     */
+    public static final EnvironmentAliases NONE = new EnvironmentAliases(Collections.emptyMap(), false);
+
+    /**
+     * Mix the high bits of the hash into the low bits used to pick a slot, like {@link java.util.HashMap} does
+     */
+    private static final int HASH_SPREAD_SHIFT = 16;
+    private static final int HASH_MULTIPLIER = 31;
+
+    private final Map<String, Set<String>> aliases;
+    private final boolean caseInsensitive;
+
+    /**
+     * Open addressing table with linear probing, at most half full so probe sequences stay short
+     */
+    private final String[] names;
+    private final int[] hashes;
+    private final String[] canonicals;
+    private final int mask;
+
+    private EnvironmentAliases(Map<String, Set<String>> aliases, boolean caseInsensitive) {
+        this.aliases = aliases;
+        this.caseInsensitive = caseInsensitive;
+
+        Map<String, String> byName = new LinkedHashMap<>();
+        Map<String, String> byFoldedName = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : aliases.entrySet()) {
+            String canonical = entry.getKey();
+            add(byName, byFoldedName, canonical, canonical);
+            for (String alias : entry.getValue()) {
+                add(byName, byFoldedName, alias, canonical);
+            }
+        }
+
+        int capacity = byName.isEmpty() ? 0 : Integer.highestOneBit(Math.max(2, byName.size() * 2 - 1)) << 1;
+        this.names = new String[capacity];
+        this.hashes = new int[capacity];
+        this.canonicals = new String[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, String> entry : byName.entrySet()) {
+            String name = entry.getKey();
+            int hash = hash(name);
+            int slot = hash & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            hashes[slot] = hash;
+            canonicals[slot] = entry.getValue();
+        }
+    }
+
+    private void add(Map<String, String> byName, Map<String, String> byFoldedName, String name, String canonical) {
+        String folded = caseInsensitive ? fold(name) : name;
+        String existing = byFoldedName.putIfAbsent(folded, canonical);
+        if (existing != null && !existing.equals(canonical)) {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' can't be an alias of both %s and %s", name, existing, canonical));
+        }
+        byName.putIfAbsent(name, canonical);
+    }
+
+    /**
+     * @return a builder for aliases
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param aliases the aliases of each canonical environment name, for example bound from the configuration
+     * @param caseInsensitive {@code true} to ignore case when matching names
+     * @return the aliases
+     * @throws IllegalArgumentException if a name is blank, or an alias of more than one environment
+     */
+    public static EnvironmentAliases of(Map<String, ? extends Collection<String>> aliases, boolean caseInsensitive) {
+        Builder builder = builder().caseInsensitive(caseInsensitive);
+        aliases.forEach(builder::alias);
+        return builder.build();
+    }
+
+    /**
+     * @param name an environment name or alias, may be null
+     * @return the canonical name if {@code name} is an alias (or a canonical name in a different case), otherwise
+     * {@code name} itself
+     */
+    public String canonical(String name) {
+        if (name == null || mask < 0) {
+            return name;
+        }
+        int hash = hash(name);
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && (caseInsensitive ? names[slot].equalsIgnoreCase(name)
+                    : names[slot].equals(name))) {
+                return canonicals[slot];
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @return {@code true} if there are no aliases
+     */
+    public boolean isEmpty() {
+        return aliases.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if matching names ignores case
+     */
+    public boolean isCaseInsensitive() {
+        return caseInsensitive;
+    }
+
+    /**
+     * @return the aliases of each canonical environment name
+     */
+    public Map<String, Set<String>> asMap() {
+        return aliases;
+    }
+
+    private int hash(String name) {
+        int hash;
+        if (caseInsensitive) {
+            // Fold case the way String.equalsIgnoreCase compares, without creating a folded copy
+            hash = 0;
+            for (int i = 0; i < name.length(); i++) {
+                hash = HASH_MULTIPLIER * hash + fold(name.charAt(i));
+            }
+        } else {
+            hash = name.hashCode();
+        }
+        return hash ^ (hash >>> HASH_SPREAD_SHIFT);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String fold(String name) {
+        char[] folded = new char[name.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(name.charAt(i));
+        }
+        return new String(folded);
+    }
+
+    @Override
+    public String toString() {
+        return "EnvironmentAliases" + aliases + (caseInsensitive ? " (case insensitive)" : "");
+    }
+
+    /**
+     * Builds {@link EnvironmentAliases}
+     */
+    public static final class Builder {
+
+        private final Map<String, Set<String>> aliases = new LinkedHashMap<>();
+        private boolean caseInsensitive;
+
+        private Builder() {
+        }
+
+        /**
+         * @param canonical the canonical environment name
+         * @param names its aliases, may be null
+         * @return this builder
+         */
+        public Builder alias(String canonical, String... names) {
+            return alias(canonical, names == null ? Collections.<String>emptyList() : Arrays.asList(names));
+        }
+
+        /**
+         * @param canonical the canonical environment name
+         * @param names its aliases
+         * @return this builder
+         */
+        public Builder alias(String canonical, Collection<String> names) {
+            if (StringUtils.isBlank(canonical)) {
+                throw new IllegalArgumentException("The canonical environment name cannot be blank");
+            }
+            Set<String> existing = aliases.computeIfAbsent(canonical, key -> new LinkedHashSet<>());
+            for (String name : names) {
+                if (StringUtils.isBlank(name)) {
+                    throw new IllegalArgumentException("An alias of " + canonical + " cannot be blank");
+                }
+                existing.add(name);
+            }
+            return this;
+        }
+
+        /**
+         * @param ignoreCase {@code true} to ignore case when matching names, defaults to {@code false}
+         * @return this builder
+         */
+        public Builder caseInsensitive(boolean ignoreCase) {
+            this.caseInsensitive = ignoreCase;
+            return this;
+        }
+
+        /**
+         * @return the aliases
+         * @throws IllegalArgumentException if a name is an alias of more than one environment
+         */
+        public EnvironmentAliases build() {
+            Map<String, Set<String>> copy = new LinkedHashMap<>();
+            aliases.forEach((canonical, names) -> copy.put(canonical,
+                    Collections.unmodifiableSet(new LinkedHashSet<>(names))));
+            return new EnvironmentAliases(Collections.unmodifiableMap(copy), caseInsensitive);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * What a {@link MultiEnvAware} knows about one of its environments, see {@link MultiEnvAware#describeEntries}. The
+ * creation time and access count are only known while entry statistics are enabled with
+ * {@link MultiEnvAware#setEntryStatistics}.
+ */
+public final class EnvironmentEntry {
+
+    /**
+     * Where the value of an environment came from
+     */
+    public enum Origin {
+        /**
+         * Configured (or derived from a configured environment by a view)
+         */
+        CONFIGURED,
+        /**
+         * Resolved from the template environment
+         */
+        TEMPLATE,
+        /**
+         * Built by the creation function
+         */
+        CREATED
+    }
+
+    private final String environment;
+    private final Origin origin;
+    private final boolean bound;
+    private final Instant created;
+    private final Duration age;
+    private final long accessCount;
+
+    /**
+     * @param environment the environment name
+     * @param origin where the value came from
+     * @param bound {@code false} if the environment is configured but hasn't been bound (or derived) yet
+     * @param created when the value was added, or null if not known
+     * @param age how long ago the value was added, or null if not known
+     * @param accessCount how often the value was looked up, or -1 if not known
+     */
+    EnvironmentEntry(String environment, Origin origin, boolean bound, Instant created, Duration age,
+            long accessCount) {
+        this.environment = environment;
+        this.origin = origin;
+        this.bound = bound;
+        this.created = created;
+        this.age = age;
+        this.accessCount = accessCount;
+    }
+
+    /**
+     * @return the environment name
+     */
+    @JsonProperty
+    public String getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return where the value came from
+     */
+    @JsonProperty
+    public Origin getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return {@code false} if the environment is configured but hasn't been bound (or derived) yet
+     */
+    @JsonProperty
+    public boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * @return when the value was added, or null if entry statistics weren't enabled at the time
+     */
+    @JsonProperty
+    public Instant getCreated() {
+        return created;
+    }
+
+    /**
+     * @return how long ago the value was added when this was described, or null if not known
+     */
+    @JsonProperty
+    public Duration getAge() {
+        return age;
+    }
+
+    /**
+     * @return how often the value was looked up since it was added, or -1 if not known
+     */
+    @JsonProperty
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(environment).append(' ').append(origin);
+        if (!bound) {
+            builder.append(" (not bound)");
+        }
+        if (age != null) {
+            builder.append(" age=").append(age);
+        }
+        if (accessCount >= 0) {
+            builder.append(" accesses=").append(accessCount);
+        }
+        return builder.toString();
+    }
+}
@@ -12,6 +12,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 class ExampleConfiguration {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     /**
      * This property uses a custom deserializer so that we can inject the template resolver after this gets deserialized
      * from a configuration.
@@ -19,30 +21,75 @@ class ExampleConfiguration {
     @JsonProperty
     private MultiEnvAware<MultiEnvConfig> environmentConfig;
 
+    /**
+     * Views of the environment config, created on first use so calling the getters for every request is cheap
+     */
+    @JsonIgnore
+    private volatile MultiEnvAware<String> surveyUrlDefaultDomains;
+    @JsonIgnore
+    private volatile MultiEnvAware<String> surveyUrlAppRoots;
+    @JsonIgnore
+    private volatile MultiEnvAware<String> supportedEnvironments;
+    @JsonIgnore
+    private volatile MultiEnvAware<MultiEnvConfig> resolvedEnvironmentConfig;
+
+    /**
+     * @return the survey url default domain of every environment
+     */
     @JsonIgnore
     public MultiEnvAware<String> getSurveyUrlDefaultDomains() {
-        return environmentConfig.convert((env, conf) -> conf.getSurveyUrlDefaultDomain(),
-                new SiloTemplateResolver<>(String.class, new ObjectMapper()));
+        if (surveyUrlDefaultDomains == null) {
+            surveyUrlDefaultDomains = environmentConfig.view((env, conf) -> conf.getSurveyUrlDefaultDomain(),
+                    new SiloTemplateResolver<>(String.class, MAPPER));
+        }
+        return surveyUrlDefaultDomains;
     }
 
+    /**
+     * @return the survey url app root of every environment
+     */
     @JsonIgnore
     public MultiEnvAware<String> getSurveyUrlAppRoots() {
-        return environmentConfig.convert((env, conf) -> conf.getSurveyUrlAppRoot(),
-                new SiloTemplateResolver<>(String.class, new ObjectMapper()));
+        if (surveyUrlAppRoots == null) {
+            surveyUrlAppRoots = environmentConfig.view((env, conf) -> conf.getSurveyUrlAppRoot(),
+                    new SiloTemplateResolver<>(String.class, MAPPER));
+        }
+        return surveyUrlAppRoots;
     }
 
+    /**
+     * @return the name of every environment
+     */
     @JsonIgnore
     public MultiEnvAware<String> getSupportedEnvironments() {
-        return environmentConfig.convert((env, conf) -> env);
+        if (supportedEnvironments == null) {
+            supportedEnvironments = environmentConfig.view((env, conf) -> env);
+        }
+        return supportedEnvironments;
     }
 
+    /**
+     * Replace the environment config, which also drops the views of the previous one
+     *
+     * @param environmentConfig
+     */
     public void setEnvironmentConfig(MultiEnvAware<MultiEnvConfig> environmentConfig) {
         this.environmentConfig = environmentConfig;
+        this.surveyUrlDefaultDomains = null;
+        this.surveyUrlAppRoots = null;
+        this.supportedEnvironments = null;
+        this.resolvedEnvironmentConfig = null;
     }
 
+    /**
+     * @return the environment config, resolving environments that aren't configured from the template
+     */
     public MultiEnvAware<MultiEnvConfig> getEnvironmentConfig() {
-        return environmentConfig.convert((env, conf) -> conf, new SiloTemplateResolver<>(MultiEnvConfig.class, 
-            new ObjectMapper()));
+        if (resolvedEnvironmentConfig == null) {
+            resolvedEnvironmentConfig = environmentConfig.view((env, conf) -> conf,
+                    new SiloTemplateResolver<>(MultiEnvConfig.class, MAPPER));
+        }
+        return resolvedEnvironmentConfig;
     }
 
     /**
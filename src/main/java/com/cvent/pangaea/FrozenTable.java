@@ -0,0 +1,141 @@
+package com.cvent.pangaea;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The configured environments of a frozen {@link MultiEnvAware}, see {@link MultiEnvAware#freeze()}.
+ *
+ * The environments are copied into an open addressing table that stores the hash of every key next to it, so a
+ * lookup is an array probe and (almost always) a single {@link String#equals}. The default environment is looked up
+ * once, and configured silos ({@code S<number>}) are kept in an array so they can be found without building their
+ * name.
+ *
+ * @param <T> - configuration object for specific environment
+ */
+final class FrozenTable<T> {
+
+    /**
+     * Mix the high bits of the hash into the low bits used to pick a slot, like {@link java.util.HashMap} does
+     */
+    private static final int HASH_SPREAD_SHIFT = 16;
+
+    /**
+     * Open addressing table with linear probing, at most half full so probe sequences stay short
+     */
+    private final String[] keys;
+    private final int[] hashes;
+    private final Object[] values;
+    private final int mask;
+
+    /**
+     * Configured silos by silo number
+     */
+    private final Object[] silos;
+
+    /**
+     * The slot of the default environment, or -1 if there is none
+     */
+    private final int defaultSlot;
+
+    /**
+     * @param configured the configured environments, all bound
+     * @param defaultKey the default environment, or null if there is none
+     */
+    FrozenTable(Map<String, T> configured, String defaultKey) {
+        int capacity = Integer.highestOneBit(Math.max(2, configured.size() * 2 - 1)) << 1;
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, T> entry : configured.entrySet()) {
+            int hash = spread(entry.getKey().hashCode());
+            int slot = hash & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = entry.getKey();
+            hashes[slot] = hash;
+            values[slot] = entry.getValue();
+        }
+        int maxSilo = configured.keySet().stream().mapToInt(SiloKeyedMap::silo).max().orElse(-1);
+        this.silos = new Object[maxSilo + 1];
+        configured.forEach((key, value) -> {
+            int silo = SiloKeyedMap.silo(key);
+            if (silo >= 0) {
+                silos[silo] = value;
+            }
+        });
+        this.defaultSlot = defaultKey == null ? -1 : probe(defaultKey);
+    }
+
+    /**
+     * @param <T> - configuration object for specific environment
+     * @param snapshot - the environments of a {@link MultiEnvAware}
+     * @return a table of the environments that are bound and weren't resolved
+     */
+    static <T> FrozenTable<T> of(MultiEnvSnapshot<T> snapshot) {
+        Map<String, T> configured = new LinkedHashMap<>();
+        snapshot.map().forEach((key, value) -> {
+            if (!snapshot.resolved().contains(key)) {
+                configured.put(key, value);
+            }
+        });
+        return new FrozenTable<>(configured, snapshot.defaultEnvironment());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> HASH_SPREAD_SHIFT);
+    }
+
+    private int probe(String key) {
+        int hash = spread(key.hashCode());
+        for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && key.equals(keys[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key - canonical environment name
+     * @return the slot of the environment, the slot of the default environment for a blank one, or -1 if the
+     * environment isn't in this table
+     */
+    int find(String key) {
+        if (key == null) {
+            return defaultSlot;
+        }
+        int slot = probe(key);
+        // Blank environments are never configured, so they only need to be checked once the lookup missed
+        return slot < 0 && StringUtils.isBlank(key) ? defaultSlot : slot;
+    }
+
+    /**
+     * @param slot - a slot returned by {@link #find}
+     * @return the environment name in the slot
+     */
+    String key(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @param slot - a slot returned by {@link #find}
+     * @return the value in the slot
+     */
+    @SuppressWarnings("unchecked")
+    T value(int slot) {
+        return (T) values[slot];
+    }
+
+    /**
+     * @param silo - silo number
+     * @return the value of environment {@code S<silo>}, or null if it isn't in this table
+     */
+    @SuppressWarnings("unchecked")
+    T silo(int silo) {
+        return silo >= 0 && silo < silos.length ? (T) silos[silo] : null;
+    }
+}
@@ -0,0 +1,161 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import io.dropwizard.validation.BaseValidator;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+/**
+ * Deserializes a {@link MultiEnvAware} without binding every environment up front.
+ *
+ * Each environment is kept as its raw tree and only bound to {@code T} (and validated) the first time it is requested,
+ * so a configuration with hundreds of environments starts as fast as one with a few. Use it on the configuration
+ * property instead of {@code @Valid}, which would bind everything while validating the configuration:
+ *
+ * <pre>
+ *    &#64;JsonProperty
+ *    &#64;NotEmpty
+ *    &#64;JsonDeserialize(using = LazyBindingDeserializer.class)
+ *    private MultiEnvAware&lt;MultiEnvConfig&gt; environmentConfig;
+ * </pre>
+ *
+ * Default and template environments are found by looking at the {@code defaultEnvironmentConfiguration} and
+ * {@code template} properties of {@link BaseEnvironmentConfiguration}, and only those environments are bound while
+ * the configuration is read. Values implementing {@link MultiEnvDefaultedConfiguration} or
+ * {@link MultiEnvTemplateConfiguration} some other way are all bound up front since they can't be detected.
+ *
+ * Binding failures (invalid yaml or failed validation) surface from {@link MultiEnvAware#get(Object)} for that
+ * environment; {@link MultiEnvAware#bindAllAsync} validates everything in the background to find them early.
+ */
+public class LazyBindingDeserializer extends StdDeserializer<MultiEnvAware<Object>> implements
+        ContextualDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String DEFAULT_PROPERTY = "defaultEnvironmentConfiguration";
+    private static final String TEMPLATE_PROPERTY = "template";
+
+    private final JavaType valueType;
+
+    public LazyBindingDeserializer() {
+        this(null);
+    }
+
+    private LazyBindingDeserializer(JavaType valueType) {
+        super(MultiEnvAware.class);
+        this.valueType = valueType;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property) {
+        JavaType type = property != null ? property.getType() : ctxt.getContextualType();
+        JavaType[] parameters = ctxt.getTypeFactory().findTypeParameters(type, MultiEnvAware.class);
+        return new LazyBindingDeserializer(parameters.length == 1 ? parameters[0] : ctxt.constructType(Object.class));
+    }
+
+    @Override
+    public MultiEnvAware<Object> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonNode tree = ctxt.readValue(p, JsonNode.class);
+        if (tree == null || !tree.isObject()) {
+            throw JsonMappingException.from(p, "Expected an object of environments for " + valueType);
+        }
+
+        Binder binder = new Binder(ctxt, valueType);
+        Class<?> rawType = valueType.getRawClass();
+        boolean detectable = BaseEnvironmentConfiguration.class.isAssignableFrom(rawType);
+        boolean flagged = MultiEnvDefaultedConfiguration.class.isAssignableFrom(rawType)
+                || MultiEnvTemplateConfiguration.class.isAssignableFrom(rawType);
+
+        MultiEnvAware<Object> result = new MultiEnvAware<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = tree.fields(); fields.hasNext();) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String key = field.getKey();
+            JsonNode node = field.getValue();
+            if (flagged && (!detectable || isDefaultOrTemplate(node))) {
+                result.put(key, binder.bind(key, node));
+            } else {
+                result.defer(key, env -> binder.bind(env, node));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isDefaultOrTemplate(JsonNode node) {
+        return node.path(DEFAULT_PROPERTY).asBoolean(false) || node.path(TEMPLATE_PROPERTY).asBoolean(false);
+    }
+
+    /**
+     * Binds and validates the raw tree of a single environment using the same Jackson configuration (and modules)
+     * that read the rest of the configuration
+     */
+    private static final class Binder {
+
+        private final DefaultDeserializationContext context;
+        private final DeserializationConfig config;
+        private final JsonDeserializer<Object> deserializer;
+        private final JavaType valueType;
+
+        Binder(DeserializationContext ctxt, JavaType valueType) throws JsonMappingException {
+            if (!(ctxt instanceof DefaultDeserializationContext)) {
+                throw JsonMappingException.from(ctxt, "Lazy binding requires a DefaultDeserializationContext");
+            }
+            this.context = (DefaultDeserializationContext) ctxt;
+            this.config = ctxt.getConfig();
+            this.deserializer = ctxt.findRootValueDeserializer(valueType);
+            this.valueType = valueType;
+        }
+
+        Object bind(String key, JsonNode node) {
+            Object value;
+            try (JsonParser parser = new TreeTraversingParser(node)) {
+                parser.nextToken();
+                value = deserializer.deserialize(parser, context.createInstance(config, parser, null));
+            } catch (IOException ex) {
+                throw new IllegalStateException(String.format("Failed to bind configuration for environment %s",
+                        key), ex);
+            }
+            if (value != null) {
+                validate(key, value);
+            }
+            return value;
+        }
+
+        private void validate(String key, Object value) {
+            Set<ConstraintViolation<Object>> violations = Validation.VALIDATOR.validate(value);
+            if (!violations.isEmpty()) {
+                throw new IllegalStateException(String.format("Invalid %s configuration for environment %s: %s",
+                        valueType.getRawClass().getSimpleName(), key, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "))));
+            }
+        }
+    }
+
+    /**
+     * Holder so the validator is only built once something is actually bound
+     */
+    private static final class Validation {
+
+        private static final Validator VALIDATOR = BaseValidator.newValidator();
+
+        private Validation() {
+        }
+    }
+}
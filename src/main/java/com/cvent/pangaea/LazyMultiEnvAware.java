@@ -1,5 +1,9 @@
 package com.cvent.pangaea;
 
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 /**
  * This implementation allows us to resolve values within a configuration at runtime (lazy).  This is useful for
  * non-production environments where we can spin up many regions based on a convention and resolve things like urls
@@ -16,11 +20,24 @@ public class LazyMultiEnvAware<T> extends MultiEnvAware<T> {
         this.templateResolver = templateResolver;
     }
 
+    @Override
+    protected boolean resolvesFromTemplate() {
+        return true;
+    }
+
     @Override
     protected T resolve(String sKey, T value) {
-        T seed = templateResolver.resolve(sKey, value);
-        addInternalMap(sKey, seed);
-        return seed;
+        return templateResolver.resolve(sKey, value);
+    }
+
+    @Override
+    protected T resolve(String sKey, T value, Map<String, String> variables) {
+        return templateResolver.resolve(sKey, value, variables);
+    }
+
+    @Override
+    protected CompletionStage<T> resolveAsync(String sKey, T value, Executor executor) {
+        return templateResolver.resolveAsync(sKey, value, executor);
     }
 
 }
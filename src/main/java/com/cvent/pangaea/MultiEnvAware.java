@@ -1,14 +1,44 @@
 package com.cvent.pangaea;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import java.util.function.ToLongBiFunction;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -20,16 +50,98 @@ public class MultiEnvAware<T> implements Map<String, T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(MultiEnvAware.class);
 
-    private final Map<String, T> map = new ConcurrentHashMap<>();
-    private String defaultEnvironment = null;
-    private static final String DEFAULT_TEMPLATE_ENVIRONMENT_NAME = "NONE";    
-    private String templateEnvironment = DEFAULT_TEMPLATE_ENVIRONMENT_NAME;
+    static final String DEFAULT_TEMPLATE_ENVIRONMENT_NAME = "NONE";
+
+    /**
+     * The environments and the default and template environment names, replaced as a whole by {@link #reconfigure}
+     * so a reader that reads it once never mixes environments of an old and a new configuration
+     */
+    private volatile MultiEnvSnapshot<T> snapshot = new MultiEnvSnapshot<>(new ConcurrentHashMap<>(), null,
+            DEFAULT_TEMPLATE_ENVIRONMENT_NAME);
+
+    /**
+     * Whether environments are kept in a {@link SiloKeyedMap}, see {@link #setSiloIndex}
+     */
+    private volatile boolean siloIndex;
+
+    /**
+     * How long callers wait on another thread that is already creating the same environment
+     */
+    public static final Duration DEFAULT_CREATION_TIMEOUT = Duration.ofSeconds(30);
+
+    private Duration creationTimeout = DEFAULT_CREATION_TIMEOUT;
+
+    /**
+     * Eviction policy for resolved and created entries, or null when those entries are kept forever
+     */
+    private ResolvedEntries<T> resolvedEntries;
+
+    /**
+     * Defaults for remembering and logging requests for environments that don't exist
+     */
+    public static final long DEFAULT_UNKNOWN_ENVIRONMENT_CACHE_SIZE = 10_000;
+    public static final Duration DEFAULT_UNKNOWN_ENVIRONMENT_TTL = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_UNKNOWN_ENVIRONMENT_LOG_INTERVAL = Duration.ofMinutes(1);
+
+    private UnknownEnvironments unknownEnvironments = new UnknownEnvironments(DEFAULT_UNKNOWN_ENVIRONMENT_CACHE_SIZE,
+            DEFAULT_UNKNOWN_ENVIRONMENT_TTL, DEFAULT_UNKNOWN_ENVIRONMENT_LOG_INTERVAL, false, this::knownEnvironments);
+
+    /**
+     * Views derived from this instance with {@link #view}, told about every change so they can drop converted values
+     */
+    private final List<WeakReference<MultiEnvAware<?>>> views = new CopyOnWriteArrayList<>();
+
+    /**
+     * Primitive values derived from this instance with {@link #convertToInt} and friends, told about every change
+     */
+    private final List<WeakReference<MultiEnvPrimitive<?>>> primitives = new CopyOnWriteArrayList<>();
+
+    /**
+     * When this instance is a view: the instance it is derived from, and how to derive a value from it
+     */
+    private MultiEnvAware<?> source;
+    private Function<String, T> derivation;
 
     /**
      * A function that accepts an environment and creates the multi-env value for that environment
      */
     private Function<String, T> creationFunction;
 
+    /**
+     * The creation function set with {@link #setAsyncCreationFunction}, {@link #creationFunction} waits for it
+     */
+    private Function<String, ? extends CompletionStage<T>> asyncCreationFunction;
+
+    /**
+     * Where {@link #getAsync} builds values and evicted values are shut down
+     */
+    private Executor creationExecutor = ForkJoinPool.commonPool();
+
+    /**
+     * Alternative names of environments, canonicalized before every lookup
+     */
+    private volatile EnvironmentAliases aliases = EnvironmentAliases.NONE;
+
+    /**
+     * Templates of environment families, chosen by key pattern before falling back to the template environment
+     */
+    private volatile TemplateRoutes templateRoutes = TemplateRoutes.NONE;
+
+    /**
+     * Metrics of this instance, null unless enabled with {@link #setMetrics}
+     */
+    private volatile MultiEnvMetrics metrics;
+
+    /**
+     * Origin, creation time and access count of every entry, null unless enabled with {@link #setEntryStatistics}
+     */
+    private volatile EntryStatistics entryStatistics;
+
+    /**
+     * The configured environments in a table that is cheaper to read, null unless this instance is frozen
+     */
+    private volatile FrozenTable<T> frozen;
+
     /**
      * A constant that allows us to reference the same query string param across all our services
      */
@@ -56,27 +168,202 @@ public class MultiEnvAware<T> implements Map<String, T> {
      */
     @SuppressWarnings("unchecked")
     public <R> MultiEnvAware<R> convert(BiFunction<String, T, R> func, TemplateResolver tr) {
+        MultiEnvSnapshot<T> s = snapshot;
         MultiEnvAware<R> result;
-        if (this.hasTemplateEnvironment() && tr != null) {
+        if ((s.hasTemplateEnvironment() || !templateRoutes.isEmpty()) && tr != null) {
             result = new LazyMultiEnvAware<>(tr);
         } else {
             result = new MultiEnvAware<>();
         }
-        for (Entry<String, T> entry : map.entrySet()) {
+        result.setSiloIndex(siloIndex);
+        // Environments that aren't bound yet are converted when they are first requested. Walk them before the bound
+        // ones so an environment bound in the meantime is still converted (put replaces the deferred conversion)
+        for (String key : s.deferred().keySet()) {
+            result.defer(key, env -> func.apply(env, get(env)));
+        }
+        for (Entry<String, T> entry : s.map().entrySet()) {
             R r = func.apply(entry.getKey(), entry.getValue());
             result.put(entry.getKey(), r);
         }
-        result.defaultEnvironment = this.defaultEnvironment;
-        result.templateEnvironment = this.templateEnvironment;
+        result.snapshot = result.snapshot.withEnvironments(s.defaultEnvironment(), s.templateEnvironment());
+        result.creationTimeout = this.creationTimeout;
+        result.creationExecutor = this.creationExecutor;
+        result.aliases = this.aliases;
+        result.templateRoutes = this.templateRoutes;
+        result.unknownEnvironments = this.unknownEnvironments.copyFor(result::knownEnvironments);
+        return result;
+    }
+
+    /**
+     * Create a view of this instance with every value transformed. Unlike {@link #convert(BiFunction)} nothing is
+     * copied up front: a value is transformed the first time it is requested and then kept until the environment it
+     * was derived from changes in this instance, so a getter can return the same view over and over cheaply.
+     *
+     * @param <R>
+     * @param func - transformation function
+     * @return a view of this instance
+     */
+    public <R> MultiEnvAware<R> view(BiFunction<String, T, R> func) {
+        return view(func, null);
+    }
+
+    /**
+     * Create a view of this instance with every value transformed. Unlike
+     * {@link #convert(BiFunction, TemplateResolver)} nothing is copied up front: a value is transformed the first
+     * time it is requested and then kept until the environment it was derived from changes in this instance, so a
+     * getter can return the same view over and over cheaply. The view follows the default and template environments
+     * of this instance, and resolves environments that aren't configured from the transformed template using the
+     * given resolver.
+     *
+     * @param <R>
+     * @param func - transformation function
+     * @param tr The template resolver to use, or null to only transform configured environments
+     * @return a view of this instance
+     */
+    public <R> MultiEnvAware<R> view(BiFunction<String, T, R> func, TemplateResolver<R> tr) {
+        MultiEnvAware<R> result;
+        if ((this.hasTemplateEnvironment() || !templateRoutes.isEmpty()) && tr != null) {
+            result = new LazyMultiEnvAware<>(tr);
+        } else {
+            result = new MultiEnvAware<>();
+        }
+        result.setSiloIndex(siloIndex);
+        result.source = this;
+        result.derivation = env -> func.apply(env, get(env));
+        result.creationTimeout = this.creationTimeout;
+        result.creationExecutor = this.creationExecutor;
+        result.aliases = this.aliases;
+        result.templateRoutes = this.templateRoutes;
+        result.unknownEnvironments = this.unknownEnvironments.copyFor(result::knownEnvironments);
+        result.sourceChanged(null);
+        views.add(new WeakReference<>(result));
         return result;
     }
 
+    /**
+     * Called on a view when an environment changed in the instance it is derived from
+     *
+     * @param key - the environment that changed, or null if every environment may have changed
+     */
+    private void sourceChanged(String key) {
+        MultiEnvSnapshot<?> from = source.snapshot;
+        MultiEnvSnapshot<T> s = snapshot.withEnvironments(from.defaultEnvironment(), from.templateEnvironment());
+        snapshot = s;
+
+        Set<String> changed = new HashSet<>();
+        if (key == null) {
+            changed.addAll(s.map().keySet());
+            changed.addAll(s.deferred().keySet());
+            changed.addAll(from.map().keySet());
+            changed.addAll(from.deferred().keySet());
+        } else {
+            changed.add(key);
+            if (key.equals(s.templateEnvironment()) || templateRoutes.getTemplateEnvironments().contains(key)) {
+                // Everything this view resolved from the old template is stale as well
+                s.map().keySet().stream()
+                        .filter(env -> !source.containsKey(env) && key.equals(templateEnvironment(from, env)))
+                        .forEach(changed::add);
+            }
+        }
+
+        for (String env : changed) {
+            if (source.containsKey(env)) {
+                // A new function instance per change, so a derivation that is still running for the old value can
+                // tell it has been replaced
+                s.deferred().put(env, derivation::apply);
+            } else {
+                s.deferred().remove(env);
+            }
+            if (resolvedEntries != null) {
+                resolvedEntries.remove(env);
+            }
+            s.resolved().remove(env);
+            s.map().remove(env);
+            forget(env);
+        }
+        unknownEnvironments.clear();
+        if (frozen != null) {
+            // The changed environments are derived again when they are requested, and rejoin the table then
+            freezeTable();
+        }
+        changed(key);
+    }
+
+    /**
+     * Tell the views derived from this instance that an environment changed
+     *
+     * @param key - the environment that changed, or null if every environment may have changed
+     */
+    private void changed(String key) {
+        for (WeakReference<MultiEnvAware<?>> reference : views) {
+            MultiEnvAware<?> view = reference.get();
+            if (view != null) {
+                view.sourceChanged(key);
+            }
+        }
+        views.removeIf(reference -> reference.get() == null);
+        for (WeakReference<MultiEnvPrimitive<?>> reference : primitives) {
+            MultiEnvPrimitive<?> primitive = reference.get();
+            if (primitive != null) {
+                primitive.sourceChanged(key);
+            }
+        }
+        primitives.removeIf(reference -> reference.get() == null);
+    }
+
+    /**
+     * Derive an {@code int} from every environment, for values read on every request (limits, sizes) that shouldn't
+     * be boxed. Values are derived the first time they are requested and kept until their environment changes in this
+     * instance; environments that aren't configured are resolved (or created, or rejected) by this instance.
+     *
+     * @param func - derives the value of an environment
+     * @return the derived values
+     */
+    public MultiEnvInt convertToInt(ToIntBiFunction<String, ? super T> func) {
+        return new MultiEnvInt(register((env, value) -> func.applyAsInt(env, value)));
+    }
+
+    /**
+     * Derive a {@code long} from every environment, like {@link #convertToInt}
+     *
+     * @param func - derives the value of an environment
+     * @return the derived values
+     */
+    public MultiEnvLong convertToLong(ToLongBiFunction<String, ? super T> func) {
+        return new MultiEnvLong(register(func));
+    }
+
+    /**
+     * Derive a {@code boolean} from every environment (feature flags), like {@link #convertToInt}
+     *
+     * @param func - derives the value of an environment
+     * @return the derived values
+     */
+    public MultiEnvBoolean convertToBoolean(BiPredicate<String, ? super T> func) {
+        return new MultiEnvBoolean(register((env, value) -> func.test(env, value) ? 1 : 0));
+    }
+
+    private MultiEnvPrimitive<T> register(ToLongBiFunction<String, ? super T> func) {
+        MultiEnvPrimitive<T> primitive = new MultiEnvPrimitive<>(this, func);
+        primitives.add(new WeakReference<>(primitive));
+        return primitive;
+    }
+
+    /**
+     * @param key - environment name
+     * @return {@code true} if environments are resolved from it: it is the template environment, or the template of
+     * a route
+     */
+    boolean isTemplateEnvironment(String key) {
+        return key.equals(snapshot.templateEnvironment()) || templateRoutes.getTemplateEnvironments().contains(key);
+    }
+
     /**
      * @return {@code true} if default environment is configured for this instance. Only one default environment is
      * allowed per instance.
      */
     public boolean hasDefaultEnvironment() {
-        return defaultEnvironment != null;
+        return snapshot.defaultEnvironment() != null;
     }
 
     /**
@@ -84,7 +371,10 @@ public class MultiEnvAware<T> implements Map<String, T> {
      */
     @Override
     public int size() {
-        return map.size();
+        MultiEnvSnapshot<T> s = snapshot;
+        int bound = s.map().size();
+        // Binding adds the value before it drops the binder, count an environment that is both only once
+        return bound + (int) s.deferred().keySet().stream().filter(key -> !s.map().containsKey(key)).count();
     }
 
     /**
@@ -92,7 +382,8 @@ public class MultiEnvAware<T> implements Map<String, T> {
      */
     @Override
     public boolean isEmpty() {
-        return map.isEmpty();
+        MultiEnvSnapshot<T> s = snapshot;
+        return s.map().isEmpty() && s.deferred().isEmpty();
     }
 
     /**
@@ -100,15 +391,16 @@ public class MultiEnvAware<T> implements Map<String, T> {
      */
     @Override
     public boolean containsKey(Object key) {
-        return key != null && map.containsKey(key);
+        return key != null && snapshot.containsKey(key instanceof String ? aliases.canonical((String) key) : key);
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Binds every environment that isn't bound yet.
      */
     @Override
     public boolean containsValue(Object value) {
-        return map.containsValue(value);
+        bindAll();
+        return snapshot.map().containsValue(value);
     }
 
     /**
@@ -118,22 +410,71 @@ public class MultiEnvAware<T> implements Map<String, T> {
      * @return String
      */
     public String getKeyOrDefault(String key) {
+        MultiEnvSnapshot<T> s = snapshot;
         if (StringUtils.isBlank(key)) {
-            if (this.hasDefaultEnvironment()) {
-                return defaultEnvironment;
+            if (s.defaultEnvironment() != null) {
+                return s.defaultEnvironment();
             } else {
                 throw new MultiEnvSupportException("[environment] property is mandatory and can't be empty");
             }
         }
-        if (map.containsKey(key)) {
-            return key;
+        String canonical = aliases.canonical(key);
+        if (s.containsKey(canonical)) {
+            return canonical;
+        }
+        String template = templateEnvironment(s, canonical);
+        if (template != null) {
+            return template;
+        }
+        throw unknownEnvironments.reject(canonical, "Failed to find configuration for environment %s");
+    }
+
+    /**
+     * Check whether {@link #get(Object)} would return a value for an environment rather than reject it, without
+     * binding, creating or resolving anything: a blank environment needs a default environment, any other has to be
+     * configured, or else be created by the creation function or resolved from the template.
+     *
+     * @param key - environment name
+     * @return {@code true} if the environment can be looked up
+     */
+    public boolean isResolvable(String key) {
+        MultiEnvSnapshot<T> s = snapshot;
+        if (StringUtils.isBlank(key)) {
+            return s.defaultEnvironment() != null;
+        }
+        String canonical = aliases.canonical(key);
+        if (s.containsKey(canonical)) {
+            return true;
+        }
+        if (unknownEnvironments.isRecentlyRejected(canonical)) {
+            return false;
         }
-        if (this.hasTemplateEnvironment()) {
-            return this.templateEnvironment;
+        return creationFunction != null || (resolvesFromTemplate() && templateEnvironment(s, canonical) != null);
+    }
+
+    /**
+     * Whether environments that aren't configured are resolved from the template, {@link #isResolvable} only counts
+     * them as resolvable if they are. Subclasses that override {@link #resolve(String, Object)} to resolve from the
+     * template return {@code true}.
+     *
+     * @return {@code true} if {@link #resolve(String, Object)} resolves from the template instead of rejecting
+     */
+    protected boolean resolvesFromTemplate() {
+        return false;
+    }
+
+    /**
+     * @param s - the environments to look in
+     * @param key - an environment that isn't configured
+     * @return the configured environment it would be resolved from: the template of the route it matches, or else
+     * the template environment, or null if there is neither
+     */
+    private String templateEnvironment(MultiEnvSnapshot<?> s, String key) {
+        TemplateRoutes.Match match = templateRoutes.match(key);
+        if (match != null && s.containsKey(match.getTemplateEnvironment())) {
+            return match.getTemplateEnvironment();
         }
-        LOG.error("Failed to find environment [{}] in {}", key, this.keySet());
-        throw new MultiEnvSupportException(String.format(
-                "Failed to find configuration for environment %s", key));
+        return s.hasTemplateEnvironment() ? s.templateEnvironment() : null;
     }
 
     /**
@@ -154,8 +495,9 @@ public class MultiEnvAware<T> implements Map<String, T> {
      * @return String
      */
     public String getTemplateKey() {
-        if (this.hasTemplateEnvironment()) {
-            return templateEnvironment;
+        MultiEnvSnapshot<T> s = snapshot;
+        if (s.hasTemplateEnvironment()) {
+            return s.templateEnvironment();
         }
         throw new MultiEnvSupportException("This instance has no template environment configuration");
     }
@@ -166,162 +508,1111 @@ public class MultiEnvAware<T> implements Map<String, T> {
      * @return The template value T or null if it doesn't exist
      */
     public T getTemplate() {
-        return map.get(this.templateEnvironment);
+        return getTemplate(snapshot);
+    }
+
+    private T getTemplate(MultiEnvSnapshot<T> s) {
+        return getTemplate(s, s.templateEnvironment());
+    }
+
+    private T getTemplate(MultiEnvSnapshot<T> s, String templateKey) {
+        T template = s.map().get(templateKey);
+        if (template == null && s.deferred().containsKey(templateKey)) {
+            template = create(s, templateKey);
+        }
+        return template;
+    }
+
+    /**
+     * Like {@link #get(Object)} for environment {@code S<silo>}. With silo indexing enabled (see
+     * {@link #setSiloIndex}) an environment that exists is read from the array without building its name, unless
+     * aliases, resolved entry bounds or entry statistics need the name.
+     *
+     * @param silo - silo number
+     * @return the value of environment {@code S<silo>}
+     */
+    public T get(int silo) {
+        MultiEnvSnapshot<T> s = snapshot;
+        FrozenTable<T> f = frozen;
+        T value = null;
+        if (entryStatistics == null && aliases.isEmpty()) {
+            if (f != null) {
+                value = f.silo(silo);
+            } else if (s.map() instanceof SiloKeyedMap && resolvedEntries == null) {
+                value = ((SiloKeyedMap<T>) s.map()).get(silo);
+            }
+        }
+        if (value == null) {
+            return get(SiloKeyedMap.key(silo));
+        }
+        MultiEnvMetrics m = metrics;
+        if (m != null) {
+            m.hit();
+        }
+        return value;
     }
 
     /**
      * Returns the value to which the specified key is mapped, and adds it to the internal map if it wasn't previously
      * present.
      *
+     * Missing environments are created exactly once: concurrent callers for the same environment wait (up to the
+     * creation timeout) for the first caller to finish instead of building their own copy. A failed creation is not
+     * remembered, so the next call tries again.
+     *
+     * Aliases (see {@link #setAliases}) are replaced by the environment they stand for.
+     *
      * @param key - environment name
      */
     @Override
     public T get(Object key) {
-        String sKey = (String) key;
-        if (StringUtils.isBlank(sKey) && this.hasDefaultEnvironment()) {
-            sKey = defaultEnvironment;
-        } else if (StringUtils.isBlank(sKey)) {
-            throw new MultiEnvSupportException("[environment] property is mandatory and can't be empty");
+        T configured = getFrozen((String) key);
+        if (configured != null) {
+            return configured;
         }
-        T value = map.get(sKey);
+        MultiEnvSnapshot<T> s = snapshot;
+        MultiEnvMetrics m = metrics;
+        String sKey = lookupKey(s, (String) key, m);
+        T value = s.map().get(sKey);
         if (value == null) {
-            if (creationFunction != null) {
-                value = creationFunction.apply(sKey);
-            } else {
-                value = resolve(sKey, getTemplate());
-            }
-
-            if (value != null) {
-                map.put(sKey, value);
+            if (m != null) {
+                m.miss();
             }
+            value = create(s, sKey);
+        } else {
+            hit(sKey, m);
+        }
+        EntryStatistics st = entryStatistics;
+        if (st != null) {
+            st.accessed(sKey);
         }
 
         return value;
     }
 
     /**
-     * An internal method that allows us to add directly to the internal map
-     * 
-     * @param sKey
-     * @param value 
-     */
-    protected void addInternalMap(String sKey, T value) {
-        map.put(sKey, value);
-    }
-    
-    /**
-     * Shortcut to provide default configuration value.
+     * Like {@link #get(Object)}, without tying up the calling thread while a missing environment is created: the
+     * creation runs on the creation executor (see {@link #setCreationExecutor}), or is whatever the asynchronous
+     * creation function (see {@link #setAsyncCreationFunction}) or template resolver returns. Callers of both methods
+     * share a creation that is already in flight. Unlike {@link #get(Object)} the creation timeout doesn't apply.
      *
-     * @return T where T is the value of the default environment if configured
+     * @param key - environment name
+     * @return the value, already completed if the environment exists, or failed with a
+     * {@link MultiEnvSupportException} if it can't be found
      */
-    public T get() {
-        if (this.hasDefaultEnvironment()) {
-            return get(null);
+    public CompletableFuture<T> getAsync(String key) {
+        T configured = getFrozen(key);
+        if (configured != null) {
+            return CompletableFuture.completedFuture(configured);
         }
-        throw new MultiEnvSupportException("This instance has no default environment configuration");
+        MultiEnvSnapshot<T> s = snapshot;
+        MultiEnvMetrics m = metrics;
+        String sKey;
+        try {
+            sKey = lookupKey(s, key, m);
+        } catch (MultiEnvSupportException ex) {
+            return failed(ex);
+        }
+        T value = s.map().get(sKey);
+        if (value != null) {
+            hit(sKey, m);
+            EntryStatistics st = entryStatistics;
+            if (st != null) {
+                st.accessed(sKey);
+            }
+            return CompletableFuture.completedFuture(value);
+        }
+        if (m != null) {
+            m.miss();
+        }
+        return createAsync(s, sKey);
     }
 
     /**
-     * {@inheritDoc}
+     * @return the configured value of the environment from the table of a frozen instance, or null if this instance
+     * isn't frozen or the environment isn't in the table
      */
-    @Override
-    public T put(String key, T value) {
-        if (StringUtils.isBlank(key)) {
-            throw new MultiEnvSupportException(String.format("Expected non-empty value for environment, was: %s", key));
+    private T getFrozen(String key) {
+        FrozenTable<T> f = frozen;
+        int slot = f == null ? -1 : f.find(aliases.canonical(key));
+        if (slot < 0) {
+            return null;
         }
-        boolean isDefaultEnvironment = false;
-        if (value instanceof MultiEnvDefaultedConfiguration) {
-            isDefaultEnvironment = ((MultiEnvDefaultedConfiguration) value).isDefault();
-            if (isDefaultEnvironment && this.hasDefaultEnvironment()) {
-                throw new MultiEnvSupportException(String.format(
-                        "Only one default environment is allowed per instance. Found %s and %s",
-                        key, defaultEnvironment));
-            } else if (isDefaultEnvironment) {
-                this.defaultEnvironment = key;
+        MultiEnvMetrics m = metrics;
+        if (m != null) {
+            if (StringUtils.isBlank(key)) {
+                m.defaulted();
             }
+            m.hit();
         }
-        if (value instanceof MultiEnvTemplateConfiguration) {
-            boolean isTemplateEnvironment = ((MultiEnvTemplateConfiguration) value).isTemplate();
-            if (isTemplateEnvironment && this.hasTemplateEnvironment()) {
-                throw new MultiEnvSupportException(String.format(
-                        "Only one template environment is allowed per instance. Found %s and %s",
-                        key, templateEnvironment));
-            } else if (isTemplateEnvironment && isDefaultEnvironment) {
-                throw new MultiEnvSupportException(String.format(
-                        "You cannot have a configuration be a default and a template at the same time. Found %s", key));
-            } else if (isTemplateEnvironment) {
-                this.templateEnvironment = key;
-            }
+        EntryStatistics st = entryStatistics;
+        if (st != null) {
+            st.accessed(f.key(slot));
         }
-        return map.put(key, value);
+        return f.value(slot);
     }
 
     /**
-     * {@inheritDoc}
+     * @return the environment to look up: the canonical name, or the default environment for a blank one
      */
-    @Override
-    public T remove(Object key) {
-        return map.remove(key);
+    private String lookupKey(MultiEnvSnapshot<T> s, String key, MultiEnvMetrics m) {
+        if (StringUtils.isBlank(key) && s.defaultEnvironment() != null) {
+            if (m != null) {
+                m.defaulted();
+            }
+            return s.defaultEnvironment();
+        } else if (StringUtils.isBlank(key)) {
+            throw new MultiEnvSupportException("[environment] property is mandatory and can't be empty");
+        }
+        return aliases.canonical(key);
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void putAll(Map<? extends String, ? extends T> m) {
-        map.putAll(m);
+    private void hit(String sKey, MultiEnvMetrics m) {
+        if (m != null) {
+            m.hit();
+        }
+        if (resolvedEntries != null) {
+            resolvedEntries.recordAccess(sKey);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Create the value for an environment that isn't in the internal map yet without blocking, or share the creation
+     * that is already in flight.
+     *
+     * @param s - the environments to add the value to
+     * @param sKey - environment name
+     * @return the created value
      */
-    @Override
-    public void clear() {
-        map.clear();
+    private CompletableFuture<T> createAsync(MultiEnvSnapshot<T> s, String sKey) {
+        MultiEnvSupportException rejection = unknownEnvironments.recall(sKey);
+        if (rejection != null) {
+            return failed(rejection);
+        }
+
+        CompletableFuture<T> creation = new CompletableFuture<>();
+        CompletableFuture<T> existing = s.inFlight().putIfAbsent(sKey, creation);
+        if (existing != null) {
+            // A dependent copy, so a caller that completes or cancels it can't affect the other callers
+            return existing.thenApply(Function.identity());
+        }
+
+        CompletionStage<T> built;
+        try {
+            // Another thread may have finished creating this environment between our miss and claiming the key
+            T value = s.map().get(sKey);
+            built = value != null ? CompletableFuture.completedFuture(value) : buildAsync(s, sKey);
+        } catch (RuntimeException | Error ex) {
+            built = failed(ex);
+        }
+        built.whenComplete((value, ex) -> {
+            if (ex == null) {
+                creation.complete(value);
+            } else {
+                creation.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                        ? ex.getCause() : ex);
+            }
+            s.inFlight().remove(sKey, creation);
+        });
+        return creation.thenApply(Function.identity());
     }
 
     /**
-     * {@inheritDoc}
+     * The asynchronous form of {@link #build}: bindings and synchronous creation functions run on the creation
+     * executor, an asynchronous creation function or template resolver is only started there.
+     *
+     * @param s - the environments to add the value to
+     * @param sKey - environment name
+     * @return the built value
      */
-    @Override
-    public Set<String> keySet() {
-        return map.keySet();
+    private CompletionStage<T> buildAsync(MultiEnvSnapshot<T> s, String sKey) {
+        Executor executor = creationExecutor;
+        if (s.deferred().containsKey(sKey) || (creationFunction != null && asyncCreationFunction == null)) {
+            return CompletableFuture.supplyAsync(() -> build(s, sKey), executor);
+        }
+
+        MultiEnvMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        CompletionStage<T> building;
+        EnvironmentEntry.Origin origin;
+        if (asyncCreationFunction != null) {
+            origin = EnvironmentEntry.Origin.CREATED;
+            building = asyncCreationFunction.apply(sKey);
+        } else {
+            origin = EnvironmentEntry.Origin.TEMPLATE;
+            if (m != null) {
+                m.templateFallback();
+            }
+            TemplateRoutes.Match match = route(s, sKey);
+            if (match == null) {
+                // Binding the template may take a while as well
+                building = CompletableFuture.supplyAsync(() -> getTemplate(s), executor)
+                        .thenCompose(template -> resolveAsync(sKey, template, executor));
+            } else {
+                building = CompletableFuture.supplyAsync(() -> resolve(sKey,
+                        getTemplate(s, match.getTemplateEnvironment()), match.getVariables()), executor);
+            }
+        }
+        return building.thenApply(value -> {
+            if (m != null && origin == EnvironmentEntry.Origin.CREATED) {
+                m.created(System.nanoTime() - start);
+            } else if (m != null) {
+                m.resolved(System.nanoTime() - start);
+            }
+            if (value != null) {
+                addResolved(s, sKey, value, origin);
+            }
+            return value;
+        });
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Collection<T> values() {
-        return map.values();
+    private static <T> CompletableFuture<T> failed(Throwable ex) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(ex);
+        return failed;
     }
 
     /**
-     * {@inheritDoc}
+     * Create the value for an environment that isn't in the internal map yet, or wait for the thread that is already
+     * creating it. A value created while {@link #reconfigure} swaps the environments is returned to the callers that
+     * asked for it, but not kept.
+     *
+     * @param s - the environments to add the value to
+     * @param sKey - environment name
+     * @return the created value
      */
-    @Override
-    public Set<Entry<String, T>> entrySet() {
-        return map.entrySet();
+    private T create(MultiEnvSnapshot<T> s, String sKey) {
+        MultiEnvSupportException rejection = unknownEnvironments.recall(sKey);
+        if (rejection != null) {
+            throw rejection;
+        }
+
+        CompletableFuture<T> creation = new CompletableFuture<>();
+        CompletableFuture<T> existing = s.inFlight().putIfAbsent(sKey, creation);
+        if (existing != null) {
+            return await(sKey, existing);
+        }
+
+        try {
+            // Another thread may have finished creating this environment between our miss and claiming the key
+            T value = s.map().get(sKey);
+            if (value == null) {
+                value = build(s, sKey);
+            }
+            creation.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            creation.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            s.inFlight().remove(sKey, creation);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Build the value for an environment by binding its deferred configuration, or else using the creation function,
+     * or the template if there is no creation function, and add it to the internal map.
+     *
+     * @param s - the environments to add the value to
+     * @param sKey - environment name
+     * @return the built value
      */
-    @Override
-    public String toString() {
-        return map.toString();
+    private T build(MultiEnvSnapshot<T> s, String sKey) {
+        Function<String, T> binder = s.deferred().get(sKey);
+        if (binder != null) {
+            T value = binder.apply(sKey);
+            if (value != null) {
+                s.map().put(sKey, value);
+            }
+            if (!s.deferred().remove(sKey, binder) && value != null) {
+                // The environment changed while it was being bound, the new binding wins
+                s.map().remove(sKey, value);
+            } else if (value != null) {
+                added(sKey, EnvironmentEntry.Origin.CONFIGURED);
+                if (frozen != null) {
+                    freezeTable();
+                }
+            }
+            return value;
+        }
+
+        EnvironmentEntry.Origin origin = resolvedOrigin();
+        T value = buildResolved(s, sKey, origin);
+        if (value != null) {
+            addResolved(s, sKey, value, origin);
+        }
+        return value;
     }
 
     /**
-     * @return {@code true} if template environment is configured for this instance. Only one template environment is
-     * allowed per instance.
+     * @return where environments that aren't configured come from
      */
-    private boolean hasTemplateEnvironment() {
-        return !templateEnvironment.equals(DEFAULT_TEMPLATE_ENVIRONMENT_NAME);
+    private EnvironmentEntry.Origin resolvedOrigin() {
+        return creationFunction != null ? EnvironmentEntry.Origin.CREATED : EnvironmentEntry.Origin.TEMPLATE;
     }
 
     /**
-     * By default we don't try to resolve anything, but others can extend this behavior if they'd like to try to resolve
+     * Build the value for an environment that isn't configured with the creation function, or from the template
+     *
+     * @param s - the environments to take the template from
+     * @param sKey - environment name
+     * @param origin - {@link EnvironmentEntry.Origin#CREATED} to use the creation function
+     * @return the built value
+     */
+    private T buildResolved(MultiEnvSnapshot<T> s, String sKey, EnvironmentEntry.Origin origin) {
+        MultiEnvMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        T value;
+        if (origin == EnvironmentEntry.Origin.CREATED) {
+            value = creationFunction.apply(sKey);
+            if (m != null) {
+                m.created(System.nanoTime() - start);
+            }
+        } else {
+            if (m != null) {
+                m.templateFallback();
+            }
+            TemplateRoutes.Match match = route(s, sKey);
+            value = match == null ? resolve(sKey, getTemplate(s))
+                    : resolve(sKey, getTemplate(s, match.getTemplateEnvironment()), match.getVariables());
+            if (m != null) {
+                m.resolved(System.nanoTime() - start);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param s - the environments to look in
+     * @param sKey - an environment that isn't configured
+     * @return the route the environment matches, or null if it doesn't match one whose template is configured
+     */
+    private TemplateRoutes.Match route(MultiEnvSnapshot<T> s, String sKey) {
+        TemplateRoutes.Match match = templateRoutes.match(sKey);
+        return match != null && s.containsKey(match.getTemplateEnvironment()) ? match : null;
+    }
+
+    /**
+     * Wait for another thread to finish creating an environment.
+     *
+     * @param sKey - environment name
+     * @param creation - the in flight creation of that environment
+     * @return the created value
+     */
+    private T await(String sKey, CompletableFuture<T> creation) {
+        try {
+            return creation.get(creationTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new MultiEnvSupportException(String.format(
+                    "Timed out after %d ms waiting for environment %s to be created",
+                    creationTimeout.toMillis(), sKey));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MultiEnvSupportException(String.format(
+                    "Interrupted while waiting for environment %s to be created", sKey), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MultiEnvSupportException(String.format(
+                    "Failed to create environment %s", sKey), cause);
+        }
+    }
+
+    /**
+     * An internal method that allows us to add directly to the internal map. Values added this way count as resolved
+     * entries, so they are subject to the bounds set by {@link #setResolvedEntryBounds}.
+     *
+     * @param sKey
+     * @param value 
+     */
+    protected void addInternalMap(String sKey, T value) {
+        addResolved(snapshot, sKey, value, EnvironmentEntry.Origin.CREATED);
+    }
+
+    private void addResolved(MultiEnvSnapshot<T> s, String sKey, T value, EnvironmentEntry.Origin origin) {
+        s.map().put(sKey, value);
+        s.resolved().add(sKey);
+        if (resolvedEntries != null) {
+            resolvedEntries.add(sKey, value);
+        }
+        added(sKey, origin);
+    }
+    
+    /**
+     * Shortcut to provide default configuration value.
+     *
+     * @return T where T is the value of the default environment if configured
+     */
+    public T get() {
+        if (this.hasDefaultEnvironment()) {
+            return get(null);
+        }
+        throw new MultiEnvSupportException("This instance has no default environment configuration");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T put(String key, T value) {
+        checkNotFrozen();
+        MultiEnvSnapshot<T> s = snapshot;
+        MultiEnvSnapshot<T> next = s.withRoles(key, value);
+        if (next != s) {
+            snapshot = next;
+        }
+        if (resolvedEntries != null) {
+            resolvedEntries.remove(key);
+        }
+        unknownEnvironments.clear();
+        next.deferred().remove(key);
+        next.resolved().remove(key);
+        T previous = next.map().put(key, value);
+        added(key, EnvironmentEntry.Origin.CONFIGURED);
+        changed(key);
+        return previous;
+    }
+
+    /**
+     * Add a configured environment that is only bound the first time it is requested. Use {@link #put} for
+     * environments that can be the default or the template, since those have to be known up front.
+     *
+     * @param key - environment name
+     * @param binder - creates the value for the environment, called at most once unless it fails
+     */
+    void defer(String key, Function<String, T> binder) {
+        checkNotFrozen();
+        if (StringUtils.isBlank(key)) {
+            throw new MultiEnvSupportException(String.format("Expected non-empty value for environment, was: %s", key));
+        }
+        unknownEnvironments.clear();
+        snapshot.deferred().put(key, binder);
+        forget(key);
+        changed(key);
+    }
+
+    /**
+     * Bind every environment that isn't bound yet (see {@link LazyBindingDeserializer}) in the background, for example
+     * to find invalid configuration soon after startup without delaying it.
+     *
+     * @param executor the executor to bind the environments on
+     * @return a future that completes once every environment is bound, or completes exceptionally with a
+     * {@link MultiEnvSupportException} naming the environments that failed (their failures are suppressed exceptions)
+     */
+    public CompletableFuture<Void> bindAllAsync(Executor executor) {
+        Map<String, CompletableFuture<T>> bindings = new TreeMap<>();
+        for (String key : snapshot.deferred().keySet()) {
+            bindings.put(key, CompletableFuture.supplyAsync(() -> get(key), executor));
+        }
+        return CompletableFuture.allOf(bindings.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, ex) -> {
+                    Map<String, Throwable> failures = new TreeMap<>();
+                    bindings.forEach((key, binding) -> {
+                        try {
+                            binding.join();
+                        } catch (CompletionException failure) {
+                            failures.put(key, failure.getCause());
+                        }
+                    });
+                    if (!failures.isEmpty()) {
+                        MultiEnvSupportException failed = new MultiEnvSupportException(String.format(
+                                "Failed to bind configuration for environments %s", failures.keySet()));
+                        failures.values().forEach(failed::addSuppressed);
+                        LOG.error(failed.getMessage(), failed);
+                        throw failed;
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Resolve (or create, or bind) a list of environments in parallel, for example before the node starts taking
+     * traffic so the first requests for those environments don't pay for building them. At most one environment per
+     * available processor is resolved at a time.
+     *
+     * @param keys the environments to resolve
+     * @param executor the executor to resolve the environments on
+     * @return a future that completes with the result of every environment once they are all done, it never completes
+     * exceptionally because of an environment that couldn't be resolved
+     */
+    public CompletableFuture<PreloadReport> preload(Collection<String> keys, Executor executor) {
+        return preload(keys, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Resolve (or create, or bind) a list of environments in parallel, for example before the node starts taking
+     * traffic so the first requests for those environments don't pay for building them.
+     *
+     * @param keys the environments to resolve
+     * @param executor the executor to resolve the environments on
+     * @param parallelism the maximum number of environments to resolve at the same time
+     * @return a future that completes with the result of every environment once they are all done, it never completes
+     * exceptionally because of an environment that couldn't be resolved
+     */
+    public CompletableFuture<PreloadReport> preload(Collection<String> keys, Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("'parallelism' must be at least 1");
+        }
+        Set<String> ordered = new LinkedHashSet<>(keys);
+        Queue<String> pending = new ConcurrentLinkedQueue<>(ordered);
+        Map<String, PreloadReport.Result> results = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+
+        // Each worker keeps taking the next environment, so no more than parallelism environments are built at once
+        // no matter how many threads the executor has
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(parallelism, ordered.size())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = CompletableFuture.runAsync(() -> {
+                for (String key = pending.poll(); key != null; key = pending.poll()) {
+                    results.put(key, timedGet(key));
+                }
+            }, executor);
+        }
+
+        return CompletableFuture.allOf(workers).thenApply(ignored -> {
+            Map<String, PreloadReport.Result> report = new LinkedHashMap<>();
+            ordered.forEach(key -> report.put(key, results.get(key)));
+            PreloadReport preloaded = new PreloadReport(report, Duration.ofNanos(System.nanoTime() - start));
+            if (preloaded.isSuccessful()) {
+                LOG.info("{}", preloaded);
+            } else {
+                LOG.error("{}", preloaded);
+            }
+            return preloaded;
+        });
+    }
+
+    private PreloadReport.Result timedGet(String key) {
+        long start = System.nanoTime();
+        try {
+            get(key);
+            return new PreloadReport.Result(Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (RuntimeException ex) {
+            LOG.warn("Failed to preload environment [{}]", key, ex);
+            return new PreloadReport.Result(Duration.ofNanos(System.nanoTime() - start), ex);
+        }
+    }
+
+    /**
+     * @return the environments that were resolved from a template or built by the creation function, by name
+     */
+    public Map<String, T> getResolvedEnvironments() {
+        MultiEnvSnapshot<T> s = snapshot;
+        Map<String, T> resolved = new TreeMap<>();
+        for (String key : s.resolved()) {
+            T value = s.map().get(key);
+            if (value != null) {
+                resolved.put(key, value);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Add environments that were resolved before, for example by the previous run of the application (see
+     * {@link com.cvent.pangaea.lifecycle.EnvironmentSnapshot}), so they don't have to be resolved again. They count as
+     * resolved environments: they are subject to the bounds set by {@link #setResolvedEntryBounds} and are dropped when
+     * their template changes. Environments that are configured or already resolved are left alone.
+     *
+     * @param values - the resolved environments, by name
+     * @return the environments that were added
+     */
+    public Set<String> restoreResolved(Map<String, ? extends T> values) {
+        MultiEnvSnapshot<T> s = snapshot;
+        Set<String> restored = new TreeSet<>();
+        for (Entry<String, ? extends T> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (StringUtils.isBlank(key) || entry.getValue() == null || s.isConfigured(key) || isDerived(key)) {
+                continue;
+            }
+            if (s.map().putIfAbsent(key, entry.getValue()) == null) {
+                s.resolved().add(key);
+                if (resolvedEntries != null) {
+                    resolvedEntries.add(key, entry.getValue());
+                }
+                added(key, resolvedOrigin());
+                changed(key);
+                restored.add(key);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Bind every environment that isn't bound yet
+     */
+    private void bindAll() {
+        for (String key : snapshot.deferred().keySet()) {
+            get(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T remove(Object key) {
+        checkNotFrozen();
+        if (resolvedEntries != null && key instanceof String) {
+            resolvedEntries.remove((String) key);
+        }
+        MultiEnvSnapshot<T> s = snapshot;
+        s.deferred().remove(key);
+        s.resolved().remove(key);
+        T previous = s.map().remove(key);
+        if (key instanceof String) {
+            forget((String) key);
+            changed((String) key);
+        }
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putAll(Map<? extends String, ? extends T> m) {
+        checkNotFrozen();
+        if (resolvedEntries != null) {
+            m.keySet().forEach(resolvedEntries::remove);
+        }
+        unknownEnvironments.clear();
+        MultiEnvSnapshot<T> s = snapshot;
+        m.keySet().forEach(s.deferred()::remove);
+        m.keySet().forEach(s.resolved()::remove);
+        s.map().putAll(m);
+        m.keySet().forEach(key -> added(key, EnvironmentEntry.Origin.CONFIGURED));
+        m.keySet().forEach(this::changed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        checkNotFrozen();
+        if (resolvedEntries != null) {
+            resolvedEntries.clear();
+        }
+        MultiEnvSnapshot<T> s = snapshot;
+        s.deferred().clear();
+        s.resolved().clear();
+        s.map().clear();
+        EntryStatistics st = entryStatistics;
+        if (st != null) {
+            st.clear();
+        }
+        changed(null);
+    }
+
+    /**
+     * Describe every environment: where its value came from, whether it is bound yet and, while entry statistics are
+     * enabled (see {@link #setEntryStatistics}), when it was added and how often it was looked up since.
+     *
+     * @return the environments, ordered by name
+     */
+    public List<EnvironmentEntry> describeEntries() {
+        MultiEnvSnapshot<T> s = snapshot;
+        EntryStatistics st = entryStatistics;
+        Instant now = st == null ? null : st.now();
+        Set<String> keys = new TreeSet<>(s.map().keySet());
+        keys.addAll(s.deferred().keySet());
+        List<EnvironmentEntry> entries = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            boolean bound = s.map().containsKey(key);
+            EntryStatistics.Stats stats = bound && st != null ? st.get(key) : null;
+            if (stats == null) {
+                entries.add(new EnvironmentEntry(key, origin(s, key), bound, null, null, -1));
+            } else {
+                Instant created = stats.created();
+                entries.add(new EnvironmentEntry(key, stats.origin(), true, created,
+                        created == null ? null : Duration.between(created, now), stats.accesses()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Drop the value of an environment that was resolved from the template, built by the creation function or (in a
+     * view) derived from the source, and shut it down like {@link #reconfigure} does. The next request for the
+     * environment builds it again; lookups of other environments aren't affected. Use {@link #refresh} to keep
+     * serving the old value until the new one is built.
+     *
+     * Throws a {@link MultiEnvSupportException} if the environment is configured, its value can only be replaced by
+     * {@link #reconfigure}.
+     *
+     * @param key - environment name
+     * @return {@code true} if a value was dropped, {@code false} if the environment had none
+     */
+    public boolean evict(String key) {
+        String sKey = aliases.canonical(key);
+        MultiEnvSnapshot<T> s = snapshot;
+        T value = s.map().get(sKey);
+        if (value == null) {
+            return false;
+        }
+        if (isDerived(sKey)) {
+            // Derive it again on the next request, like when the environment changes in the source. The derivation
+            // goes in first so a request in between never finds neither
+            Function<String, T> binder = derivation::apply;
+            s.deferred().put(sKey, binder);
+            if (!s.map().remove(sKey, value)) {
+                s.deferred().remove(sKey, binder);
+                return false;
+            }
+        } else if (s.resolved().contains(sKey)) {
+            if (!s.map().remove(sKey, value)) {
+                return false;
+            }
+            s.resolved().remove(sKey);
+            if (resolvedEntries != null) {
+                resolvedEntries.remove(sKey);
+            }
+        } else {
+            throw configured(sKey);
+        }
+        forget(sKey);
+        if (frozen != null) {
+            freezeTable();
+        }
+        changed(sKey);
+        LOG.info("Evicted environment [{}]", sKey);
+        shutDown(sKey, value);
+        return true;
+    }
+
+    /**
+     * Build a new value for an environment that was resolved from the template, built by the creation function or
+     * (in a view) derived from the source, swap it in and shut the old value down. Lookups keep getting the old value
+     * while the new one is built, on the calling thread.
+     *
+     * Throws a {@link MultiEnvSupportException} if the environment has no value, is configured (its value can only be
+     * replaced by {@link #reconfigure}), or changed while the new value was built.
+     *
+     * @param key - environment name
+     * @return the new value
+     */
+    public T refresh(String key) {
+        String sKey = aliases.canonical(key);
+        MultiEnvSnapshot<T> s = snapshot;
+        T previous = s.map().get(sKey);
+        if (previous == null) {
+            throw new MultiEnvSupportException(String.format("Environment %s has no value to refresh", sKey));
+        }
+        T value = swap(s, sKey, previous, true);
+        if (value == null) {
+            throw new MultiEnvSupportException(String.format(
+                    "Environment %s changed while it was being refreshed", sKey));
+        }
+        return value;
+    }
+
+    /**
+     * Refresh an entry that is due for it according to {@link #setResolvedEntryBounds}, on the refresh executor
+     *
+     * @param sKey - environment name
+     * @param previous - the value to replace
+     * @return the value the entry holds now: the new one, or {@code previous} if it couldn't be refreshed (so it is
+     * tried again one refresh interval later), or null if the entry changed in the meantime
+     */
+    private T refreshInBackground(String sKey, T previous) {
+        try {
+            return swap(snapshot, sKey, previous, false);
+        } catch (RuntimeException ex) {
+            MultiEnvMetrics m = metrics;
+            if (m != null) {
+                m.refreshFailed();
+            }
+            LOG.warn("Failed to refresh environment [{}], keeping the current value", sKey, ex);
+            return previous;
+        }
+    }
+
+    /**
+     * Build a new value for an environment that isn't configured (or in a view, derive it again), swap it in and shut
+     * the previous value down
+     *
+     * @param s - the environments to swap the value in
+     * @param sKey - environment name
+     * @param previous - the value to replace
+     * @param track - {@code true} to tell the bounds about the new value, {@code false} when they asked for it
+     * @return the new value, or null if the environment changed while the new value was built
+     */
+    private T swap(MultiEnvSnapshot<T> s, String sKey, T previous, boolean track) {
+        EnvironmentEntry.Origin origin;
+        T value;
+        if (isDerived(sKey)) {
+            origin = EnvironmentEntry.Origin.CONFIGURED;
+            value = derivation.apply(sKey);
+        } else if (s.resolved().contains(sKey)) {
+            origin = resolvedOrigin();
+            value = buildResolved(s, sKey, origin);
+        } else {
+            throw configured(sKey);
+        }
+
+        if (value == null || !s.map().replace(sKey, previous, value)) {
+            // Whoever replaced or removed it in the meantime owns the environment now
+            if (value != null) {
+                shutDown(sKey, value);
+            }
+            return null;
+        }
+        if (track && resolvedEntries != null && s.resolved().contains(sKey)) {
+            resolvedEntries.add(sKey, value);
+        }
+        added(sKey, origin);
+        if (frozen != null) {
+            freezeTable();
+        }
+        changed(sKey);
+        MultiEnvMetrics m = metrics;
+        if (m != null) {
+            m.refreshed();
+        }
+        LOG.info("Refreshed environment [{}]", sKey);
+        shutDown(sKey, previous);
+        return value;
+    }
+
+    /**
+     * @return {@code true} if this is a view and the environment is derived from its source
+     */
+    private boolean isDerived(String sKey) {
+        return source != null && source.containsKey(sKey);
+    }
+
+    private static MultiEnvSupportException configured(String sKey) {
+        return new MultiEnvSupportException(String.format(
+                "Environment %s is configured, reconfigure it to replace its value", sKey));
+    }
+
+    /**
+     * @return where the value of a bound environment came from, as far as the snapshot tells
+     */
+    private EnvironmentEntry.Origin origin(MultiEnvSnapshot<T> s, String key) {
+        return s.resolved().contains(key) ? resolvedOrigin() : EnvironmentEntry.Origin.CONFIGURED;
+    }
+
+    /**
+     * Atomically replace the configured environments, for example after the configuration file changed. A reader sees
+     * either the old or the new environments, default and template environment, never a mix of both.
+     *
+     * Environments listed in {@code unchanged} keep their current value (or stay unbound), so whatever they hold, like
+     * connection pools and clients, isn't rebuilt. Environments resolved from a template or built with the creation
+     * function are kept as long as the template they were resolved from is unchanged and they aren't configured now.
+     * Every other previous value is dropped: values that implement {@link Managed} are stopped and values that
+     * implement {@link AutoCloseable} are closed once the new environments are in place.
+     *
+     * Throws a {@link MultiEnvSupportException} if an unchanged environment isn't configured, or the new configuration
+     * has more than one default or template environment; nothing is replaced in that case.
+     *
+     * @param changed - configured environments that are new or whose configuration changed
+     * @param unchanged - configured environments whose configuration didn't change
+     * @return the environments that were added, replaced or removed
+     */
+    public Set<String> reconfigure(Map<String, ? extends T> changed, Set<String> unchanged) {
+        checkNotFrozen();
+        MultiEnvSnapshot<T> current = snapshot;
+        String defaultKey = current.defaultEnvironment() != null && unchanged.contains(current.defaultEnvironment())
+                ? current.defaultEnvironment() : null;
+        String templateKey = current.hasTemplateEnvironment() && unchanged.contains(current.templateEnvironment())
+                ? current.templateEnvironment() : DEFAULT_TEMPLATE_ENVIRONMENT_NAME;
+        MultiEnvSnapshot<T> next = new MultiEnvSnapshot<>(siloIndex ? new SiloKeyedMap<>() : new ConcurrentHashMap<>(),
+                defaultKey, templateKey);
+
+        for (String key : unchanged) {
+            if (!current.isConfigured(key)) {
+                throw new MultiEnvSupportException(String.format(
+                        "Environment %s is not configured, it can't be kept unchanged", key));
+            }
+            // Binding adds the value before it drops the binder, so checking the binder first never misses both
+            Function<String, T> binder = current.deferred().get(key);
+            T value = current.map().get(key);
+            if (value != null) {
+                next.map().put(key, value);
+            } else if (binder != null) {
+                next.deferred().put(key, binder);
+            }
+        }
+        for (Entry<String, ? extends T> entry : changed.entrySet()) {
+            if (unchanged.contains(entry.getKey())) {
+                throw new MultiEnvSupportException(String.format(
+                        "Environment %s can't be both changed and unchanged", entry.getKey()));
+            }
+            next = next.withRoles(entry.getKey(), entry.getValue());
+            next.map().put(entry.getKey(), entry.getValue());
+        }
+
+        for (String key : current.resolved()) {
+            T value = current.map().get(key);
+            String template = templateEnvironment(current, key);
+            boolean sameTemplate = template != null && unchanged.contains(template)
+                    && template.equals(templateEnvironment(next, key));
+            if (value != null && !next.containsKey(key) && (creationFunction != null || sameTemplate)) {
+                next.map().put(key, value);
+                next.resolved().add(key);
+            }
+        }
+
+        snapshot = next;
+        unknownEnvironments.clear();
+
+        Set<String> affected = new TreeSet<>();
+        Set<String> keys = new HashSet<>(current.map().keySet());
+        keys.addAll(current.deferred().keySet());
+        keys.addAll(next.map().keySet());
+        keys.addAll(next.deferred().keySet());
+        for (String key : keys) {
+            T previous = current.map().get(key);
+            if (previous != next.map().get(key) || current.deferred().get(key) != next.deferred().get(key)) {
+                affected.add(key);
+                if (resolvedEntries != null && !next.resolved().contains(key)) {
+                    resolvedEntries.remove(key);
+                }
+                if (next.map().containsKey(key)) {
+                    added(key, EnvironmentEntry.Origin.CONFIGURED);
+                } else {
+                    forget(key);
+                }
+                if (previous != null) {
+                    shutDown(key, previous);
+                }
+            }
+        }
+        affected.forEach(this::changed);
+        LOG.info("Reconfigured environments {}, kept {}", affected, unchanged);
+        return affected;
+    }
+
+    /**
+     * Reconfigure from a new environment configuration tree, binding only what changed. Environments whose subtree is
+     * the same keep their value (and whatever it holds, like connection pools), new and changed ones are bound with
+     * {@code binder} and missing ones are removed, see {@link #reconfigure}. Environments resolved from a template are
+     * only dropped if that template changed.
+     *
+     * Throws a {@link MultiEnvSupportException} if {@code next} isn't an object, or like {@link #reconfigure}; nothing
+     * is replaced in that case, nor when {@code binder} fails.
+     *
+     * @param previous - the environment configuration this was last configured from, or null to bind everything
+     * @param next - the new environment configuration, an object of environments by name
+     * @param binder - binds (and validates) the configuration of an environment
+     * @return what changed
+     */
+    public ReloadReport reload(JsonNode previous, JsonNode next, BiFunction<String, JsonNode, ? extends T> binder) {
+        checkNotFrozen();
+        if (next == null || !next.isObject()) {
+            throw new MultiEnvSupportException("Expected an object of environments to reload from");
+        }
+        ConfigurationDiff diff = new ConfigurationDiff(previous, next);
+        Map<String, T> changed = diff.bind(binder);
+        Set<String> templates = diff.touched(this::isTemplateEnvironment);
+        Map<String, T> resolved = getResolvedEnvironments();
+        reconfigure(changed, diff.getUnchanged());
+        templates.addAll(diff.touched(this::isTemplateEnvironment));
+        resolved.entrySet().removeIf(entry -> snapshot.map().get(entry.getKey()) == entry.getValue()
+                || changed.containsKey(entry.getKey()));
+        ReloadReport report = new ReloadReport(diff, templates, resolved.keySet());
+        LOG.info("{}", report);
+        return report;
+    }
+
+    /**
+     * Make this instance read only for lookups after startup. It binds every configured environment and copies them
+     * into a table (see {@link FrozenTable}) that lookups read before anything else; environments that aren't
+     * configured are still resolved (or created, or rejected) as before. From then on, methods that would change the
+     * configured environments or how environments are looked up throw {@link UnsupportedOperationException}.
+     *
+     * {@link #evict}, {@link #refresh} and {@link #restoreResolved} are still allowed, they only change environments
+     * that are resolved or (in a view) derived from the source. The table is copied again when a derived environment
+     * changes, like when the environment changes in the source; the changed environment is looked up like in an
+     * instance that isn't frozen until it is derived again, and then rejoins the table.
+     *
+     * @return this instance
+     */
+    public MultiEnvAware<T> freeze() {
+        bindAll();
+        freezeTable();
+        return this;
+    }
+
+    /**
+     * Copy the bound environments that aren't resolved into a new table. Synchronized so that of two concurrent
+     * changes, the table copied last sees both.
+     */
+    private synchronized void freezeTable() {
+        frozen = FrozenTable.of(snapshot);
+    }
+
+    /**
+     * @param key - environment name
+     * @return whether lookups of the environment are read from the table of a frozen instance, see {@link #freeze()}
+     */
+    boolean isFrozen(String key) {
+        FrozenTable<T> f = frozen;
+        return f != null && f.find(aliases.canonical(key)) >= 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if this instance is frozen, see {@link #freeze()}
+     */
+    private void checkNotFrozen() {
+        if (frozen != null) {
+            throw new UnsupportedOperationException("This MultiEnvAware instance is frozen");
+        }
+    }
+
+    /**
+     * {@inheritDoc} Binds every environment that isn't bound yet.
+     */
+    @Override
+    public Set<String> keySet() {
+        bindAll();
+        return snapshot.map().keySet();
+    }
+
+    /**
+     * {@inheritDoc} Binds every environment that isn't bound yet.
+     */
+    @Override
+    public Collection<T> values() {
+        bindAll();
+        return snapshot.map().values();
+    }
+
+    /**
+     * {@inheritDoc} Binds every environment that isn't bound yet.
+     */
+    @Override
+    public Set<Entry<String, T>> entrySet() {
+        bindAll();
+        return snapshot.map().entrySet();
+    }
+
+    /**
+     * {@inheritDoc} Binds every environment that isn't bound yet.
+     */
+    @Override
+    public String toString() {
+        bindAll();
+        return snapshot.map().toString();
+    }
+
+    /**
+     * @return {@code true} if template environment is configured for this instance. Only one template environment is
+     * allowed per instance.
+     */
+    private boolean hasTemplateEnvironment() {
+        return snapshot.hasTemplateEnvironment();
+    }
+
+    /**
+     * By default we don't try to resolve anything, but others can extend this behavior if they'd like to try to resolve
      * not found values differently.
      * 
      * @param sKey
@@ -329,9 +1620,33 @@ public class MultiEnvAware<T> implements Map<String, T> {
      * @return 
      */
     protected T resolve(String sKey, T value) {
-        LOG.error("Fail to find environment [{}] in {}", sKey, this.keySet());
-        throw new MultiEnvSupportException(String.format(
-                "Fail to find configuration for environment %s", sKey));
+        throw unknownEnvironments.reject(sKey, "Fail to find configuration for environment %s");
+    }
+
+    /**
+     * Resolve a value from the template of the route the environment matched, see {@link #setTemplateRoutes}. By
+     * default the variables are ignored and {@link #resolve(String, Object)} is used.
+     *
+     * @param sKey - environment name
+     * @param value - the template of the route
+     * @param variables - the text the route captured from the environment name, by capture name
+     * @return the resolved value
+     */
+    protected T resolve(String sKey, T value, Map<String, String> variables) {
+        return resolve(sKey, value);
+    }
+
+    /**
+     * Resolve a value for {@link #getAsync}. By default {@link #resolve} runs on the executor; override this to
+     * resolve without holding a thread while waiting.
+     *
+     * @param sKey - environment name
+     * @param value - the template
+     * @param executor - the creation executor
+     * @return the resolved value
+     */
+    protected CompletionStage<T> resolveAsync(String sKey, T value, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> resolve(sKey, value), executor);
     }
 
     /**
@@ -341,8 +1656,342 @@ public class MultiEnvAware<T> implements Map<String, T> {
      * @param func
      */
     public void setCreationFunction(Function<String, T> func) {
+        checkNotFrozen();
         this.creationFunction = func;
+        this.asyncCreationFunction = null;
+        unknownEnvironments.clear();
+    }
+
+    /**
+     * Assign a creation function that returns a {@link CompletionStage}, for values that are built by asynchronous
+     * clients (opening pools, fetching remote metadata). {@link #getAsync} callers don't hold a thread while it runs,
+     * {@link #get(Object)} callers wait for it.
+     *
+     * @param func - creates the value for an environment
+     */
+    public void setAsyncCreationFunction(Function<String, ? extends CompletionStage<T>> func) {
+        checkNotFrozen();
+        this.creationFunction = func == null ? null : env -> {
+            try {
+                return func.apply(env).toCompletableFuture().join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        };
+        this.asyncCreationFunction = func;
+        unknownEnvironments.clear();
     }
 
+    /**
+     * Set the executor {@link #getAsync} binds, creates and resolves environments on, {@link ForkJoinPool#commonPool()}
+     * by default. Values evicted by {@link #setResolvedEntryBounds} are shut down on it as well. Creation functions
+     * that block (on I/O, for example) should get an executor of their own.
+     *
+     * @param executor the executor
+     */
+    public void setCreationExecutor(Executor executor) {
+        checkNotFrozen();
+        if (executor == null) {
+            throw new IllegalArgumentException("'executor' cannot be null");
+        }
+        this.creationExecutor = executor;
+    }
 
+    /**
+     * Configure how requests for environments that don't exist are handled. Rejected environments are remembered for
+     * {@code ttl} so repeated requests for them are rejected without trying to create them again, rejections are
+     * logged as one line per {@code logInterval} with a count for each environment, and the thrown
+     * {@link MultiEnvSupportException} can be created without a stack trace.
+     *
+     * Adding an environment, a template or a creation function forgets every remembered rejection.
+     *
+     * @param maximumSize the maximum number of rejected environments to remember
+     * @param ttl how long to remember a rejected environment
+     * @param logInterval how often to log rejections, {@link Duration#ZERO} to log every rejection
+     * @param stackless {@code true} to reject without filling in a stack trace
+     */
+    public void setUnknownEnvironmentHandling(long maximumSize, Duration ttl, Duration logInterval,
+            boolean stackless) {
+        checkNotFrozen();
+        this.unknownEnvironments = new UnknownEnvironments(maximumSize, ttl, logInterval, stackless,
+                this::knownEnvironments);
+    }
+
+    /**
+     * Bound the entries this instance resolves from the template or builds with the creation function. Entries that
+     * were configured (added through {@link #put}) are pinned and never evicted.
+     *
+     * Once more than {@code maximumSize} resolved entries exist, or an entry has been idle for
+     * {@code expireAfterAccess} or alive for {@code expireAfterWrite}, it is removed and will be resolved again on the
+     * next request for it. Evicted values that implement {@link Managed} are stopped and values that implement
+     * {@link AutoCloseable} are closed, so connection pools and clients don't leak. Callers still holding an evicted
+     * value will see it shut down, so the bounds should comfortably exceed the number of environments in active use.
+     * Evicted values are shut down on the creation executor (see {@link #setCreationExecutor}).
+     *
+     * This should be called before the first unknown environment is requested; entries resolved earlier stay pinned.
+     *
+     * @param maximumSize the maximum number of resolved entries to keep
+     * @param expireAfterAccess evict entries that have not been read for this long, or null to never expire on idle
+     * @param expireAfterWrite evict entries this long after they were resolved, or null to never expire on age
+     */
+    public void setResolvedEntryBounds(long maximumSize, Duration expireAfterAccess, Duration expireAfterWrite) {
+        setResolvedEntryBounds(maximumSize, expireAfterAccess, expireAfterWrite, null, null);
+    }
+
+    /**
+     * Like {@link #setResolvedEntryBounds(long, Duration, Duration)}, and also refresh entries ahead of time, for
+     * values that go stale like discovery results or credentials. The first lookup of an entry resolved more than
+     * {@code refreshAfterWrite} ago builds a new value on {@code refreshExecutor} and swaps it in once it is built,
+     * shutting the old value down like {@link #refresh} does. That lookup and every other one until then get the old
+     * value, so no request waits for a refresh. A failed refresh keeps the old value and is tried again one interval
+     * later.
+     *
+     * Entries that aren't looked up aren't refreshed; an {@code expireAfterWrite} longer than
+     * {@code refreshAfterWrite} drops those. Use {@link Long#MAX_VALUE} as {@code maximumSize} to only refresh and
+     * expire.
+     *
+     * @param maximumSize the maximum number of resolved entries to keep
+     * @param expireAfterAccess evict entries that have not been read for this long, or null to never expire on idle
+     * @param expireAfterWrite evict entries this long after they were resolved, or null to never expire on age
+     * @param refreshAfterWrite refresh entries looked up this long after they were resolved, or null to never refresh
+     * @param refreshExecutor the executor to build refreshed values on, required with {@code refreshAfterWrite}
+     */
+    public void setResolvedEntryBounds(long maximumSize, Duration expireAfterAccess, Duration expireAfterWrite,
+            Duration refreshAfterWrite, Executor refreshExecutor) {
+        checkNotFrozen();
+        this.resolvedEntries = new ResolvedEntries<>(maximumSize, expireAfterAccess, expireAfterWrite,
+                refreshAfterWrite, refreshExecutor, this::refreshInBackground, this::onEviction);
+    }
+
+    /**
+     * Remove an evicted entry from the internal map, then tell the views and shut its value down on the creation
+     * executor
+     *
+     * @param sKey - environment name
+     * @param value - the evicted value
+     */
+    private void onEviction(String sKey, T value) {
+        MultiEnvSnapshot<T> s = snapshot;
+        if (!s.map().remove(sKey, value)) {
+            // The environment was replaced since, whoever replaced it owns the old value now
+            return;
+        }
+        s.resolved().remove(sKey);
+        forget(sKey);
+        MultiEnvMetrics m = metrics;
+        if (m != null) {
+            m.evicted();
+        }
+        // Any lookup can run the eviction, for a request that wants another environment: don't make it wait for the
+        // views or for a connection pool to close
+        Runnable evicted = () -> {
+            changed(sKey);
+            LOG.info("Evicted resolved environment [{}]", sKey);
+            shutDown(sKey, value);
+        };
+        try {
+            creationExecutor.execute(evicted);
+        } catch (RejectedExecutionException ex) {
+            evicted.run();
+        }
+    }
+
+    /**
+     * Stop a value that implements {@link Managed}, or close one that implements {@link AutoCloseable}
+     *
+     * @param sKey - environment name
+     * @param value - the value that is no longer used
+     */
+    private static void shutDown(String sKey, Object value) {
+        try {
+            if (value instanceof Managed) {
+                ((Managed) value).stop();
+            } else if (value instanceof AutoCloseable) {
+                ((AutoCloseable) value).close();
+            }
+        } catch (Exception ex) {
+            LOG.warn("Failed to shut down environment [{}]", sKey, ex);
+        }
+    }
+
+    /**
+     * @return the environments reported with rejections of unknown environments
+     */
+    private Set<String> knownEnvironments() {
+        return snapshot.map().keySet();
+    }
+
+    /**
+     * Set how long a caller waits for another thread that is already creating (or resolving) the same environment.
+     * Defaults to {@link #DEFAULT_CREATION_TIMEOUT}.
+     *
+     * @param creationTimeout
+     */
+    public void setCreationTimeout(Duration creationTimeout) {
+        checkNotFrozen();
+        if (creationTimeout == null || creationTimeout.isNegative()) {
+            throw new IllegalArgumentException("'creationTimeout' must be a non-negative duration");
+        }
+        this.creationTimeout = creationTimeout;
+    }
+
+    /**
+     * Keep environments named {@code S<number>} in an array indexed by the number instead of a hash map, so looking
+     * them up (by name or with {@link #get(int)}) doesn't hash the name. Every other environment stays in a hash map.
+     * Instances created with {@link #convert} and {@link #view} inherit the setting.
+     *
+     * This should be called while the instance is set up, before lookups start: the environments are copied into the
+     * new storage, and an environment added by another thread during the copy may be lost.
+     *
+     * @param enabled {@code true} to index silos
+     */
+    public synchronized void setSiloIndex(boolean enabled) {
+        checkNotFrozen();
+        siloIndex = enabled;
+        MultiEnvSnapshot<T> s = snapshot;
+        if (enabled != (s.map() instanceof SiloKeyedMap)) {
+            ConcurrentMap<String, T> map = enabled ? new SiloKeyedMap<>() : new ConcurrentHashMap<>();
+            map.putAll(s.map());
+            snapshot = new MultiEnvSnapshot<>(map, s.deferred(), s.resolved(), s.inFlight(), s.defaultEnvironment(),
+                    s.templateEnvironment());
+        }
+    }
+
+    /**
+     * @return {@code true} if environments named {@code S<number>} are kept in an array, see {@link #setSiloIndex}
+     */
+    public boolean hasSiloIndex() {
+        return siloIndex;
+    }
+
+    /**
+     * @return how long a caller waits for another thread that is already creating the same environment
+     */
+    public Duration getCreationTimeout() {
+        return creationTimeout;
+    }
+
+    /**
+     * Set the alternative names of environments: looking up an alias (with {@link #get(Object)},
+     * {@link #containsKey}, {@link #getKeyOrDefault} or {@link #isResolvable}) looks up the environment it stands for.
+     * Aliases are not keys of this map, and templates are resolved for the canonical name.
+     *
+     * @param aliases the aliases, or null for none
+     */
+    public void setAliases(EnvironmentAliases aliases) {
+        checkNotFrozen();
+        this.aliases = aliases == null ? EnvironmentAliases.NONE : aliases;
+        unknownEnvironments.clear();
+    }
+
+    /**
+     * @return the alternative names of environments
+     */
+    public EnvironmentAliases getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Resolve environments that aren't configured from the template of the first route their name matches, instead
+     * of the template environment. Each route names a configured environment to use as the template; routes whose
+     * template isn't configured are skipped, and names that match no route still use the template environment. The
+     * text a route captures is passed to {@link #resolve(String, Object, Map)}, see {@link RoutedTemplateResolver}.
+     *
+     * Like the template environment, routes only apply to instances that resolve from templates, such as
+     * {@link LazyMultiEnvAware} or the result of {@link #convert(BiFunction, TemplateResolver)}, which copies them.
+     *
+     * @param routes the routes, or null for none
+     */
+    public void setTemplateRoutes(TemplateRoutes routes) {
+        checkNotFrozen();
+        this.templateRoutes = routes == null ? TemplateRoutes.NONE : routes;
+        unknownEnvironments.clear();
+    }
+
+    /**
+     * @return the templates of environment families by key pattern
+     */
+    public TemplateRoutes getTemplateRoutes() {
+        return templateRoutes;
+    }
+
+    /**
+     * Register the metrics of this instance with a registry under {@code com.cvent.pangaea.MultiEnvAware.<name>}:
+     * {@code hits}, {@code misses}, {@code defaults} and {@code templateFallbacks} counters, {@code templateResolution}
+     * and {@code creation} timers, {@code evictions}, {@code refreshes} and {@code refreshFailures} counters, and
+     * {@code size} and {@code resolved} gauges. None of them is per environment. Without metrics, lookups don't
+     * record anything.
+     *
+     * @param registry the registry, or null to remove the metrics again
+     * @param name the name of this instance, for example the configuration property it was bound from
+     */
+    public synchronized void setMetrics(MetricRegistry registry, String name) {
+        if (metrics != null) {
+            metrics.remove();
+        }
+        if (registry == null) {
+            metrics = null;
+        } else {
+            if (StringUtils.isBlank(name)) {
+                throw new IllegalArgumentException("'name' cannot be blank");
+            }
+            metrics = new MultiEnvMetrics(registry, name, this);
+        }
+    }
+
+    /**
+     * Keep track of when each environment was added and how often it is looked up, for {@link #describeEntries}.
+     * Environments that are already bound when this is enabled are counted from then on, without a creation time.
+     * While enabled every lookup increments a counter of its environment.
+     *
+     * @param enabled {@code true} to keep track, {@code false} to stop and forget
+     */
+    public synchronized void setEntryStatistics(boolean enabled) {
+        if (!enabled) {
+            entryStatistics = null;
+        } else if (entryStatistics == null) {
+            EntryStatistics st = new EntryStatistics(Clock.systemUTC());
+            MultiEnvSnapshot<T> s = snapshot;
+            s.map().keySet().forEach(key -> st.seen(key, origin(s, key)));
+            entryStatistics = st;
+        }
+    }
+
+    /**
+     * @return the entry statistics of this instance, or null if they aren't enabled
+     */
+    EntryStatistics entryStatistics() {
+        return entryStatistics;
+    }
+
+    private void added(String key, EnvironmentEntry.Origin origin) {
+        EntryStatistics st = entryStatistics;
+        if (st != null) {
+            st.added(key, origin);
+        }
+    }
+
+    private void forget(String key) {
+        EntryStatistics st = entryStatistics;
+        if (st != null) {
+            st.removed(key);
+        }
+    }
+
+    /**
+     * @return the metrics of this instance, or null if they aren't enabled
+     */
+    MultiEnvMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of environments that were resolved from the template or created
+     */
+    int resolvedCount() {
+        return snapshot.resolved().size();
+    }
 }
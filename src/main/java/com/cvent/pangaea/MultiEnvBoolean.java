@@ -0,0 +1,45 @@
+package com.cvent.pangaea;
+
+/**
+ * A {@code boolean} for every environment, derived from a {@link MultiEnvAware} with {@link
+ * MultiEnvAware#convertToBoolean}. Reading a value neither boxes nor allocates once it was derived. The first read of
+ * an environment looks it up in the source instance, with the same default environment, alias, template and rejection
+ * rules as {@link MultiEnvAware#get(Object)}. A value is derived again after its environment (or its template) changes
+ * in the source instance.
+ *
+ * <pre>
+ *    MultiEnvBoolean newCheckout = environments.convertToBoolean(
+ *            (env, config) -&gt; config.isNewCheckoutEnabled());
+ *    if (newCheckout.getAsBoolean(environment)) {
+ * </pre>
+ */
+public final class MultiEnvBoolean {
+
+    private final MultiEnvPrimitive<?> values;
+
+    /**
+     * @param values the derived values
+     */
+    MultiEnvBoolean(MultiEnvPrimitive<?> values) {
+        this.values = values;
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if the environment can't be found.
+     *
+     * @param key - environment name, blank for the default environment
+     * @return the value of the environment
+     */
+    public boolean getAsBoolean(String key) {
+        return values.getAsLong(key) != 0;
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if there is no default environment.
+     *
+     * @return the value of the default environment
+     */
+    public boolean getAsBoolean() {
+        return getAsBoolean(null);
+    }
+}
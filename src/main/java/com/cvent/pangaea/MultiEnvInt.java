@@ -0,0 +1,45 @@
+package com.cvent.pangaea;
+
+/**
+ * A {@code int} for every environment, derived from a {@link MultiEnvAware} with {@link MultiEnvAware#convertToInt}.
+ * Reading a value neither boxes nor allocates once it was derived. The first read of an environment looks it up in the
+ * source instance, with the same default environment, alias, template and rejection rules as {@link
+ * MultiEnvAware#get(Object)}. A value is derived again after its environment (or its template) changes in the source
+ * instance.
+ *
+ * <pre>
+ *    MultiEnvInt rateLimits = environments.convertToInt(
+ *            (env, config) -&gt; config.getRateLimit());
+ *    if (requests &gt; rateLimits.getAsInt(environment)) {
+ * </pre>
+ */
+public final class MultiEnvInt {
+
+    private final MultiEnvPrimitive<?> values;
+
+    /**
+     * @param values the derived values
+     */
+    MultiEnvInt(MultiEnvPrimitive<?> values) {
+        this.values = values;
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if the environment can't be found.
+     *
+     * @param key - environment name, blank for the default environment
+     * @return the value of the environment
+     */
+    public int getAsInt(String key) {
+        return (int) values.getAsLong(key);
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if there is no default environment.
+     *
+     * @return the value of the default environment
+     */
+    public int getAsInt() {
+        return getAsInt(null);
+    }
+}
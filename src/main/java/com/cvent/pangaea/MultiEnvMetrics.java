@@ -0,0 +1,134 @@
+package com.cvent.pangaea;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of one {@link MultiEnvAware} instance, see {@link MultiEnvAware#setMetrics}. Every metric is named
+ * {@code com.cvent.pangaea.MultiEnvAware.<name>.<metric>}; none of them is per environment, so the number of metrics
+ * doesn't depend on the environments that are requested:
+ * <ul>
+ * <li>{@code hits}: lookups of an environment that was configured, or already resolved or created</li>
+ * <li>{@code misses}: lookups that had to bind, resolve or create the environment</li>
+ * <li>{@code defaults}: lookups of a blank environment that got the default environment, which are counted as hits
+ * as well</li>
+ * <li>{@code templateFallbacks}: environments resolved from the template</li>
+ * <li>{@code templateResolution} and {@code creation}: how long resolving from the template and running the creation
+ * function took</li>
+ * <li>{@code evictions}: resolved environments evicted because of the bounds set by
+ * {@link MultiEnvAware#setResolvedEntryBounds}</li>
+ * <li>{@code refreshes} and {@code refreshFailures}: environments refreshed (in the background or with
+ * {@link MultiEnvAware#refresh}), and background refreshes that failed</li>
+ * <li>{@code size} and {@code resolved}: the number of environments, and how many of them were resolved or
+ * created</li>
+ * </ul>
+ */
+final class MultiEnvMetrics {
+
+    private final MetricRegistry registry;
+    private final String prefix;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter defaults;
+    private final Counter templateFallbacks;
+    private final Counter evictions;
+    private final Counter refreshes;
+    private final Counter refreshFailures;
+    private final Timer templateResolution;
+    private final Timer creation;
+
+    /**
+     * @param registry the registry to register the metrics with
+     * @param name the name of the instance
+     * @param environments the instance
+     */
+    MultiEnvMetrics(MetricRegistry registry, String name, MultiEnvAware<?> environments) {
+        this.registry = registry;
+        this.prefix = MetricRegistry.name(MultiEnvAware.class, name);
+        this.hits = registry.counter(MetricRegistry.name(prefix, "hits"));
+        this.misses = registry.counter(MetricRegistry.name(prefix, "misses"));
+        this.defaults = registry.counter(MetricRegistry.name(prefix, "defaults"));
+        this.templateFallbacks = registry.counter(MetricRegistry.name(prefix, "templateFallbacks"));
+        this.evictions = registry.counter(MetricRegistry.name(prefix, "evictions"));
+        this.refreshes = registry.counter(MetricRegistry.name(prefix, "refreshes"));
+        this.refreshFailures = registry.counter(MetricRegistry.name(prefix, "refreshFailures"));
+        this.templateResolution = registry.timer(MetricRegistry.name(prefix, "templateResolution"));
+        this.creation = registry.timer(MetricRegistry.name(prefix, "creation"));
+        registry.register(MetricRegistry.name(prefix, "size"), (Gauge<Integer>) environments::size);
+        registry.register(MetricRegistry.name(prefix, "resolved"), (Gauge<Integer>) environments::resolvedCount);
+    }
+
+    /**
+     * Count a lookup of a configured or already resolved environment
+     */
+    void hit() {
+        hits.inc();
+    }
+
+    /**
+     * Count a lookup that had to bind, resolve or create the environment
+     */
+    void miss() {
+        misses.inc();
+    }
+
+    /**
+     * Count a lookup of a blank environment that got the default environment
+     */
+    void defaulted() {
+        defaults.inc();
+    }
+
+    /**
+     * Count an environment resolved from the template
+     */
+    void templateFallback() {
+        templateFallbacks.inc();
+    }
+
+    /**
+     * Count an evicted resolved environment
+     */
+    void evicted() {
+        evictions.inc();
+    }
+
+    /**
+     * Count a refreshed environment
+     */
+    void refreshed() {
+        refreshes.inc();
+    }
+
+    /**
+     * Count a background refresh that failed
+     */
+    void refreshFailed() {
+        refreshFailures.inc();
+    }
+
+    /**
+     * @param nanos how long resolving an environment from the template took
+     */
+    void resolved(long nanos) {
+        templateResolution.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param nanos how long the creation function took
+     */
+    void created(long nanos) {
+        creation.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Remove the metrics from the registry
+     */
+    void remove() {
+        registry.removeMatching((metricName, metric) -> metricName.startsWith(prefix + "."));
+    }
+}
@@ -0,0 +1,170 @@
+package com.cvent.pangaea;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongBiFunction;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The storage behind {@link MultiEnvInt}, {@link MultiEnvLong} and {@link MultiEnvBoolean}: a value derived from every
+ * environment of a {@link MultiEnvAware}, kept as a {@code long} in an open addressing table so reading it neither
+ * boxes nor allocates.
+ *
+ * A value is derived the first time its environment is requested, by looking the environment up in the source
+ * instance, so blank names get the default environment, aliases are canonicalized, missing environments are resolved
+ * from their template or created, and unknown ones are rejected, exactly like {@link MultiEnvAware#get(Object)}.
+ * Derived values are dropped when their environment changes in the source, and all of them when a template changes.
+ *
+ * Reads don't lock. New values are added while holding the lock of this instance: the slot is filled before its key
+ * is published, and a full table is replaced by a larger copy.
+ *
+ * @param <T> - configuration object of the source instance
+ */
+final class MultiEnvPrimitive<T> {
+
+    /**
+     * Mix the high bits of the hash into the low bits used to pick a slot, like {@link java.util.HashMap} does
+     */
+    private static final int HASH_SPREAD_SHIFT = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final MultiEnvAware<T> source;
+    private final ToLongBiFunction<String, ? super T> derivation;
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /**
+     * Incremented on every change of the source, so a value derived from an environment that changed in the meantime
+     * isn't added
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param source the instance to derive values from
+     * @param derivation derives the value of an environment
+     */
+    MultiEnvPrimitive(MultiEnvAware<T> source, ToLongBiFunction<String, ? super T> derivation) {
+        this.source = source;
+        this.derivation = derivation;
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if the environment can't be found.
+     *
+     * @param key - environment name, blank for the default environment
+     * @return the derived value of the environment
+     */
+    long getAsLong(String key) {
+        String sKey = StringUtils.isBlank(key) ? source.getKeyOrDefault(key) : source.getAliases().canonical(key);
+        int hash = spread(sKey.hashCode());
+        Table t = table;
+        for (int slot = hash & t.mask;; slot = (slot + 1) & t.mask) {
+            String name = t.names.get(slot);
+            if (name == null) {
+                break;
+            }
+            if (t.hashes[slot] == hash && sKey.equals(name)) {
+                return t.values[slot];
+            }
+        }
+        long before = generation.get();
+        long value = derivation.applyAsLong(sKey, source.get(sKey));
+        add(sKey, hash, value, before);
+        return value;
+    }
+
+    private synchronized void add(String key, int hash, long value, long before) {
+        if (generation.get() != before) {
+            return;
+        }
+        Table t = table;
+        if ((t.size + 1) * 2 > t.values.length) {
+            t = t.copy(t.values.length * 2, null);
+            table = t;
+        }
+        int slot = hash & t.mask;
+        for (String name = t.names.get(slot); name != null; name = t.names.get(slot)) {
+            if (t.hashes[slot] == hash && key.equals(name)) {
+                return;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        t.hashes[slot] = hash;
+        t.values[slot] = value;
+        t.size++;
+        // Publishes the hash and value written above to readers that find the name
+        t.names.set(slot, key);
+    }
+
+    /**
+     * Called when an environment changed in the source instance
+     *
+     * @param key - the environment that changed, or null if every environment may have changed
+     */
+    synchronized void sourceChanged(String key) {
+        generation.incrementAndGet();
+        if (key == null || source.isTemplateEnvironment(key)) {
+            // Values resolved from a template aren't known apart from configured ones, start over
+            table = new Table(INITIAL_CAPACITY);
+        } else if (table.contains(spread(key.hashCode()), key)) {
+            table = table.copy(table.values.length, key);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> HASH_SPREAD_SHIFT);
+    }
+
+    /**
+     * Open addressing table with linear probing, at most half full so probe sequences stay short
+     */
+    private static final class Table {
+
+        private final AtomicReferenceArray<String> names;
+        private final int[] hashes;
+        private final long[] values;
+        private final int mask;
+        private int size;
+
+        private Table(int capacity) {
+            this.names = new AtomicReferenceArray<>(capacity);
+            this.hashes = new int[capacity];
+            this.values = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private boolean contains(int hash, String key) {
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                String name = names.get(slot);
+                if (name == null) {
+                    return false;
+                }
+                if (hashes[slot] == hash && key.equals(name)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @param capacity - the capacity of the copy, a power of two
+         * @param without - a key to leave out, or null
+         * @return a copy of this table
+         */
+        private Table copy(int capacity, String without) {
+            Table copy = new Table(capacity);
+            for (int i = 0; i < values.length; i++) {
+                String name = names.get(i);
+                if (name != null && !name.equals(without)) {
+                    int slot = hashes[i] & copy.mask;
+                    while (copy.names.get(slot) != null) {
+                        slot = (slot + 1) & copy.mask;
+                    }
+                    copy.hashes[slot] = hashes[i];
+                    copy.values[slot] = values[i];
+                    copy.names.lazySet(slot, name);
+                    copy.size++;
+                }
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.cvent.pangaea;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The environments of a {@link MultiEnvAware} at one point in time. The default and template environment names never
+ * change, the maps only change as environments are bound, resolved or put, and the whole snapshot is replaced when
+ * the instance is reconfigured.
+ *
+ * @param <T> - configuration object for specific environment
+ */
+final class MultiEnvSnapshot<T> {
+
+    /**
+     * The bound environments
+     */
+    private final ConcurrentMap<String, T> map;
+
+    /**
+     * Configured environments that haven't been bound yet, see {@link LazyBindingDeserializer}. An environment
+     * moves to the map the first time it is requested.
+     */
+    private final ConcurrentMap<String, Function<String, T>> deferred;
+
+    /**
+     * Environments in the map that were resolved from the template or built with the creation function
+     */
+    private final Set<String> resolved;
+
+    /**
+     * Environments that are currently being created (or resolved from the template). The first caller for a
+     * missing environment registers a future here and builds the value, every other caller for that environment
+     * waits on it.
+     */
+    private final ConcurrentMap<String, CompletableFuture<T>> inFlight;
+
+    private final String defaultEnvironment;
+    private final String templateEnvironment;
+
+    MultiEnvSnapshot(ConcurrentMap<String, T> map, String defaultEnvironment, String templateEnvironment) {
+        this(map, new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet(), new ConcurrentHashMap<>(),
+                defaultEnvironment, templateEnvironment);
+    }
+
+    MultiEnvSnapshot(ConcurrentMap<String, T> map, ConcurrentMap<String, Function<String, T>> deferred,
+            Set<String> resolved, ConcurrentMap<String, CompletableFuture<T>> inFlight, String defaultEnvironment,
+            String templateEnvironment) {
+        this.map = map;
+        this.deferred = deferred;
+        this.resolved = resolved;
+        this.inFlight = inFlight;
+        this.defaultEnvironment = defaultEnvironment;
+        this.templateEnvironment = templateEnvironment;
+    }
+
+    /**
+     * @return the bound environments
+     */
+    ConcurrentMap<String, T> map() {
+        return map;
+    }
+
+    /**
+     * @return configured environments that haven't been bound yet
+     */
+    ConcurrentMap<String, Function<String, T>> deferred() {
+        return deferred;
+    }
+
+    /**
+     * @return environments in the map that were resolved from the template or built with the creation function
+     */
+    Set<String> resolved() {
+        return resolved;
+    }
+
+    /**
+     * @return environments that are currently being created (or resolved from the template)
+     */
+    ConcurrentMap<String, CompletableFuture<T>> inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the default environment, or null if there is none
+     */
+    String defaultEnvironment() {
+        return defaultEnvironment;
+    }
+
+    /**
+     * @return the template environment, {@link MultiEnvAware#DEFAULT_TEMPLATE_ENVIRONMENT_NAME} if there is none
+     */
+    String templateEnvironment() {
+        return templateEnvironment;
+    }
+
+    /**
+     * @return a snapshot of the same environments with a different default or template environment
+     */
+    MultiEnvSnapshot<T> withEnvironments(String newDefaultEnvironment, String newTemplateEnvironment) {
+        return new MultiEnvSnapshot<>(map, deferred, resolved, inFlight, newDefaultEnvironment, newTemplateEnvironment);
+    }
+
+    /**
+     * Check that a configured value may be added to this snapshot, and record it if it's the default or the template
+     * environment.
+     *
+     * @param key - environment name
+     * @param value - configuration for the environment
+     * @return this snapshot, or a copy of it with a new default or template environment
+     */
+    MultiEnvSnapshot<T> withRoles(String key, T value) {
+        MultiEnvSnapshot<T> s = this;
+        if (StringUtils.isBlank(key)) {
+            throw new MultiEnvSupportException(String.format("Expected non-empty value for environment, was: %s", key));
+        }
+        boolean isDefaultEnvironment = false;
+        if (value instanceof MultiEnvDefaultedConfiguration) {
+            isDefaultEnvironment = ((MultiEnvDefaultedConfiguration) value).isDefault();
+            if (isDefaultEnvironment && s.defaultEnvironment != null) {
+                throw new MultiEnvSupportException(String.format(
+                        "Only one default environment is allowed per instance. Found %s and %s",
+                        key, s.defaultEnvironment));
+            } else if (isDefaultEnvironment) {
+                s = s.withEnvironments(key, s.templateEnvironment);
+            }
+        }
+        if (value instanceof MultiEnvTemplateConfiguration) {
+            boolean isTemplateEnvironment = ((MultiEnvTemplateConfiguration) value).isTemplate();
+            if (isTemplateEnvironment && s.hasTemplateEnvironment()) {
+                throw new MultiEnvSupportException(String.format(
+                        "Only one template environment is allowed per instance. Found %s and %s",
+                        key, s.templateEnvironment));
+            } else if (isTemplateEnvironment && isDefaultEnvironment) {
+                throw new MultiEnvSupportException(String.format(
+                        "You cannot have a configuration be a default and a template at the same time. Found %s", key));
+            } else if (isTemplateEnvironment) {
+                s = s.withEnvironments(s.defaultEnvironment, key);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @return {@code true} if there is a template environment
+     */
+    boolean hasTemplateEnvironment() {
+        return !templateEnvironment.equals(MultiEnvAware.DEFAULT_TEMPLATE_ENVIRONMENT_NAME);
+    }
+
+    /**
+     * @param key - environment name
+     * @return {@code true} if the environment is bound or waiting to be bound
+     */
+    boolean containsKey(Object key) {
+        return map.containsKey(key) || deferred.containsKey(key);
+    }
+
+    /**
+     * @param key - environment name
+     * @return {@code true} if the environment was configured, rather than resolved or created
+     */
+    boolean isConfigured(String key) {
+        return deferred.containsKey(key) || (map.containsKey(key) && !resolved.contains(key));
+    }
+}
@@ -11,4 +11,17 @@ public class MultiEnvSupportException extends RuntimeException {
         super(msg);
     }
 
+    public MultiEnvSupportException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
+    /**
+     * @param msg the detail message
+     * @param writableStackTrace {@code false} to skip filling in the stack trace, which makes the exception cheap
+     * enough to be thrown for every request with a bad environment (and safe to throw more than once)
+     */
+    public MultiEnvSupportException(String msg, boolean writableStackTrace) {
+        super(msg, null, writableStackTrace, writableStackTrace);
+    }
+
 }
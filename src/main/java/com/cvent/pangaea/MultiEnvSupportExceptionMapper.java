@@ -6,7 +6,6 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.Objects;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
 
 /**
@@ -85,7 +84,7 @@ public class MultiEnvSupportExceptionMapper implements ExceptionMapper<MultiEnvS
 
         @Override
         public String toString() {
-            return ReflectionToStringBuilder.reflectionToString(this);
+            return "ErrorMessage[code=" + code + ",message=" + message + ",details=" + details + "]";
         }
     }
 }
@@ -0,0 +1,101 @@
+package com.cvent.pangaea;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of {@link MultiEnvAware#preload}: how long each environment took to resolve and which ones failed.
+ */
+public final class PreloadReport {
+
+    private final Map<String, Result> results;
+    private final Duration duration;
+
+    PreloadReport(Map<String, Result> results, Duration duration) {
+        this.results = Collections.unmodifiableMap(results);
+        this.duration = duration;
+    }
+
+    /**
+     * @return the result for every requested environment, in the order they were requested
+     */
+    public Map<String, Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the failure for every environment that couldn't be resolved
+     */
+    public Map<String, Throwable> getFailures() {
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        results.forEach((key, result) -> {
+            if (!result.isSuccessful()) {
+                failures.put(key, result.getFailure());
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * @return {@code true} if every environment was resolved
+     */
+    public boolean isSuccessful() {
+        return results.values().stream().allMatch(Result::isSuccessful);
+    }
+
+    /**
+     * @return how long the whole preload took
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Preloaded %d environments in %d ms, failed: %s", results.size(), duration.toMillis(),
+                getFailures().keySet());
+    }
+
+    /**
+     * The outcome of resolving a single environment
+     */
+    public static final class Result {
+
+        private final Duration duration;
+        private final Throwable failure;
+
+        Result(Duration duration, Throwable failure) {
+            this.duration = duration;
+            this.failure = failure;
+        }
+
+        /**
+         * @return {@code true} if the environment was resolved
+         */
+        public boolean isSuccessful() {
+            return failure == null;
+        }
+
+        /**
+         * @return how long resolving the environment took
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return why the environment couldn't be resolved, or null if it was
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return failure == null ? duration.toMillis() + " ms" : "failed after " + duration.toMillis() + " ms: "
+                    + failure;
+        }
+    }
+}
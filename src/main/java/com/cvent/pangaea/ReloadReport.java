@@ -0,0 +1,85 @@
+package com.cvent.pangaea;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of {@link MultiEnvAware#reload}: which environments were added, changed (and where), removed or kept,
+ * and which resolved environments were dropped because the template they were resolved from changed.
+ */
+public final class ReloadReport {
+
+    private final Set<String> added;
+    private final Map<String, List<String>> changed;
+    private final Set<String> removed;
+    private final Set<String> unchanged;
+    private final Set<String> changedTemplates;
+    private final Set<String> invalidated;
+
+    ReloadReport(ConfigurationDiff diff, Set<String> changedTemplates, Set<String> invalidated) {
+        this.added = Collections.unmodifiableSet(diff.getAdded().keySet());
+        this.changed = Collections.unmodifiableMap(diff.getChangedPaths());
+        this.removed = Collections.unmodifiableSet(diff.getRemoved());
+        this.unchanged = Collections.unmodifiableSet(diff.getUnchanged());
+        this.changedTemplates = Collections.unmodifiableSet(changedTemplates);
+        this.invalidated = Collections.unmodifiableSet(invalidated);
+    }
+
+    /**
+     * @return the configured environments that are new
+     */
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the configured environments that were bound again, with the JSON pointers (relative to the environment)
+     * of the values that changed
+     */
+    public Map<String, List<String>> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the configured environments that are gone
+     */
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the configured environments that kept their value
+     */
+    public Set<String> getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the template environments that changed or are gone
+     */
+    public Set<String> getChangedTemplates() {
+        return changedTemplates;
+    }
+
+    /**
+     * @return the resolved or created environments that were dropped, they are resolved again on their next lookup
+     */
+    public Set<String> getInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * @return {@code true} if nothing changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty() && invalidated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Reloaded environments, added %s, changed %s, removed %s, invalidated %s, kept %d",
+                added, changed.keySet(), removed, invalidated, unchanged.size());
+    }
+}
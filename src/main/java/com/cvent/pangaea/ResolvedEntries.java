@@ -0,0 +1,135 @@
+package com.cvent.pangaea;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Tracks the entries of a {@link MultiEnvAware} that were resolved from the template or built by the creation
+ * function, and decides which of them to evict once the configured bounds are exceeded.
+ *
+ * The values themselves stay in the {@link MultiEnvAware} internal map; this class only keeps the eviction policy
+ * (W-TinyLFU size bound plus optional idle and time-to-live expiry) and tells the owner when an entry has to go.
+ * Configured entries are never added here, so they are never evicted.
+ *
+ * With a refresh interval, the first read of an entry that is older than the interval asks the owner for a new value
+ * on the refresh executor; the read itself, and every read until the new value is in place, gets the old value.
+ *
+ * @param <T> The type of each value within the MultiEnvAware map
+ */
+final class ResolvedEntries<T> {
+
+    private final Cache<String, T> cache;
+
+    /**
+     * @param maximumSize the maximum number of resolved entries to keep
+     * @param expireAfterAccess evict entries that have not been read for this long, or null to never expire on idle
+     * @param expireAfterWrite evict entries this long after they were resolved, or null to never expire on age
+     * @param onEviction called with the key and value of every entry that was evicted or expired, on whichever thread
+     * runs maintenance
+     */
+    ResolvedEntries(long maximumSize, Duration expireAfterAccess, Duration expireAfterWrite,
+            BiConsumer<String, T> onEviction) {
+        this(maximumSize, expireAfterAccess, expireAfterWrite, null, null, null, onEviction);
+    }
+
+    /**
+     * @param maximumSize the maximum number of resolved entries to keep
+     * @param expireAfterAccess evict entries that have not been read for this long, or null to never expire on idle
+     * @param expireAfterWrite evict entries this long after they were resolved, or null to never expire on age
+     * @param refreshAfterWrite refresh entries read this long after they were resolved, or null to never refresh
+     * @param refreshExecutor the executor to refresh entries on
+     * @param onRefresh called on the refresh executor with the key and current value of an entry to refresh, returns
+     * the value that replaced it or null if it couldn't be replaced
+     * @param onEviction called with the key and value of every entry that was evicted or expired, on whichever thread
+     * runs maintenance
+     */
+    ResolvedEntries(long maximumSize, Duration expireAfterAccess, Duration expireAfterWrite,
+            Duration refreshAfterWrite, Executor refreshExecutor, BiFunction<String, T, T> onRefresh,
+            BiConsumer<String, T> onEviction) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("'maximumSize' cannot be negative");
+        }
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(maximumSize);
+        if (expireAfterAccess != null) {
+            builder.expireAfterAccess(expireAfterAccess.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        // Run maintenance on whichever thread touches the cache, which includes every lookup that records an access,
+        // so the internal map never overshoots the bound while eviction waits for a pool thread. The listener only
+        // removes the entry, the owner shuts the value down elsewhere
+        Caffeine<String, T> configured = builder.executor(Runnable::run).<String, T>removalListener(
+                (key, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        onEviction.accept(key, value);
+                    }
+                });
+        if (refreshAfterWrite == null) {
+            this.cache = configured.build();
+        } else {
+            if (refreshExecutor == null || onRefresh == null) {
+                throw new IllegalArgumentException("Refreshing entries needs an executor");
+            }
+            // The values are added with put, so the loader only ever reloads. Reads trigger the reload, and it must
+            // not run on the reading thread
+            this.cache = configured.refreshAfterWrite(refreshAfterWrite.toNanos(), TimeUnit.NANOSECONDS)
+                    .build(new CacheLoader<String, T>() {
+                        @Override
+                        public T load(String key) {
+                            return null;
+                        }
+
+                        @Override
+                        public CompletableFuture<T> asyncReload(String key, T oldValue, Executor executor) {
+                            return CompletableFuture.supplyAsync(() -> onRefresh.apply(key, oldValue),
+                                    refreshExecutor);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Start tracking a resolved entry
+     *
+     * @param key - environment name
+     * @param value - resolved value
+     */
+    void add(String key, T value) {
+        cache.put(key, value);
+    }
+
+    /**
+     * Record a read of the entry so idle expiry and the frequency sketch see it, and start refreshing it if it is
+     * due
+     *
+     * @param key - environment name
+     */
+    void recordAccess(String key) {
+        cache.getIfPresent(key);
+    }
+
+    /**
+     * Stop tracking an entry without treating it as evicted
+     *
+     * @param key - environment name
+     */
+    void remove(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Stop tracking all entries without treating them as evicted
+     */
+    void clear() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,101 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.MapMaker;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves environments from the templates chosen by {@link TemplateRoutes}, replacing {@code {{name}}} in the
+ * template with the text the route captured as {@code name}. Environments resolved from the template environment
+ * without a route keep the {@link SiloTemplateResolver} convention: XXX is replaced by the key without its first
+ * character.
+ *
+ * For example, with the route {@code pr-{number:digits}-{branch}} environment {@code pr-118-search} resolves
+ * <pre>
+ *    environmentConfig:
+ *        preview-template:
+ *            url: "https://{{branch}}.preview.cvent.com/pr/{{number}}"
+ * </pre>
+ * to {@code https://search.preview.cvent.com/pr/118}.
+ *
+ * Like {@link CompiledSiloTemplateResolver} every template is analysed once and then only the parts holding
+ * placeholders are copied for each environment. A plan is kept for as long as its template instance is in use.
+ *
+ * @param <T> The type T that will get dynamically resolved at runtime
+ */
+public class RoutedTemplateResolver<T> implements TemplateResolver<T> {
+
+    private static final String[] SILO_PLACEHOLDERS = {SiloTemplateResolver.SILO_REPLACEMENT_DIGITS};
+
+    private final Class<T> classType;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final ConcurrentMap<T, CompiledTemplate> compiled = new MapMaker().weakKeys().makeMap();
+
+    public RoutedTemplateResolver(Class<T> classType, ObjectMapper mapper) {
+        this.classType = classType;
+        this.mapper = mapper;
+        this.reader = mapper.readerFor(classType);
+    }
+
+    @Override
+    public T resolve(String key, T value) {
+        if (value == null) {
+            return null;
+        }
+        return read(key, plan(value, SILO_PLACEHOLDERS).apply(key.substring(1)));
+    }
+
+    @Override
+    public T resolve(String key, T value, Map<String, String> variables) {
+        if (value == null) {
+            return null;
+        }
+        String[] placeholders = new String[variables.size()];
+        String[] replacements = new String[variables.size()];
+        int i = 0;
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            placeholders[i] = TemplateRoutes.placeholder(variable.getKey());
+            replacements[i++] = variable.getValue();
+        }
+        return read(key, plan(value, placeholders).apply(replacements));
+    }
+
+    private TemplatePlan plan(T template, String[] placeholders) {
+        CompiledTemplate current = compiled.get(template);
+        if (current == null || !Arrays.equals(current.placeholders, placeholders)) {
+            current = new CompiledTemplate(placeholders, TemplatePlan.compile(mapper.valueToTree(template),
+                    placeholders));
+            compiled.put(template, current);
+        }
+        return current.plan;
+    }
+
+    private T read(String key, JsonNode tree) {
+        try {
+            return reader.readValue(tree);
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Failed to resolve %s for environment %s",
+                    classType.getSimpleName(), key), ex);
+        }
+    }
+
+    /**
+     * The plan of a template for one set of placeholders
+     */
+    private static final class CompiledTemplate {
+
+        private final String[] placeholders;
+        private final TemplatePlan plan;
+
+        CompiledTemplate(String[] placeholders, TemplatePlan plan) {
+            this.placeholders = placeholders;
+            this.plan = plan;
+        }
+    }
+}
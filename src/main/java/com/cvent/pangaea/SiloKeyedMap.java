@@ -0,0 +1,365 @@
+package com.cvent.pangaea;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The environments of a {@link MultiEnvAware} with silo indexing enabled, see {@link MultiEnvAware#setSiloIndex}.
+ *
+ * Keys of the form {@code S<number>} (with no leading zeros and a number below {@value #MAX_SILO}) are parsed into
+ * their number and stored in an array indexed by it, so looking one up is a parse of a few characters and an array
+ * read, and {@link #get(int)} doesn't need the key at all. Every other key is kept in a {@link ConcurrentHashMap}.
+ *
+ * Reads don't lock. Changes to the array are made while holding the lock of this map, so the array can grow without
+ * losing a concurrent change; environments are added far less often than they are read.
+ *
+ * @param <T> - configuration object for specific environment
+ */
+final class SiloKeyedMap<T> extends AbstractMap<String, T> implements ConcurrentMap<String, T> {
+
+    /**
+     * Silo numbers from here on are kept in the fallback map, so a stray key can't allocate a huge array
+     */
+    static final int MAX_SILO = 65_536;
+
+    private static final String PREFIX = "S";
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_DIGITS = 5;
+    private static final int RADIX = 10;
+
+    private volatile AtomicReferenceArray<T> silos = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private int siloCount;
+    private final ConcurrentMap<String, T> others = new ConcurrentHashMap<>();
+    private final Set<Entry<String, T>> entrySet = new EntrySet();
+
+    /**
+     * @param key - an environment name, may be anything
+     * @return the silo number of the name, or -1 if it isn't of the form {@code S<number>} or the number is too large
+     */
+    static int silo(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String name = (String) key;
+        int length = name.length();
+        if (length < 2 || length > MAX_DIGITS + 1 || name.charAt(0) != 'S' || (name.charAt(1) == '0' && length > 2)) {
+            return -1;
+        }
+        int silo = 0;
+        for (int i = 1; i < length; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            silo = silo * RADIX + (c - '0');
+        }
+        return silo < MAX_SILO ? silo : -1;
+    }
+
+    /**
+     * @param silo - a silo number
+     * @return the environment name of the silo
+     */
+    static String key(int silo) {
+        return PREFIX + silo;
+    }
+
+    /**
+     * @param silo - a silo number
+     * @return the value of environment {@code S<silo>}, or null if there is none
+     */
+    T get(int silo) {
+        if (silo < 0 || silo >= MAX_SILO) {
+            return silo < 0 ? null : others.get(key(silo));
+        }
+        AtomicReferenceArray<T> array = silos;
+        return silo < array.length() ? array.get(silo) : null;
+    }
+
+    @Override
+    public T get(Object key) {
+        int silo = silo(key);
+        return silo < 0 ? others.get(key) : get(silo);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return siloCount() + others.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private synchronized int siloCount() {
+        return siloCount;
+    }
+
+    @Override
+    public T put(String key, T value) {
+        Objects.requireNonNull(value);
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.put(key, value);
+        }
+        synchronized (this) {
+            return set(silo, value);
+        }
+    }
+
+    @Override
+    public T putIfAbsent(String key, T value) {
+        Objects.requireNonNull(value);
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.putIfAbsent(key, value);
+        }
+        synchronized (this) {
+            T previous = get(silo);
+            return previous != null ? previous : set(silo, value);
+        }
+    }
+
+    @Override
+    public T remove(Object key) {
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.remove(key);
+        }
+        synchronized (this) {
+            return set(silo, null);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.remove(key, value);
+        }
+        synchronized (this) {
+            T previous = get(silo);
+            if (previous == null || !previous.equals(value)) {
+                return false;
+            }
+            set(silo, null);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean replace(String key, T oldValue, T newValue) {
+        Objects.requireNonNull(newValue);
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.replace(key, oldValue, newValue);
+        }
+        synchronized (this) {
+            T previous = get(silo);
+            if (previous == null || !previous.equals(oldValue)) {
+                return false;
+            }
+            set(silo, newValue);
+            return true;
+        }
+    }
+
+    @Override
+    public T replace(String key, T value) {
+        Objects.requireNonNull(value);
+        int silo = silo(key);
+        if (silo < 0) {
+            return others.replace(key, value);
+        }
+        synchronized (this) {
+            return get(silo) == null ? null : set(silo, value);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            silos = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+            siloCount = 0;
+        }
+        others.clear();
+    }
+
+    @Override
+    public Set<Entry<String, T>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * Set a silo, growing the array if needed. Must hold the lock of this map.
+     *
+     * @return the previous value
+     */
+    private T set(int silo, T value) {
+        AtomicReferenceArray<T> array = silos;
+        if (silo >= array.length()) {
+            if (value == null) {
+                return null;
+            }
+            int capacity = Math.min(MAX_SILO, Integer.highestOneBit(silo) << 1);
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < array.length(); i++) {
+                grown.lazySet(i, array.get(i));
+            }
+            grown.set(silo, value);
+            silos = grown;
+            siloCount++;
+            return null;
+        }
+        T previous = array.getAndSet(silo, value);
+        if (previous == null && value != null) {
+            siloCount++;
+        } else if (previous != null && value == null) {
+            siloCount--;
+        }
+        return previous;
+    }
+
+    /**
+     * The silos in order of their number, then every other environment. Like the views of {@link ConcurrentHashMap}
+     * the iterators are weakly consistent and never throw {@link java.util.ConcurrentModificationException}.
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, T>> {
+
+        @Override
+        public Iterator<Entry<String, T>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return SiloKeyedMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Object value = get(((Entry<?, ?>) o).getKey());
+            return value != null && value.equals(((Entry<?, ?>) o).getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Entry && SiloKeyedMap.this.remove(((Entry<?, ?>) o).getKey(),
+                    ((Entry<?, ?>) o).getValue());
+        }
+
+        @Override
+        public void clear() {
+            SiloKeyedMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates the array as it was when the iterator was created, then the fallback map
+     */
+    private final class EntryIterator implements Iterator<Entry<String, T>> {
+
+        private final AtomicReferenceArray<T> array = silos;
+        private final Iterator<Entry<String, T>> rest = others.entrySet().iterator();
+        private int index;
+        private Entry<String, T> next;
+        private Entry<String, T> last;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && index < array.length()) {
+                T value = array.get(index);
+                if (value != null) {
+                    next = new SiloEntry(index, value);
+                }
+                index++;
+            }
+            if (next == null && rest.hasNext()) {
+                next = rest.next();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            SiloKeyedMap.this.remove(last.getKey(), last.getValue());
+            last = null;
+        }
+    }
+
+    /**
+     * An entry of the array, writing through to the map like the entries of {@link ConcurrentHashMap}
+     */
+    private final class SiloEntry implements Entry<String, T> {
+
+        private final String key;
+        private T value;
+
+        private SiloEntry(int silo, T value) {
+            this.key = key(silo);
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public T getValue() {
+            return value;
+        }
+
+        @Override
+        public T setValue(T newValue) {
+            Objects.requireNonNull(newValue);
+            value = newValue;
+            return put(key, newValue);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && key.equals(((Entry<?, ?>) o).getKey())
+                    && value.equals(((Entry<?, ?>) o).getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
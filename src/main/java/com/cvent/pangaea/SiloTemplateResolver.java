@@ -19,7 +19,7 @@ import java.io.IOException;
  */
 public class SiloTemplateResolver<T> implements TemplateResolver<T> {
 
-    private static final String SILO_REPLACEMENT_DIGITS = "XXX";
+    static final String SILO_REPLACEMENT_DIGITS = "XXX";
     private final Class<T> classType;
     private final ObjectMapper mapper;
 
@@ -0,0 +1,202 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template tree that has been analysed once for its placeholders, so it can be resolved many times cheaply.
+ *
+ * Compiling walks the tree and records every text value and field name that contains a placeholder. Applying the
+ * plan copies only the objects and arrays on the way to those spots and shares every other sub tree with the template,
+ * so resolving a silo costs roughly the number of placeholders instead of the size of the configuration.
+ *
+ * The template tree must not be modified after it was compiled.
+ */
+final class TemplatePlan {
+
+    private final JsonNode template;
+    private final Patch patch;
+
+    private TemplatePlan(JsonNode template, Patch patch) {
+        this.template = template;
+        this.patch = patch;
+    }
+
+    /**
+     * Analyse a template tree
+     *
+     * @param template the template tree
+     * @param placeholders the texts to replace in field names and text values
+     * @return the compiled plan
+     */
+    static TemplatePlan compile(JsonNode template, String... placeholders) {
+        return new TemplatePlan(template, compile(template, placeholders, JsonNodeFactory.instance));
+    }
+
+    /**
+     * Build a resolved copy of the template
+     *
+     * @param replacements the texts that replace every occurrence of the placeholder at the same position
+     * @return the resolved tree, which shares every sub tree without a placeholder with the template
+     */
+    JsonNode apply(String... replacements) {
+        return patch == null ? template : patch.apply(replacements);
+    }
+
+    private static boolean containsAny(String text, String[] placeholders) {
+        for (String placeholder : placeholders) {
+            if (text.contains(placeholder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String replaceAll(String text, String[] placeholders, String[] replacements) {
+        String replaced = text;
+        for (int i = 0; i < placeholders.length; i++) {
+            replaced = replaced.replace(placeholders[i], replacements[i]);
+        }
+        return replaced;
+    }
+
+    private static Patch compile(JsonNode node, String[] placeholders, JsonNodeFactory factory) {
+        if (node.isTextual()) {
+            return containsAny(node.textValue(), placeholders) ? new TextPatch(node.textValue(), placeholders) : null;
+        }
+        if (node.isObject()) {
+            return compileObject(node, placeholders, factory);
+        }
+        if (node.isArray()) {
+            return compileArray(node, placeholders, factory);
+        }
+        return null;
+    }
+
+    private static Patch compileObject(JsonNode node, String[] placeholders, JsonNodeFactory factory) {
+        int size = node.size();
+        String[] names = new String[size];
+        boolean[] renamed = new boolean[size];
+        JsonNode[] values = new JsonNode[size];
+        Patch[] patches = new Patch[size];
+        boolean patched = false;
+
+        int i = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); i++) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            names[i] = field.getKey();
+            renamed[i] = containsAny(field.getKey(), placeholders);
+            values[i] = field.getValue();
+            patches[i] = compile(field.getValue(), placeholders, factory);
+            patched |= renamed[i] || patches[i] != null;
+        }
+        return patched ? new ObjectPatch(names, renamed, values, patches, placeholders, factory) : null;
+    }
+
+    private static Patch compileArray(JsonNode node, String[] placeholders, JsonNodeFactory factory) {
+        List<JsonNode> values = new ArrayList<>(node.size());
+        List<Patch> patches = new ArrayList<>(node.size());
+        boolean patched = false;
+
+        for (JsonNode element : node) {
+            Patch elementPatch = compile(element, placeholders, factory);
+            values.add(element);
+            patches.add(elementPatch);
+            patched |= elementPatch != null;
+        }
+        return patched ? new ArrayPatch(values.toArray(new JsonNode[0]), patches.toArray(new Patch[0]), factory)
+                : null;
+    }
+
+    /**
+     * Builds the resolved copy of one node of the template
+     */
+    private interface Patch {
+
+        JsonNode apply(String[] replacements);
+    }
+
+    /**
+     * Replaces the placeholders in a text value
+     */
+    private static final class TextPatch implements Patch {
+
+        private final String text;
+        private final String[] placeholders;
+
+        TextPatch(String text, String[] placeholders) {
+            this.text = text;
+            this.placeholders = placeholders;
+        }
+
+        @Override
+        public JsonNode apply(String[] replacements) {
+            return TextNode.valueOf(replaceAll(text, placeholders, replacements));
+        }
+    }
+
+    /**
+     * Copies an object, renaming fields and patching the values that contain a placeholder
+     */
+    private static final class ObjectPatch implements Patch {
+
+        private final String[] names;
+        private final boolean[] renamed;
+        private final JsonNode[] values;
+        private final Patch[] patches;
+        private final String[] placeholders;
+        private final JsonNodeFactory factory;
+
+        ObjectPatch(String[] names, boolean[] renamed, JsonNode[] values, Patch[] patches, String[] placeholders,
+                JsonNodeFactory factory) {
+            this.names = names;
+            this.renamed = renamed;
+            this.values = values;
+            this.patches = patches;
+            this.placeholders = placeholders;
+            this.factory = factory;
+        }
+
+        @Override
+        public JsonNode apply(String[] replacements) {
+            ObjectNode copy = factory.objectNode();
+            for (int i = 0; i < names.length; i++) {
+                String name = renamed[i] ? replaceAll(names[i], placeholders, replacements) : names[i];
+                copy.set(name, patches[i] == null ? values[i] : patches[i].apply(replacements));
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Copies an array, patching the elements that contain a placeholder
+     */
+    private static final class ArrayPatch implements Patch {
+
+        private final JsonNode[] values;
+        private final Patch[] patches;
+        private final JsonNodeFactory factory;
+
+        ArrayPatch(JsonNode[] values, Patch[] patches, JsonNodeFactory factory) {
+            this.values = values;
+            this.patches = patches;
+            this.factory = factory;
+        }
+
+        @Override
+        public JsonNode apply(String[] replacements) {
+            ArrayNode copy = factory.arrayNode(values.length);
+            for (int i = 0; i < values.length; i++) {
+                copy.add(patches[i] == null ? values[i] : patches[i].apply(replacements));
+            }
+            return copy;
+        }
+    }
+}
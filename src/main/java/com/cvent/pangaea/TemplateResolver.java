@@ -1,5 +1,10 @@
 package com.cvent.pangaea;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 /**
  * An interface that allows us to transform/resolve part of an object at runtime.
  *
@@ -17,4 +22,30 @@ public interface TemplateResolver<T> {
      * @return A resolved value
      */
     T resolve(String key, T value);
+
+    /**
+     * Resolve a value from a template chosen by {@link TemplateRoutes}. By default the variables are ignored and
+     * {@link #resolve(String, Object)} is used; {@link RoutedTemplateResolver} replaces them in the template.
+     *
+     * @param key The key name of the value you want to replace
+     * @param value The template of the route the key matched
+     * @param variables The text the route captured from the key, by capture name
+     * @return A resolved value
+     */
+    default T resolve(String key, T value, Map<String, String> variables) {
+        return resolve(key, value);
+    }
+
+    /**
+     * Resolve without holding the calling thread, for {@link MultiEnvAware#getAsync}. By default {@link #resolve}
+     * runs on the executor; resolvers that wait on asynchronous clients can return their own stage instead.
+     *
+     * @param key The key name of the value you want to replace
+     * @param value The value to try and replace dynamic components
+     * @param executor The executor of the instance that asks for it
+     * @return A stage that completes with the resolved value
+     */
+    default CompletionStage<T> resolveAsync(String key, T value, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> resolve(key, value), executor);
+    }
 }
@@ -0,0 +1,430 @@
+package com.cvent.pangaea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Chooses the template an environment that isn't configured is resolved from, by matching its name against key
+ * patterns, so each family of environments (silos, load test pods, preview environments, ...) can have a template of
+ * its own. See {@link MultiEnvAware#setTemplateRoutes}.
+ *
+ * A pattern is literal text with named captures in braces:
+ * <ul>
+ * <li>{@code {name:digits}} captures one or more digits</li>
+ * <li>{@code {name:alnum}} captures one or more ASCII letters and digits</li>
+ * <li>{@code {name}} captures one or more characters up to the next literal character of the pattern, or up to the
+ * end of the name if the capture ends the pattern</li>
+ * </ul>
+ * The captured text replaces {@code {{name}}} in the template, see {@link RoutedTemplateResolver}.
+ *
+ * The patterns are compiled into a single trie, so patterns sharing a prefix are matched together and choosing a
+ * template looks at each character of a name once per candidate pattern, without regular expressions. Every capture
+ * consumes an unambiguous span, so a pattern matches a name in at most one way. Where several patterns match, literal
+ * text wins over a capture, and a narrower capture ({@code digits}) over a wider one ({@code alnum}, then any).
+ *
+ * <pre>
+ *    TemplateRoutes routes = TemplateRoutes.builder()
+ *            .route("S{silo:digits}", "silo-template")
+ *            .route("loadtest-{pod:alnum}", "loadtest-template")
+ *            .route("pr-{number:digits}-{branch}", "preview-template")
+ *            .build();
+ * </pre>
+ */
+public final class TemplateRoutes {
+
+    /**
+     * No routes, every environment that isn't configured is resolved from the template environment
+     */
+    public static final TemplateRoutes NONE = new TemplateRoutes(Collections.emptyMap());
+
+    private static final String PLACEHOLDER_PREFIX = "{{";
+    private static final String PLACEHOLDER_SUFFIX = "}}";
+
+    private final Map<String, String> routes;
+    private final Set<String> templateEnvironments;
+    private final Node root = new Node();
+    private final int maxCaptures;
+
+    private TemplateRoutes(Map<String, String> routes) {
+        this.routes = routes;
+        this.templateEnvironments = Collections.unmodifiableSet(new LinkedHashSet<>(routes.values()));
+        int captures = 0;
+        for (Map.Entry<String, String> route : routes.entrySet()) {
+            captures = Math.max(captures, add(route.getKey(), route.getValue()));
+        }
+        this.maxCaptures = captures;
+    }
+
+    /**
+     * @return a builder for routes
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param variable the name of a capture
+     * @return the text the captured value replaces in a template, {@code {{variable}}}
+     */
+    public static String placeholder(String variable) {
+        return PLACEHOLDER_PREFIX + variable + PLACEHOLDER_SUFFIX;
+    }
+
+    /**
+     * Find the template for an environment
+     *
+     * @param key - environment name, may be null
+     * @return the matching route and the text it captured, or null if no pattern matches
+     */
+    public Match match(String key) {
+        if (key == null || routes.isEmpty()) {
+            return null;
+        }
+        int[] spans = new int[maxCaptures * 2];
+        Route route = match(root, key, 0, 0, spans);
+        if (route == null) {
+            return null;
+        }
+        Map<String, String> variables = new LinkedHashMap<>();
+        for (int i = 0; i < route.variables.length; i++) {
+            variables.put(route.variables[i], key.substring(spans[i * 2], spans[i * 2 + 1]));
+        }
+        return new Match(route.pattern, route.templateEnvironment, Collections.unmodifiableMap(variables));
+    }
+
+    /**
+     * @return {@code true} if there are no routes
+     */
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * @return the environments the routes resolve from
+     */
+    public Set<String> getTemplateEnvironments() {
+        return templateEnvironments;
+    }
+
+    /**
+     * @return the template environment of each pattern
+     */
+    public Map<String, String> asMap() {
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateRoutes" + routes;
+    }
+
+    private static Route match(Node node, String key, int position, int depth, int[] spans) {
+        if (position == key.length()) {
+            return node.route;
+        }
+        Node literal = node.literal(key.charAt(position));
+        if (literal != null) {
+            Route route = match(literal, key, position + 1, depth, spans);
+            if (route != null) {
+                return route;
+            }
+        }
+        for (Capture capture : node.captures) {
+            int end = capture.end(key, position);
+            if (end > position) {
+                Route route = match(capture.next, key, end, depth + 1, spans);
+                if (route != null) {
+                    spans[depth * 2] = position;
+                    spans[depth * 2 + 1] = end;
+                    return route;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a pattern to the trie
+     *
+     * @return the number of captures of the pattern
+     */
+    private int add(String pattern, String templateEnvironment) {
+        Node node = root;
+        Set<String> names = new LinkedHashSet<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c != '{') {
+                if (c == '}') {
+                    throw invalid(pattern, "unmatched '}'");
+                }
+                node = node.literalOrAdd(c);
+                i++;
+                continue;
+            }
+            int close = pattern.indexOf('}', i);
+            if (close < 0) {
+                throw invalid(pattern, "unmatched '{'");
+            }
+            String[] capture = pattern.substring(i + 1, close).split(":", 2);
+            String name = capture[0];
+            CharClass charClass = capture.length == 1 ? CharClass.ANY : CharClass.of(capture[1], pattern);
+            if (!name.matches("[A-Za-z_][A-Za-z0-9_]*") || !names.add(name)) {
+                throw invalid(pattern, "capture names must be unique identifiers, found '" + name + "'");
+            }
+            i = close + 1;
+            Character stop = i < pattern.length() ? pattern.charAt(i) : null;
+            if (stop != null && stop == '{') {
+                throw invalid(pattern, "a capture must be followed by literal text or end the pattern");
+            }
+            if (stop != null && charClass != CharClass.ANY && charClass.contains(stop)) {
+                throw invalid(pattern, "the text after '" + name + "' can't start with a character it captures");
+            }
+            node = node.captureOrAdd(charClass, stop);
+        }
+        if (node.route != null) {
+            throw new IllegalArgumentException(String.format("Patterns '%s' and '%s' match the same environments",
+                    node.route.pattern, pattern));
+        }
+        node.route = new Route(pattern, templateEnvironment, names.toArray(new String[0]));
+        return names.size();
+    }
+
+    private static IllegalArgumentException invalid(String pattern, String reason) {
+        return new IllegalArgumentException(String.format("Invalid environment pattern '%s': %s", pattern, reason));
+    }
+
+    /**
+     * What a capture matches
+     */
+    private enum CharClass {
+        DIGITS {
+            @Override
+            boolean contains(char c) {
+                return c >= '0' && c <= '9';
+            }
+        },
+        ALNUM {
+            @Override
+            boolean contains(char c) {
+                return DIGITS.contains(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            }
+        },
+        ANY {
+            @Override
+            boolean contains(char c) {
+                return true;
+            }
+        };
+
+        abstract boolean contains(char c);
+
+        static CharClass of(String name, String pattern) {
+            for (CharClass charClass : values()) {
+                if (charClass.name().equalsIgnoreCase(name)) {
+                    return charClass;
+                }
+            }
+            throw invalid(pattern, "unknown capture type '" + name + "', expected digits, alnum or any");
+        }
+    }
+
+    /**
+     * A node of the trie: the literal characters and captures that can follow, and the route of the pattern that
+     * ends here
+     */
+    private static final class Node {
+
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private Capture[] captures = new Capture[0];
+        private Route route;
+
+        private Node literal(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node literalOrAdd(char c) {
+            Node child = literal(c);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+
+        private Node captureOrAdd(CharClass charClass, Character stop) {
+            for (Capture capture : captures) {
+                if (capture.charClass == charClass && capture.stops(stop)) {
+                    return capture.next;
+                }
+            }
+            List<Capture> sorted = new ArrayList<>(Arrays.asList(captures));
+            Capture capture = new Capture(charClass, stop, new Node());
+            sorted.add(capture);
+            // Narrower captures are tried first
+            sorted.sort((a, b) -> a.charClass.compareTo(b.charClass));
+            captures = sorted.toArray(new Capture[0]);
+            return capture.next;
+        }
+    }
+
+    /**
+     * An edge of the trie that consumes the text of one capture. Captures are named by the route they lead to, so
+     * patterns that differ only in capture names share their edges.
+     */
+    private static final class Capture {
+
+        private final CharClass charClass;
+        private final boolean stopsAtChar;
+        private final char stop;
+        private final Node next;
+
+        private Capture(CharClass charClass, Character stop, Node next) {
+            this.charClass = charClass;
+            this.stopsAtChar = stop != null;
+            this.stop = stop == null ? 0 : stop;
+            this.next = next;
+        }
+
+        private boolean stops(Character other) {
+            return other == null ? !stopsAtChar : stopsAtChar && stop == other;
+        }
+
+        /**
+         * @return where the captured text ends, {@code position} if there is nothing to capture
+         */
+        private int end(String key, int position) {
+            int end = position;
+            if (charClass == CharClass.ANY) {
+                if (!stopsAtChar) {
+                    return key.length();
+                }
+                while (end < key.length() && key.charAt(end) != stop) {
+                    end++;
+                }
+            } else {
+                while (end < key.length() && charClass.contains(key.charAt(end))) {
+                    end++;
+                }
+            }
+            return end;
+        }
+    }
+
+    /**
+     * A pattern and the environment it resolves from
+     */
+    private static final class Route {
+
+        private final String pattern;
+        private final String templateEnvironment;
+        private final String[] variables;
+
+        private Route(String pattern, String templateEnvironment, String[] variables) {
+            this.pattern = pattern;
+            this.templateEnvironment = templateEnvironment;
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * The route an environment matched
+     */
+    public static final class Match {
+
+        private final String pattern;
+        private final String templateEnvironment;
+        private final Map<String, String> variables;
+
+        private Match(String pattern, String templateEnvironment, Map<String, String> variables) {
+            this.pattern = pattern;
+            this.templateEnvironment = templateEnvironment;
+            this.variables = variables;
+        }
+
+        /**
+         * @return the pattern that matched
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the environment to resolve from
+         */
+        public String getTemplateEnvironment() {
+            return templateEnvironment;
+        }
+
+        /**
+         * @return the captured text by capture name, in the order of the pattern
+         */
+        public Map<String, String> getVariables() {
+            return variables;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " -> " + templateEnvironment + variables;
+        }
+    }
+
+    /**
+     * Builds {@link TemplateRoutes}
+     */
+    public static final class Builder {
+
+        private final Map<String, String> routes = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param pattern the names of the environments to route
+         * @param templateEnvironment the configured environment to resolve them from
+         * @return this builder
+         */
+        public Builder route(String pattern, String templateEnvironment) {
+            if (StringUtils.isBlank(pattern) || StringUtils.isBlank(templateEnvironment)) {
+                throw new IllegalArgumentException("Neither the pattern nor the template environment can be blank");
+            }
+            if (routes.putIfAbsent(pattern, templateEnvironment) != null) {
+                throw new IllegalArgumentException("Pattern '" + pattern + "' is routed more than once");
+            }
+            return this;
+        }
+
+        /**
+         * @param patterns the template environment of each pattern, for example bound from the configuration
+         * @return this builder
+         */
+        public Builder routes(Map<String, String> patterns) {
+            patterns.forEach(this::route);
+            return this;
+        }
+
+        /**
+         * @return the routes
+         * @throws IllegalArgumentException if a pattern is invalid, or two patterns match the same environments
+         */
+        public TemplateRoutes build() {
+            return new TemplateRoutes(Collections.unmodifiableMap(new LinkedHashMap<>(routes)));
+        }
+    }
+}
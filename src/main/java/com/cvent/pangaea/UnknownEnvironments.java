@@ -0,0 +1,204 @@
+package com.cvent.pangaea;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps requests for environments that don't exist cheap.
+ *
+ * Recently rejected environments are remembered for a short time so a repeated lookup can be rejected without going
+ * through creation, formatting the message again or (optionally) filling in a stack trace. Rejections are counted per
+ * environment and logged as one aggregated line per interval instead of one error (with every known environment) per
+ * request. Rejections that are still pending when the interval ends are logged then, even if no request follows.
+ */
+final class UnknownEnvironments {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiEnvAware.class);
+
+    /**
+     * Rejections of more distinct environments than this within one interval are counted under {@link #OTHERS}
+     */
+    private static final int MAX_REPORTED_ENVIRONMENTS = 100;
+    private static final String OTHERS = "<others>";
+
+    private final long maximumSize;
+    private final Duration ttl;
+    private final Duration logInterval;
+    private final boolean stackless;
+    private final Supplier<Set<String>> knownEnvironments;
+
+    private final Cache<String, MultiEnvSupportException> recent;
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicLong nextReport = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * @param maximumSize the maximum number of rejected environments to remember
+     * @param ttl how long to remember a rejected environment
+     * @param logInterval how often to log the aggregated rejections, zero to log every rejection
+     * @param stackless {@code true} to throw exceptions without a stack trace
+     * @param knownEnvironments the environments that do exist, logged with the rejections
+     */
+    UnknownEnvironments(long maximumSize, Duration ttl, Duration logInterval, boolean stackless,
+            Supplier<Set<String>> knownEnvironments) {
+        if (maximumSize < 0 || ttl == null || ttl.isNegative() || logInterval == null || logInterval.isNegative()) {
+            throw new IllegalArgumentException("Expected a non-negative size, ttl and log interval");
+        }
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        this.logInterval = logInterval;
+        this.stackless = stackless;
+        this.knownEnvironments = knownEnvironments;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * Create an instance with the same settings that reports a different set of known environments
+     *
+     * @param environments the environments that do exist
+     * @return the new instance
+     */
+    UnknownEnvironments copyFor(Supplier<Set<String>> environments) {
+        return new UnknownEnvironments(maximumSize, ttl, logInterval, stackless, environments);
+    }
+
+    /**
+     * Check whether an environment was rejected recently
+     *
+     * @param key - environment name
+     * @return the exception to throw if it was, otherwise null
+     */
+    MultiEnvSupportException recall(String key) {
+        MultiEnvSupportException rejection = recent.getIfPresent(key);
+        if (rejection == null) {
+            return null;
+        }
+        record(key);
+        return stackless ? rejection : new MultiEnvSupportException(rejection.getMessage());
+    }
+
+    /**
+     * Check whether an environment was rejected recently, without counting it as another rejection
+     *
+     * @param key - environment name
+     * @return {@code true} if it was
+     */
+    boolean isRecentlyRejected(String key) {
+        return recent.getIfPresent(key) != null;
+    }
+
+    /**
+     * Reject an environment, reusing the exception from a recent rejection if there was one
+     *
+     * @param key - environment name
+     * @param format - the message format, with a single %s for the environment name
+     * @return the exception to throw
+     */
+    MultiEnvSupportException reject(String key, String format) {
+        MultiEnvSupportException rejection = recall(key);
+        if (rejection != null) {
+            return rejection;
+        }
+        rejection = new MultiEnvSupportException(String.format(format, key), !stackless);
+        recent.put(key, rejection);
+        record(key);
+        return rejection;
+    }
+
+    /**
+     * Forget every rejection, for example because environments or a template were added
+     */
+    void clear() {
+        recent.invalidateAll();
+    }
+
+    private void record(String key) {
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            String countedAs = counts.size() < MAX_REPORTED_ENVIRONMENTS ? key : OTHERS;
+            count = counts.computeIfAbsent(countedAs, k -> new LongAdder());
+        }
+        count.increment();
+
+        long now = System.nanoTime();
+        long next = nextReport.get();
+        if (now - next < 0) {
+            scheduleFlush(next - now);
+        } else if (nextReport.compareAndSet(next, now + logInterval.toNanos())) {
+            report();
+        }
+    }
+
+    private void scheduleFlush(long delay) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            Flusher.EXECUTOR.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Log the rejections that were counted since the last report, once the interval is over
+     */
+    private void flush() {
+        // Cleared before the counts are read, so a rejection counted after that schedules the next flush
+        flushScheduled.set(false);
+        if (counts.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextReport.get();
+        if (now - next < 0) {
+            // A rejection reported in the meantime and started a new interval
+            scheduleFlush(next - now);
+        } else if (nextReport.compareAndSet(next, now + logInterval.toNanos())) {
+            report();
+        }
+    }
+
+    private void report() {
+        StringJoiner rejected = new StringJoiner(", ", "{", "}");
+        for (Iterator<Map.Entry<String, LongAdder>> it = counts.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, LongAdder> entry = it.next();
+            it.remove();
+            rejected.add(entry.getKey() + "=" + entry.getValue().sum());
+        }
+        LOG.error("Failed to find environments {} (request counts over the last {} ms) in {}",
+                rejected, logInterval.toMillis(), knownEnvironments.get());
+    }
+
+    /**
+     * The thread that logs pending rejections, started the first time a rejection has to wait for the end of an
+     * interval
+     */
+    private static final class Flusher {
+
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pangaea-unknown-environments");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        private Flusher() {
+        }
+    }
+}
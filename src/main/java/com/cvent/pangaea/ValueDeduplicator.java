@@ -0,0 +1,493 @@
+package com.cvent.pangaea;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Makes values resolved from the same template share what they have in common, instead of each holding a complete
+ * copy of the configuration. Typically most of a resolved silo (pool settings, timeouts, host names) is identical to
+ * the template and to every other silo; only the parts with the placeholder differ.
+ *
+ * Deduplicating a value walks its object graph and replaces
+ * <ul>
+ * <li>every String, and every instance of an immutable JDK or Dropwizard value type (boxed primitives,
+ * {@code java.time} values, {@link URI}, {@link UUID}, {@code io.dropwizard.util.Duration}, ...) with an equal instance
+ * seen before</li>
+ * <li>every instance of a type declared with {@link Builder#share} with an instance seen before that has the same JSON
+ * form (or is {@code equals}, if the type defines it), so a whole sub object is shared</li>
+ * </ul>
+ * Lists, maps and arrays keep their identity, only their elements are replaced, and of other objects only fields that
+ * aren't final are. Canonical instances are held weakly, so they go away with the last value that uses them.
+ *
+ * Only declare types as shared that nothing modifies after the configuration is bound: a change made through one
+ * environment would show up in every other environment sharing the instance.
+ *
+ * <pre>
+ *    ValueDeduplicator deduplicator = ValueDeduplicator.builder().share(DataSourceFactory.class).build();
+ *    MultiEnvAware&lt;DbConfig&gt; databases = config.getDatabases().convert((env, db) -&gt; db,
+ *            deduplicator.wrap(new CompiledSiloTemplateResolver&lt;&gt;(DbConfig.class, mapper)));
+ *    LOG.info("{}", deduplicator.getReport());
+ * </pre>
+ */
+public final class ValueDeduplicator {
+
+    /**
+     * Rough sizes for the heap estimate, assuming compressed references
+     */
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+    private static final int STRING_SHALLOW = 24;
+    private static final int COLLECTION_ENTRY = 32;
+
+    private static final Set<Class<?>> VALUE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Boolean.class, Byte.class, Short.class, Character.class, Integer.class, Long.class, Float.class,
+            Double.class, BigDecimal.class, BigInteger.class, URI.class, UUID.class,
+            io.dropwizard.util.Duration.class, io.dropwizard.util.Size.class)));
+
+    private final Set<Class<?>> shared;
+    private final ObjectMapper mapper;
+    private final Interner<Object> values = Interners.newWeakInterner();
+    private final Interner<Object> sharedByEquals = Interners.newWeakInterner();
+    /**
+     * Instances of shared types without equals by their JSON form, which is a copy so it doesn't keep them alive
+     */
+    private final ConcurrentMap<Form, Object> sharedByForm = new MapMaker().weakValues().makeMap();
+    private final ConcurrentMap<Class<?>, Field[]> fields = new ConcurrentHashMap<>();
+
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder sharedValues = new LongAdder();
+    private final LongAdder sharedObjects = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    private ValueDeduplicator(Set<Class<?>> shared, ObjectMapper mapper) {
+        this.shared = shared;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @return a builder for a deduplicator
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Replace the parts of a value that were seen before with the instances seen first, in place
+     *
+     * @param <T> the type of the value
+     * @param value the value, may be null
+     * @return the value itself, or an instance seen before if the value is of a shared or immutable type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deduplicate(T value) {
+        if (value == null) {
+            return null;
+        }
+        T result = (T) canonical(value, Collections.newSetFromMap(new IdentityHashMap<>()), true);
+        deduplicated.increment();
+        return result;
+    }
+
+    /**
+     * Make the parts of a value the instances later values share, without changing the value itself, so a template
+     * that is already in use can be seen by other threads while this runs
+     *
+     * @param value the value
+     */
+    void seed(Object value) {
+        canonical(value, Collections.newSetFromMap(new IdentityHashMap<>()), false);
+    }
+
+    /**
+     * Deduplicate every value a resolver resolves, starting with the template it resolves from so resolved values
+     * share with the template as well. Each template is only read, once, the first time a value is resolved from it.
+     *
+     * @param <T> the type of the values
+     * @param resolver the resolver to wrap
+     * @return a resolver returning deduplicated values
+     */
+    public <T> TemplateResolver<T> wrap(TemplateResolver<T> resolver) {
+        return new DeduplicatingResolver<>(this, resolver);
+    }
+
+    /**
+     * @return how much was deduplicated so far
+     */
+    public DeduplicationReport getReport() {
+        return new DeduplicationReport(deduplicated.sum(), sharedValues.sum(), sharedObjects.sum(), bytesSaved.sum());
+    }
+
+    /**
+     * @param replace {@code false} to only record the instances of the graph, leaving it as it is
+     */
+    private Object canonical(Object value, Set<Object> visited, boolean replace) {
+        Class<?> type = value.getClass();
+        if (type == String.class || isValueType(type)) {
+            Object canonical = values.intern(value);
+            if (canonical != value && replace) {
+                sharedValues.increment();
+                bytesSaved.add(estimate(value, Collections.newSetFromMap(new IdentityHashMap<>())));
+            }
+            return canonical;
+        }
+        if (!visited.add(value)) {
+            return value;
+        }
+        deduplicateContents(value, visited, replace);
+        if (isShared(type)) {
+            Object canonical = definesEquals(type) ? sharedByEquals.intern(value)
+                    : sharedByForm.putIfAbsent(new Form(type, mapper.valueToTree(value)), value);
+            if (canonical != null && canonical != value && replace) {
+                sharedObjects.increment();
+                bytesSaved.add(estimate(value, Collections.newSetFromMap(new IdentityHashMap<>())));
+                return canonical;
+            }
+        }
+        return value;
+    }
+
+    private void deduplicateContents(Object value, Set<Object> visited, boolean replace) {
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            if (!type.getComponentType().isPrimitive()) {
+                Object[] array = (Object[]) value;
+                for (int i = 0; i < array.length; i++) {
+                    if (array[i] != null) {
+                        Object canonical = canonical(array[i], visited, replace);
+                        if (replace) {
+                            array[i] = canonical;
+                        }
+                    }
+                }
+            }
+        } else if (value instanceof List) {
+            deduplicateList((List<?>) value, visited, replace);
+        } else if (value instanceof Map) {
+            deduplicateMap((Map<?, ?>) value, visited, replace);
+        } else if (value instanceof Collection) {
+            // Elements of sets can't be replaced without changing the set, but they can share what they hold
+            for (Object element : (Collection<?>) value) {
+                if (element != null && !isValueType(element.getClass()) && element.getClass() != String.class) {
+                    canonical(element, visited, replace);
+                }
+            }
+        } else if (!isJdkType(type)) {
+            for (Field field : fieldsOf(type)) {
+                try {
+                    Object fieldValue = field.get(value);
+                    if (fieldValue != null) {
+                        Object canonical = canonical(fieldValue, visited, replace);
+                        if (canonical != fieldValue && replace) {
+                            field.set(value, canonical);
+                        }
+                    }
+                } catch (IllegalAccessException ex) {
+                    // Not accessible after all, leave the field as it is
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deduplicateList(List<?> list, Set<Object> visited, boolean replace) {
+        ListIterator<Object> elements = ((List<Object>) list).listIterator();
+        boolean modifiable = replace;
+        while (elements.hasNext()) {
+            Object element = elements.next();
+            if (element != null) {
+                Object canonical = canonical(element, visited, replace);
+                if (canonical != element && modifiable) {
+                    try {
+                        elements.set(canonical);
+                    } catch (UnsupportedOperationException ex) {
+                        modifiable = false;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deduplicateMap(Map<?, ?> map, Set<Object> visited, boolean replace) {
+        boolean modifiable = replace;
+        for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) map).entrySet()) {
+            Object element = entry.getValue();
+            if (element != null) {
+                Object canonical = canonical(element, visited, replace);
+                if (canonical != element && modifiable) {
+                    try {
+                        entry.setValue(canonical);
+                    } catch (UnsupportedOperationException ex) {
+                        modifiable = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isValueType(Class<?> type) {
+        return VALUE_TYPES.contains(type) || (isJdkType(type)
+                && (TemporalAccessor.class.isAssignableFrom(type) || TemporalAmount.class.isAssignableFrom(type)));
+    }
+
+    private static boolean isJdkType(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+                || name.startsWith("com.sun.") || name.startsWith("jdk.");
+    }
+
+    private boolean isShared(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (shared.contains(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean definesEquals(Class<?> type) {
+        try {
+            return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException ex) {
+            // Every class has equals
+            return false;
+        }
+    }
+
+    private Field[] fieldsOf(Class<?> type) {
+        return fields.computeIfAbsent(type, c -> {
+            List<Field> accessible = new ArrayList<>();
+            for (Class<?> declaring = c; declaring != null && declaring != Object.class;
+                    declaring = declaring.getSuperclass()) {
+                for (Field field : declaring.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.getType().isPrimitive()
+                            || field.isSynthetic()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        accessible.add(field);
+                    } catch (RuntimeException ex) {
+                        // A module that doesn't open the field, leave it alone
+                    }
+                }
+            }
+            return accessible.toArray(new Field[0]);
+        });
+    }
+
+    /**
+     * @return a rough estimate of the heap a value and everything it alone references takes
+     */
+    private long estimate(Object value, Set<Object> visited) {
+        if (value == null || !visited.add(value)) {
+            return 0;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            // Two bytes per char before compact strings, so an upper bound on newer JVMs
+            return align(STRING_SHALLOW) + align(ARRAY_HEADER + 2L * ((String) value).length());
+        }
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            if (type.getComponentType().isPrimitive()) {
+                return align(ARRAY_HEADER + (long) length * primitiveSize(type.getComponentType()));
+            }
+            long size = align(ARRAY_HEADER + (long) length * REFERENCE);
+            for (Object element : (Object[]) value) {
+                size += estimate(element, visited);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = align(OBJECT_HEADER + ARRAY_HEADER);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += COLLECTION_ENTRY + estimate(entry.getKey(), visited) + estimate(entry.getValue(), visited);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = align(OBJECT_HEADER + ARRAY_HEADER);
+            for (Object element : (Collection<?>) value) {
+                size += REFERENCE + estimate(element, visited);
+            }
+            return size;
+        }
+        long shallow = OBJECT_HEADER;
+        long deep = 0;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    shallow += field.getType().isPrimitive() ? primitiveSize(field.getType()) : REFERENCE;
+                }
+            }
+        }
+        if (!isJdkType(type)) {
+            for (Field field : fieldsOf(type)) {
+                try {
+                    deep += estimate(field.get(value), visited);
+                } catch (IllegalAccessException ex) {
+                    // Leave it out of the estimate
+                }
+            }
+        }
+        return align(shallow) + deep;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return Long.BYTES;
+        } else if (type == int.class || type == float.class) {
+            return Integer.BYTES;
+        } else if (type == short.class || type == char.class) {
+            return Short.BYTES;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * The JSON form of an instance of a shared type that doesn't define equals
+     */
+    private static final class Form {
+
+        private final Class<?> type;
+        private final JsonNode json;
+
+        private Form(Class<?> type, JsonNode json) {
+            this.type = type;
+            this.json = json;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Form && type == ((Form) other).type && json.equals(((Form) other).json);
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + json.hashCode();
+        }
+    }
+
+    /**
+     * Deduplicates the values of another resolver
+     *
+     * @param <T> the type of the values
+     */
+    private static final class DeduplicatingResolver<T> implements TemplateResolver<T> {
+
+        private final ValueDeduplicator deduplicator;
+        private final TemplateResolver<T> resolver;
+        /**
+         * The templates seen so far, by identity and held weakly, so each is seeded once
+         */
+        private final Set<T> seeded = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+        private DeduplicatingResolver(ValueDeduplicator deduplicator, TemplateResolver<T> resolver) {
+            this.deduplicator = deduplicator;
+            this.resolver = resolver;
+        }
+
+        @Override
+        public T resolve(String key, T value) {
+            seed(value);
+            return deduplicator.deduplicate(resolver.resolve(key, value));
+        }
+
+        @Override
+        public T resolve(String key, T value, Map<String, String> variables) {
+            seed(value);
+            return deduplicator.deduplicate(resolver.resolve(key, value, variables));
+        }
+
+        @Override
+        public CompletionStage<T> resolveAsync(String key, T value, Executor executor) {
+            seed(value);
+            return resolver.resolveAsync(key, value, executor).thenApply(deduplicator::deduplicate);
+        }
+
+        private void seed(T value) {
+            if (value != null && !seeded.contains(value) && seeded.add(value)) {
+                // The template holds the instances everything else should share. It is in use already, so it is only
+                // read
+                deduplicator.seed(value);
+            }
+        }
+    }
+
+    /**
+     * Builds a {@link ValueDeduplicator}
+     */
+    public static final class Builder {
+
+        private final Set<Class<?>> shared = new HashSet<>();
+        private ObjectMapper mapper;
+
+        private Builder() {
+        }
+
+        /**
+         * Share identical instances of these types (and their subclasses) as a whole. Instances are identical if they
+         * are equal, or for types that don't define equals, if their JSON form is.
+         *
+         * @param types types that nothing modifies after the configuration is bound
+         * @return this builder
+         */
+        public Builder share(Class<?>... types) {
+            shared.addAll(Arrays.asList(types));
+            return this;
+        }
+
+        /**
+         * @param objectMapper the mapper to compare instances of shared types by their JSON form with, a plain
+         * {@link ObjectMapper} by default
+         * @return this builder
+         */
+        public Builder mapper(ObjectMapper objectMapper) {
+            this.mapper = objectMapper;
+            return this;
+        }
+
+        /**
+         * @return the deduplicator
+         */
+        public ValueDeduplicator build() {
+            return new ValueDeduplicator(Collections.unmodifiableSet(new HashSet<>(shared)),
+                    mapper == null ? new ObjectMapper() : mapper);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.google.common.collect.ImmutableMultimap;
+import java.io.PrintWriter;
+
+/**
+ * Evicts resolved, created or derived environments (see {@link MultiEnvAware#evict}), so the next request for one
+ * builds it again:
+ *
+ * <pre>
+ *    curl -X POST 'http://localhost:8081/tasks/pangaea-evict?instance=databases&amp;environment=S410'
+ * </pre>
+ */
+public class EnvironmentEvictTask extends MultiEnvTask {
+
+    /**
+     * @param admin the registered instances
+     */
+    public EnvironmentEvictTask(MultiEnvAdmin admin) {
+        super("pangaea-evict", admin);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        print(admin().evict(instance(parameters), environments(parameters)), output);
+    }
+}
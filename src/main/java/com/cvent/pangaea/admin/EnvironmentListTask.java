@@ -0,0 +1,34 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.EnvironmentEntry;
+import com.google.common.collect.ImmutableMultimap;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the environments of the registered instances (or of the one named by the {@code instance} parameter) with
+ * their origin, age and access count:
+ *
+ * <pre>
+ *    curl -X POST 'http://localhost:8081/tasks/pangaea-environments?instance=databases'
+ * </pre>
+ */
+public class EnvironmentListTask extends MultiEnvTask {
+
+    /**
+     * @param admin the registered instances
+     */
+    public EnvironmentListTask(MultiEnvAdmin admin) {
+        super("pangaea-environments", admin);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        for (Map.Entry<String, List<EnvironmentEntry>> instance : admin().describe(instance(parameters)).entrySet()) {
+            output.println(instance.getKey() + ":");
+            instance.getValue().forEach(entry -> output.println("  " + entry));
+        }
+        output.flush();
+    }
+}
@@ -0,0 +1,36 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.PreloadReport;
+import com.google.common.collect.ImmutableMultimap;
+import java.io.PrintWriter;
+
+/**
+ * Resolves a list of environments in parallel (see {@link MultiEnvAware#preload}), for example ahead of moving
+ * traffic for them to this node. The optional {@code parallelism} parameter defaults to the number of processors:
+ *
+ * <pre>
+ *    curl -X POST 'http://localhost:8081/tasks/pangaea-preload?instance=databases&amp;environment=S410,S411,S412'
+ * </pre>
+ */
+public class EnvironmentPreloadTask extends MultiEnvTask {
+
+    static final String PARALLELISM = "parallelism";
+
+    /**
+     * @param admin the registered instances
+     */
+    public EnvironmentPreloadTask(MultiEnvAdmin admin) {
+        super("pangaea-preload", admin);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        int parallelism = parameters.get(PARALLELISM).stream().findFirst().map(Integer::parseInt)
+                .orElse(Runtime.getRuntime().availableProcessors());
+        PreloadReport report = admin().preload(instance(parameters), environments(parameters), parallelism);
+        print(report.getResults(), output);
+        output.println(report);
+        output.flush();
+    }
+}
@@ -0,0 +1,28 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.google.common.collect.ImmutableMultimap;
+import java.io.PrintWriter;
+
+/**
+ * Rebuilds resolved, created or derived environments and swaps them in (see {@link MultiEnvAware#refresh}), while
+ * requests keep getting the old value until the new one is ready:
+ *
+ * <pre>
+ *    curl -X POST 'http://localhost:8081/tasks/pangaea-refresh?instance=databases&amp;environment=S410'
+ * </pre>
+ */
+public class EnvironmentRefreshTask extends MultiEnvTask {
+
+    /**
+     * @param admin the registered instances
+     */
+    public EnvironmentRefreshTask(MultiEnvAdmin admin) {
+        super("pangaea-refresh", admin);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        print(admin().refresh(instance(parameters), environments(parameters)), output);
+    }
+}
@@ -0,0 +1,219 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.EnvironmentEntry;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.MultiEnvSupportException;
+import com.cvent.pangaea.PreloadReport;
+import io.dropwizard.servlets.tasks.Task;
+import io.dropwizard.setup.Environment;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Inspects and repairs the environments of registered {@link MultiEnvAware} instances at runtime, so a silo whose
+ * pool or client went bad can be rebuilt without restarting the node. The operations run on the admin thread that
+ * asks for them; lookups of other environments carry on untouched, and {@link MultiEnvAware#refresh} keeps serving
+ * the old value until the new one is built.
+ *
+ * <pre>
+ *    new MultiEnvAdmin()
+ *            .register("databases", config.getDatabases())
+ *            .register("services", config.getServices())
+ *            .registerWith(environment);
+ * </pre>
+ *
+ * That adds the {@code pangaea-environments}, {@code pangaea-evict}, {@code pangaea-refresh} and
+ * {@code pangaea-preload} tasks, for example
+ * {@code POST /tasks/pangaea-refresh?instance=databases&environment=S410}, and the {@link MultiEnvAdminServlet} at
+ * {@value #SERVLET_PATH} on the admin port.
+ */
+public class MultiEnvAdmin {
+
+    /**
+     * Where {@link #registerWith} maps the servlet on the admin port
+     */
+    public static final String SERVLET_PATH = "/pangaea/*";
+
+    /**
+     * How long a preload may take by default
+     */
+    public static final Duration DEFAULT_PRELOAD_TIMEOUT = Duration.ofMinutes(5);
+
+    private final Map<String, MultiEnvAware<?>> instances = new ConcurrentSkipListMap<>();
+    private final Duration preloadTimeout;
+
+    /**
+     * constructor
+     */
+    public MultiEnvAdmin() {
+        this(DEFAULT_PRELOAD_TIMEOUT);
+    }
+
+    /**
+     * @param preloadTimeout how long a preload may take
+     */
+    public MultiEnvAdmin(Duration preloadTimeout) {
+        this.preloadTimeout = preloadTimeout;
+    }
+
+    /**
+     * Register an instance and enable its entry statistics (see {@link MultiEnvAware#setEntryStatistics})
+     *
+     * @param name the name to refer to the instance by, for example the configuration property it was bound from
+     * @param environments the instance
+     * @return this
+     */
+    public MultiEnvAdmin register(String name, MultiEnvAware<?> environments) {
+        if (StringUtils.isBlank(name) || name.contains("/")) {
+            throw new IllegalArgumentException("'name' must not be blank or contain '/', was: " + name);
+        }
+        environments.setEntryStatistics(true);
+        if (instances.putIfAbsent(name, environments) != null) {
+            throw new IllegalArgumentException("An instance named " + name + " is already registered");
+        }
+        return this;
+    }
+
+    /**
+     * @return the registered instances by name
+     */
+    public Map<String, MultiEnvAware<?>> getInstances() {
+        return Collections.unmodifiableMap(instances);
+    }
+
+    /**
+     * Add the tasks and the servlet to the admin port
+     *
+     * @param environment the Dropwizard environment
+     */
+    public void registerWith(Environment environment) {
+        getTasks().forEach(environment.admin()::addTask);
+        environment.admin().addServlet(MultiEnvAdminServlet.class.getSimpleName(), new MultiEnvAdminServlet(this))
+                .addMapping(SERVLET_PATH);
+    }
+
+    /**
+     * @return the admin tasks
+     */
+    public List<Task> getTasks() {
+        return Arrays.asList(new EnvironmentListTask(this), new EnvironmentEvictTask(this),
+                new EnvironmentRefreshTask(this), new EnvironmentPreloadTask(this));
+    }
+
+    /**
+     * @param name the name of a registered instance, or null for all of them
+     * @return the entries of the instances by name
+     */
+    public Map<String, List<EnvironmentEntry>> describe(String name) {
+        Map<String, List<EnvironmentEntry>> entries = new LinkedHashMap<>();
+        if (name == null) {
+            instances.forEach((instance, environments) -> entries.put(instance, environments.describeEntries()));
+        } else {
+            entries.put(name, instance(name).describeEntries());
+        }
+        return entries;
+    }
+
+    /**
+     * Evict environments one after the other, see {@link MultiEnvAware#evict}
+     *
+     * @param name the name of a registered instance, may be null if only one is registered
+     * @param environments the environments to evict
+     * @return the outcome for each environment
+     */
+    public Map<String, String> evict(String name, Collection<String> environments) {
+        MultiEnvAware<?> instance = instance(name);
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        for (String environment : environments) {
+            try {
+                outcomes.put(environment, instance.evict(environment) ? "evicted" : "not present");
+            } catch (MultiEnvSupportException | UnsupportedOperationException ex) {
+                outcomes.put(environment, ex.getMessage());
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Refresh environments one after the other, see {@link MultiEnvAware#refresh}
+     *
+     * @param name the name of a registered instance, may be null if only one is registered
+     * @param environments the environments to refresh
+     * @return the outcome for each environment
+     */
+    public Map<String, String> refresh(String name, Collection<String> environments) {
+        MultiEnvAware<?> instance = instance(name);
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        for (String environment : environments) {
+            try {
+                instance.refresh(environment);
+                outcomes.put(environment, "refreshed");
+            } catch (RuntimeException ex) {
+                outcomes.put(environment, ex.getMessage());
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Resolve environments in parallel on threads of their own, see {@link MultiEnvAware#preload}
+     *
+     * @param name the name of a registered instance, may be null if only one is registered
+     * @param environments the environments to resolve
+     * @param parallelism the maximum number of environments to resolve at the same time
+     * @return the report of the preload
+     * @throws InterruptedException if interrupted while waiting for the preload
+     * @throws ExecutionException never in practice, {@link MultiEnvAware#preload} reports failures in the report
+     * @throws TimeoutException if the preload took longer than the preload timeout
+     */
+    public PreloadReport preload(String name, Collection<String> environments, int parallelism)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        MultiEnvAware<?> instance = instance(name);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("'parallelism' must be at least 1");
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, environments.size())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pangaea-admin-preload-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            return instance.preload(environments, executor, parallelism)
+                    .get(preloadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param name the name of a registered instance, may be null if only one is registered
+     * @return the instance
+     * @throws IllegalArgumentException if there is no such instance
+     */
+    MultiEnvAware<?> instance(String name) {
+        if (name == null && instances.size() == 1) {
+            return instances.values().iterator().next();
+        }
+        MultiEnvAware<?> instance = name == null ? null : instances.get(name);
+        if (instance == null) {
+            throw new IllegalArgumentException(String.format("Unknown instance %s, expected one of %s",
+                    name, instances.keySet()));
+        }
+        return instance;
+    }
+}
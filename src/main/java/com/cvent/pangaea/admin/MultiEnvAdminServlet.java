@@ -0,0 +1,110 @@
+package com.cvent.pangaea.admin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.dropwizard.jackson.Jackson;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The {@link MultiEnvAdmin} operations as JSON, for dashboards and scripts:
+ * <ul>
+ * <li>{@code GET /pangaea} and {@code GET /pangaea/<instance>} list the environments with their origin, age and
+ * access count</li>
+ * <li>{@code POST /pangaea/<instance>/evict}, {@code .../refresh} and {@code .../preload} with one or more
+ * {@code environment} parameters (and an optional {@code parallelism} for preload) return the outcome for each
+ * environment</li>
+ * </ul>
+ */
+public class MultiEnvAdminServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS);
+
+    private final MultiEnvAdmin admin;
+
+    /**
+     * @param admin the registered instances
+     */
+    public MultiEnvAdminServlet(MultiEnvAdmin admin) {
+        this.admin = admin;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] path = path(req);
+        if (path.length > 1) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            write(resp, admin.describe(path.length == 0 ? null : path[0]));
+        } catch (IllegalArgumentException ex) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, ex.getMessage());
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] path = path(req);
+        if (path.length != 2) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            admin.instance(path[0]);
+            String[] values = req.getParameterValues(MultiEnvTask.ENVIRONMENT);
+            List<String> environments = MultiEnvTask.split(values == null
+                    ? Collections.<String>emptyList() : Arrays.asList(values));
+            switch (path[1]) {
+                case "evict":
+                    write(resp, admin.evict(path[0], environments));
+                    break;
+                case "refresh":
+                    write(resp, admin.refresh(path[0], environments));
+                    break;
+                case "preload":
+                    String parallelism = req.getParameter(EnvironmentPreloadTask.PARALLELISM);
+                    Map<String, String> outcomes = new LinkedHashMap<>();
+                    admin.preload(path[0], environments, parallelism == null
+                            ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(parallelism))
+                            .getResults().forEach((environment, result) -> outcomes.put(environment,
+                                    result.toString()));
+                    write(resp, outcomes);
+                    break;
+                default:
+                    resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } catch (IllegalArgumentException ex) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } catch (TimeoutException | ExecutionException ex) {
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ex.getMessage());
+        }
+    }
+
+    private static String[] path(HttpServletRequest req) {
+        return StringUtils.split(StringUtils.defaultString(req.getPathInfo()), '/');
+    }
+
+    private static void write(HttpServletResponse resp, Object body) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(resp.getOutputStream(), body);
+    }
+}
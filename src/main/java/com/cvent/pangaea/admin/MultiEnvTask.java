@@ -0,0 +1,87 @@
+package com.cvent.pangaea.admin;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The parameters shared by the {@link MultiEnvAdmin} tasks: {@code instance}, the name of a registered instance (may
+ * be left out if only one is registered) and {@code environment}, which may be repeated or list several comma
+ * separated environments.
+ */
+abstract class MultiEnvTask extends Task {
+
+    static final String INSTANCE = "instance";
+    static final String ENVIRONMENT = "environment";
+
+    private final MultiEnvAdmin admin;
+
+    /**
+     * @param name the name of the task
+     * @param admin the registered instances
+     */
+    MultiEnvTask(String name, MultiEnvAdmin admin) {
+        super(name);
+        this.admin = admin;
+    }
+
+    /**
+     * @return the registered instances
+     */
+    MultiEnvAdmin admin() {
+        return admin;
+    }
+
+    /**
+     * @param parameters the query parameters of the task
+     * @return the name of the instance, or null if not given
+     */
+    static String instance(ImmutableMultimap<String, String> parameters) {
+        return parameters.get(INSTANCE).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * @param parameters the query parameters of the task
+     * @return the environments, at least one
+     * @throws IllegalArgumentException if no environment is given
+     */
+    static List<String> environments(ImmutableMultimap<String, String> parameters) {
+        return split(parameters.get(ENVIRONMENT));
+    }
+
+    /**
+     * @param values repeated parameter values, each of them may list comma separated environments
+     * @return the environments, at least one
+     * @throws IllegalArgumentException if no environment is given
+     */
+    static List<String> split(Collection<String> values) {
+        List<String> environments = new ArrayList<>();
+        for (String value : values) {
+            for (String environment : StringUtils.split(value, ',')) {
+                if (StringUtils.isNotBlank(environment)) {
+                    environments.add(environment.trim());
+                }
+            }
+        }
+        if (environments.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one '" + ENVIRONMENT + "' parameter");
+        }
+        return environments;
+    }
+
+    /**
+     * Print one line per environment
+     *
+     * @param outcomes the outcome for each environment
+     * @param output the output of the task
+     */
+    static void print(Map<String, ?> outcomes, PrintWriter output) {
+        outcomes.forEach((environment, outcome) -> output.println(environment + ": " + outcome));
+        output.flush();
+    }
+}
@@ -0,0 +1,46 @@
+package com.cvent.pangaea.filter;
+
+import com.cvent.pangaea.util.EnvironmentUtil;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import javax.ws.rs.container.AsyncResponse;
+
+/**
+ * Resumes suspended JAX-RS responses with the environment of the request that suspended them, so that response
+ * filters and exception mappers see the same environment as the resource method:
+ *
+ * <pre>
+ *    &#64;GET
+ *    public void get(&#64;Suspended AsyncResponse response) {
+ *        EnvironmentAsyncResponse.resume(response, EnvironmentPropagation.supplyAsync(this::load, executor));
+ *    }
+ * </pre>
+ *
+ * This must be called on the request thread, after {@link EnvironmentIdentifierFilter} has run.
+ */
+public final class EnvironmentAsyncResponse {
+
+    /**
+     * Private constructor for Utility class
+     */
+    private EnvironmentAsyncResponse() {
+    }
+
+    /**
+     * Resume {@code response} with the result of {@code stage} when it completes, or with its failure
+     *
+     * @param response the suspended response
+     * @param stage the result
+     */
+    public static void resume(AsyncResponse response, CompletionStage<?> stage) {
+        String environment = EnvironmentUtil.getEnvironment();
+        stage.whenComplete((value, failure) -> EnvironmentUtil.runWithEnvironment(environment, () -> {
+            if (failure == null) {
+                response.resume(value);
+            } else {
+                response.resume(failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
+            }
+        }));
+    }
+}
@@ -1,8 +1,14 @@
 
 package com.cvent.pangaea.filter;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.cvent.pangaea.EnvironmentAliases;
 import com.cvent.pangaea.MultiEnvAware;
 import com.cvent.pangaea.util.EnvironmentUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
@@ -20,10 +26,91 @@ import javax.ws.rs.container.ContainerResponseFilter;
  *Cleaning of threadLocal variable is important as some frameworks create thread-pools 
  *and same threads will be re-used for different requests and if variable has values from previous
  *requests it will lead to errors.
+ *
+ *Register the MultiEnvAware instances a request reads from to get a {@link RequestEnvironment} for each, which
+ *looks the environment of the request up once and then hands out the same value for the rest of the request:
+ *
+ * <pre>
+ *    EnvironmentIdentifierFilter filter = new EnvironmentIdentifierFilter();
+ *    RequestEnvironment&lt;DataSource&gt; dataSource = filter.register(dataSources);
+ *    environment.jersey().register(filter);
+ * </pre>
+ *
+ *Given {@link EnvironmentAliases}, the environment is replaced with the one an alias stands for, so the rest of the
+ *request (and the interceptors) only see canonical names.
+ *
+ *Given a {@link MetricRegistry} with {@link #setMetrics}, the rate and latency of the requests of each environment are
+ *recorded as well.
  */
 public class EnvironmentIdentifierFilter implements ContainerRequestFilter, ContainerResponseFilter {
 
-    
+    /**
+     * Replaced as a whole by {@link #register}, so requests read it without a lock
+     */
+    private volatile List<RequestEnvironment<?>> handles = Collections.emptyList();
+    private final EnvironmentAliases aliases;
+    private volatile RequestMetrics metrics;
+
+    /**
+     * constructor
+     */
+    public EnvironmentIdentifierFilter() {
+        this(EnvironmentAliases.NONE);
+    }
+
+    /**
+     * constructor
+     * @param aliases the aliases to replace with the environment they stand for
+     */
+    public EnvironmentIdentifierFilter(EnvironmentAliases aliases) {
+        this.aliases = aliases == null ? EnvironmentAliases.NONE : aliases;
+    }
+
+    /**
+     * Register a MultiEnvAware instance whose value for the environment of the request is kept for the rest of the
+     * request. Registering the same instance again returns the same handle.
+     *
+     * @param <T> the type of the values
+     * @param environments the environments
+     * @return the handle that returns the value for the current request
+     */
+    public synchronized <T> RequestEnvironment<T> register(MultiEnvAware<T> environments) {
+        for (RequestEnvironment<?> handle : handles) {
+            if (handle.getEnvironments() == environments) {
+                @SuppressWarnings("unchecked")
+                RequestEnvironment<T> existing = (RequestEnvironment<T>) handle;
+                return existing;
+            }
+        }
+        RequestEnvironment<T> handle = new RequestEnvironment<>(this, environments, handles.size());
+        List<RequestEnvironment<?>> next = new ArrayList<>(handles);
+        next.add(handle);
+        handles = Collections.unmodifiableList(next);
+        return handle;
+    }
+
+    /**
+     * Record a timer (request rate and latency) per environment, named
+     * {@code com.cvent.pangaea.filter.EnvironmentIdentifierFilter.requests.<environment>}. Only environments that one
+     * of the registered instances has configured or already resolved (any environment if none is registered) get a
+     * timer of their own, up to {@code maxEnvironments} of them; the other requests are recorded as {@code unknown},
+     * {@code other} or {@code none} (no environment), so the number of timers is bounded. An environment that is
+     * resolved from the template gets its timer once an earlier request resolved it and its {@code unknown} record
+     * expired.
+     *
+     * @param registry the registry to register the timers with, null to stop recording
+     * @param maxEnvironments the number of environments that get a timer of their own
+     */
+    public synchronized void setMetrics(MetricRegistry registry, int maxEnvironments) {
+        if (maxEnvironments < 0) {
+            throw new IllegalArgumentException("maxEnvironments cannot be negative");
+        }
+        if (metrics != null) {
+            metrics.remove();
+        }
+        metrics = registry == null ? null : new RequestMetrics(registry, maxEnvironments);
+    }
+
     @Override
     public void filter(ContainerRequestContext requestContext) {
         
@@ -31,25 +118,48 @@ public class EnvironmentIdentifierFilter implements ContainerRequestFilter, Cont
         
         if (environmentInRequest != null) {
             EnvironmentUtil.setEnvironment(environmentInRequest);
+        } else {
+            // The response filter of a suspended request may have run on another thread
+            EnvironmentUtil.removeEnvironment();
+        }
+
+        int size = handles.size();
+        if (size > 0) {
+            ResolvedRequest.begin(new ResolvedRequest(this, environmentInRequest, size));
+        }
+
+        RequestMetrics m = metrics;
+        if (m != null) {
+            requestContext.setProperty(RequestMetrics.PROPERTY, m.timer(environmentInRequest, this::isKnown).time());
         }
     }
 
-    private String getEnvParamFromRequest(ContainerRequestContext requestContext) {
-        if (requestContext.getUriInfo().getQueryParameters() != null 
-            && !requestContext.getUriInfo().getQueryParameters().isEmpty()
-                && requestContext.getUriInfo().getQueryParameters().containsKey(
-                        MultiEnvAware.ENVIRONMENT)) {
-            return requestContext.getUriInfo().getQueryParameters()
-                    .get(MultiEnvAware.ENVIRONMENT).get(0);
+    private boolean isKnown(String environment) {
+        List<RequestEnvironment<?>> current = handles;
+        for (RequestEnvironment<?> handle : current) {
+            if (handle.getEnvironments().containsKey(environment)) {
+                return true;
+            }
         }
-        
-        return null;
+        return current.isEmpty();
+    }
+
+    private String getEnvParamFromRequest(ContainerRequestContext requestContext) {
+        return aliases.canonical(QueryParameter.ENVIRONMENT.get(requestContext));
     }
 
     @Override
     public void filter(ContainerRequestContext requestContext,
             ContainerResponseContext responseContext) {
         EnvironmentUtil.removeEnvironment();
+        ResolvedRequest.end();
+
+        if (metrics != null && requestContext != null) {
+            Object timer = requestContext.getProperty(RequestMetrics.PROPERTY);
+            if (timer instanceof Timer.Context) {
+                ((Timer.Context) timer).stop();
+            }
+        }
     }
 
 }
@@ -1,17 +1,20 @@
 package com.cvent.pangaea.filter;
 
+import com.cvent.pangaea.EnvironmentAliases;
 import com.cvent.pangaea.MultiEnvAware;
 import org.apache.commons.lang3.ArrayUtils;
 
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.PreMatching;
-import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.ext.Provider;
 import java.net.URI;
 
 /**
  * Modifies the environment parameter from the request query string parameters for production environment.
+ *
+ * Replacing aliases in the request URI is only needed for code that reads the query string itself: MultiEnvAware
+ * instances, EnvironmentIdentifierFilter and the interceptors can be given the {@link EnvironmentAliases} instead.
  */
 @Provider
 @PreMatching
@@ -34,6 +37,14 @@ public class EnvironmentModifierFilter extends QueryStringModifierFilter {
     public EnvironmentModifierFilter(String toValue) {
         this(toValue, null);
     }
+
+    /**
+     * constructor
+     * @param aliases the aliases to replace with the environment they stand for
+     */
+    public EnvironmentModifierFilter(EnvironmentAliases aliases) {
+        super(MultiEnvAware.ENVIRONMENT, aliases);
+    }
 }
 
 /**
@@ -42,9 +53,8 @@ public class EnvironmentModifierFilter extends QueryStringModifierFilter {
 @Provider
 class QueryStringModifierFilter implements ContainerRequestFilter {
 
-    private final String queryParamToModify;
-    private final String[] fromValues;
-    private final String toValue;
+    private final QueryParameter queryParamToModify;
+    private final EnvironmentAliases aliases;
 
     /**
      * constructor.
@@ -59,9 +69,25 @@ class QueryStringModifierFilter implements ContainerRequestFilter {
         if (null == queryParamToModify) {
             throw new IllegalArgumentException("'queryParamToModify' cannot be null");
         }
-        this.queryParamToModify = queryParamToModify;
-        this.fromValues = fromValues;
-        this.toValue = toValue;
+        this.queryParamToModify = QueryParameter.of(queryParamToModify);
+        this.aliases = ArrayUtils.isEmpty(fromValues) ? EnvironmentAliases.NONE
+                : EnvironmentAliases.builder().alias(toValue, fromValues).build();
+    }
+
+    /**
+     * constructor
+     * @param queryParamToModify the name of the query string parameter to modify
+     * @param aliases the values to replace, and what to replace them with
+     */
+    QueryStringModifierFilter(String queryParamToModify, EnvironmentAliases aliases) {
+        if (null == aliases) {
+            throw new IllegalArgumentException("'aliases' cannot be null");
+        }
+        if (null == queryParamToModify) {
+            throw new IllegalArgumentException("'queryParamToModify' cannot be null");
+        }
+        this.queryParamToModify = QueryParameter.of(queryParamToModify);
+        this.aliases = aliases;
     }
 
     /**
@@ -75,27 +101,16 @@ class QueryStringModifierFilter implements ContainerRequestFilter {
 
     @Override
     public void filter(ContainerRequestContext requestContext) {
-        // only if the query parameters contain the configured name
-        // and one of the values from "fromValues"
-        if (requestContext.getUriInfo().getQueryParameters() != null
-                && !requestContext.getUriInfo().getQueryParameters().isEmpty()
-                && requestContext.getUriInfo().getQueryParameters().containsKey(queryParamToModify)
-                && ArrayUtils.contains(fromValues,
-                  requestContext.getUriInfo().getQueryParameters().getFirst(queryParamToModify))) {
+        // only if the query string contains the configured name
+        // and its value is an alias; the URI is only rebuilt then
+        String value = queryParamToModify.get(requestContext);
+        String toValue = aliases.canonical(value);
+        if (value != null && !value.equals(toValue)) {
 
-            URI modifiedUri = getModifiedUri(requestContext.getUriInfo().getRequestUri());
+            URI modifiedUri = queryParamToModify.replace(requestContext.getUriInfo().getRequestUri(), toValue);
 
             requestContext.setRequestUri(requestContext.getUriInfo().getBaseUri(), modifiedUri);
-        }
-    }
-
-    private URI getModifiedUri(URI originalUri) {
-        try {
-            return UriBuilder.fromUri(originalUri)
-                    .replaceQueryParam(queryParamToModify, toValue)
-                    .build();
-        } catch (IllegalArgumentException ex) {
-            return null;
+            queryParamToModify.set(requestContext, toValue);
         }
     }
 }
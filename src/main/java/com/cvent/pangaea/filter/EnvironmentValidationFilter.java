@@ -0,0 +1,134 @@
+package com.cvent.pangaea.filter;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Rejects requests for an environment that can't be looked up in every one of the given MultiEnvAware instances with a
+ * 400, before the request is matched to a resource, instead of failing deep inside the resource with a
+ * MultiEnvSupportException. Requests without an environment parameter are let through.
+ *
+ * An environment is valid if it is configured, or if it can be created or resolved from the template; optionally the
+ * environments resolved from the template have to match a pattern, for example {@code S\d+} for the
+ * SiloTemplateResolver. The error bodies are the same as the ones of MultiEnvSupportExceptionMapper, but serialized
+ * up front, and remembered for recently rejected environments.
+ *
+ * It runs after the other pre-matching filters (like EnvironmentModifierFilter) with the default priority.
+ */
+@Provider
+@PreMatching
+@Priority(EnvironmentValidationFilter.PRIORITY)
+public class EnvironmentValidationFilter implements ContainerRequestFilter {
+
+    /**
+     * Priority of this filter, just after the default (user) priority
+     */
+    public static final int PRIORITY = Priorities.USER + 100;
+
+    /**
+     * Environments that are longer are rejected without repeating them in the error message
+     */
+    static final int MAX_ECHOED_LENGTH = 64;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<MultiEnvAware<?>> environments;
+    private final Pattern templateKeys;
+    private final byte[] blankBody = body("[environment] property is mandatory and can't be empty");
+    private final byte[] unknownBody = body("Failed to find configuration for environment");
+    private final Cache<String, byte[]> unknownBodies = Caffeine.newBuilder()
+            .maximumSize(MultiEnvAware.DEFAULT_UNKNOWN_ENVIRONMENT_CACHE_SIZE)
+            .executor(Runnable::run)
+            .build();
+
+    /**
+     * constructor
+     * @param environments the environments a request has to be able to look up
+     */
+    public EnvironmentValidationFilter(Collection<? extends MultiEnvAware<?>> environments) {
+        this(environments, null);
+    }
+
+    /**
+     * constructor
+     * @param environments the environments a request has to be able to look up
+     * @param templateKeys the pattern environments that aren't configured have to match, or null to accept any
+     * environment the template can be resolved for
+     */
+    public EnvironmentValidationFilter(Collection<? extends MultiEnvAware<?>> environments, Pattern templateKeys) {
+        if (environments == null || environments.isEmpty()) {
+            throw new IllegalArgumentException("'environments' cannot be empty");
+        }
+        this.environments = new ArrayList<>(environments);
+        this.templateKeys = templateKeys;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String environment = QueryParameter.ENVIRONMENT.get(requestContext);
+        if (environment != null && !isValid(environment)) {
+            requestContext.abortWith(Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .entity(errorBody(environment))
+                    .build());
+        }
+    }
+
+    /**
+     * @param environment the environment of a request
+     * @return {@code true} if every instance can look it up
+     */
+    boolean isValid(String environment) {
+        boolean blank = StringUtils.isBlank(environment);
+        for (MultiEnvAware<?> instance : environments) {
+            if (!instance.isResolvable(environment)) {
+                return false;
+            }
+            if (!blank && templateKeys != null && !instance.containsKey(environment)
+                    && !templateKeys.matcher(environment).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] errorBody(String environment) {
+        if (StringUtils.isBlank(environment)) {
+            return blankBody;
+        }
+        if (environment.length() > MAX_ECHOED_LENGTH) {
+            return unknownBody;
+        }
+        return unknownBodies.get(environment,
+                key -> body(String.format("Failed to find configuration for environment %s", key)));
+    }
+
+    private static byte[] body(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", Response.Status.BAD_REQUEST.getStatusCode());
+        error.put("message", message);
+        try {
+            return MAPPER.writeValueAsBytes(error);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.cvent.pangaea.filter;
+
+import com.cvent.pangaea.MultiEnvAware;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Reads a single query parameter straight from the raw query of the request URI, instead of decoding the whole query
+ * into a map, and caches it in the request properties so every filter of the request shares one scan. Like Jersey, it
+ * takes the first value of the parameter, and a parameter without a value is empty.
+ *
+ * Filters that change the parameter in the request URI (see {@link #replace}) have to {@link #set} the new value.
+ */
+final class QueryParameter {
+
+    /**
+     * The environment parameter shared by the pangaea filters
+     */
+    static final QueryParameter ENVIRONMENT = new QueryParameter(MultiEnvAware.ENVIRONMENT);
+
+    /**
+     * Cached for requests that don't have the parameter, since a null property is no property
+     */
+    private static final Object ABSENT = new Object();
+
+    private static final String ENCODING = StandardCharsets.UTF_8.name();
+
+    private final String name;
+    private final String property;
+
+    /**
+     * constructor
+     * @param name the name of the query parameter
+     */
+    QueryParameter(String name) {
+        this.name = name;
+        this.property = QueryParameter.class.getName() + "." + name;
+    }
+
+    /**
+     * @param nameOfParameter the name of a query parameter
+     * @return the shared instance for the environment parameter, or a new one
+     */
+    static QueryParameter of(String nameOfParameter) {
+        return ENVIRONMENT.name.equals(nameOfParameter) ? ENVIRONMENT : new QueryParameter(nameOfParameter);
+    }
+
+    /**
+     * @param requestContext the request
+     * @return the decoded value of the parameter in the request, or null if it doesn't have it
+     */
+    String get(ContainerRequestContext requestContext) {
+        Object cached = requestContext.getProperty(property);
+        if (cached == null) {
+            String value = scan(requestContext.getUriInfo().getRequestUri().getRawQuery());
+            requestContext.setProperty(property, value == null ? ABSENT : value);
+            return value;
+        }
+        return cached == ABSENT ? null : (String) cached;
+    }
+
+    /**
+     * Update the cached value after changing the request URI
+     *
+     * @param requestContext the request
+     * @param value the new decoded value
+     */
+    void set(ContainerRequestContext requestContext, String value) {
+        requestContext.setProperty(property, value == null ? ABSENT : value);
+    }
+
+    /**
+     * @param rawQuery the raw (encoded) query, or null
+     * @return the decoded value of the first occurrence of the parameter, or null if the query doesn't have it
+     */
+    String scan(String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        int length = rawQuery.length();
+        int start = 0;
+        while (start <= length) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int separator = separator(rawQuery, start, end);
+            if (isName(rawQuery, start, separator)) {
+                return separator == end ? "" : decode(rawQuery, separator + 1, end);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Replace the value of every occurrence of the parameter
+     *
+     * @param uri the request URI
+     * @param value the new decoded value
+     * @return the URI with the parameter replaced, or the same URI if it doesn't have the parameter
+     */
+    URI replace(URI uri, String value) {
+        String raw = uri.toString();
+        int queryStart = raw.indexOf('?');
+        if (queryStart < 0) {
+            return uri;
+        }
+        int queryEnd = raw.indexOf('#', queryStart);
+        if (queryEnd < 0) {
+            queryEnd = raw.length();
+        }
+        String encoded = encode(value);
+        StringBuilder builder = new StringBuilder(raw.length() + encoded.length()).append(raw, 0, queryStart + 1);
+        boolean replaced = false;
+        int start = queryStart + 1;
+        while (start <= queryEnd) {
+            int end = raw.indexOf('&', start);
+            if (end < 0 || end > queryEnd) {
+                end = queryEnd;
+            }
+            int separator = separator(raw, start, end);
+            if (isName(raw, start, separator)) {
+                builder.append(name).append('=').append(encoded);
+                replaced = true;
+            } else {
+                builder.append(raw, start, end);
+            }
+            if (end < queryEnd) {
+                builder.append('&');
+            }
+            start = end + 1;
+        }
+        if (!replaced) {
+            return uri;
+        }
+        return URI.create(builder.append(raw, queryEnd, raw.length()).toString());
+    }
+
+    private boolean isName(String query, int start, int end) {
+        return end - start == name.length() && query.regionMatches(start, name, 0, name.length());
+    }
+
+    private static int separator(String query, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (query.charAt(i) == '=') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static String decode(String query, int start, int end) {
+        String value = query.substring(start, end);
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, ENCODING);
+        } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+            // Malformed escapes are kept as they are
+            return value;
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.cvent.pangaea.filter;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.util.EnvironmentUtil;
+
+/**
+ * The value of a {@link MultiEnvAware} for the environment of the current request, see
+ * {@link EnvironmentIdentifierFilter#register}. The first {@link #get()} of a request looks the environment up in the
+ * {@link MultiEnvAware} (so a blank environment gets the default, and an unconfigured one is resolved from the
+ * template, or rejected); later calls in the same request return that value straight away.
+ *
+ * Outside of a request filtered by the owning filter (for example on a thread the work was handed off to), or while
+ * running with a different environment than the request's, every call is a plain {@link MultiEnvAware#get} for
+ * {@link EnvironmentUtil#getEnvironment()}.
+ *
+ * @param <T> the type of the values
+ */
+public final class RequestEnvironment<T> {
+
+    private final EnvironmentIdentifierFilter filter;
+    private final MultiEnvAware<T> environments;
+    private final int index;
+
+    RequestEnvironment(EnvironmentIdentifierFilter filter, MultiEnvAware<T> environments, int index) {
+        this.filter = filter;
+        this.environments = environments;
+        this.index = index;
+    }
+
+    /**
+     * Throws a {@link com.cvent.pangaea.MultiEnvSupportException} if the environment is blank and there is no default
+     * environment, or if it can't be found or resolved.
+     *
+     * @return the value for the environment of the current request
+     */
+    public T get() {
+        String environment = EnvironmentUtil.getEnvironment();
+        ResolvedRequest request = ResolvedRequest.current();
+        if (request == null || !request.isFor(filter, environment) || index >= request.size()) {
+            return environments.get(environment);
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) request.get(index);
+        if (value == null) {
+            value = environments.get(environment);
+            request.set(index, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the environments this handle reads from
+     */
+    public MultiEnvAware<T> getEnvironments() {
+        return environments;
+    }
+}
@@ -0,0 +1,101 @@
+package com.cvent.pangaea.filter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.cvent.pangaea.MultiEnvAware;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The request rate and latency of each environment, see {@link EnvironmentIdentifierFilter#setMetrics}. Every timer
+ * is named {@code com.cvent.pangaea.filter.EnvironmentIdentifierFilter.requests.<environment>}.
+ *
+ * The number of timers is bounded: requests without an environment are recorded as {@value #NONE}, requests for an
+ * environment that isn't known as {@value #UNKNOWN}, and requests for known environments beyond the first
+ * {@code maxEnvironments} as {@value #OTHER}, so junk in the query string can't create metrics. Environments recorded
+ * as {@value #UNKNOWN} or {@value #OTHER} are remembered for a while, as many and as long as
+ * {@link MultiEnvAware#DEFAULT_UNKNOWN_ENVIRONMENT_CACHE_SIZE} and
+ * {@link MultiEnvAware#DEFAULT_UNKNOWN_ENVIRONMENT_TTL} say, so repeated requests for them don't check whether they
+ * are known every time.
+ */
+final class RequestMetrics {
+
+    static final String NONE = "none";
+    static final String UNKNOWN = "unknown";
+    static final String OTHER = "other";
+
+    /**
+     * The request property the {@link Timer.Context} of a request is kept in
+     */
+    static final String PROPERTY = RequestMetrics.class.getName() + ".timer";
+
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final int maxEnvironments;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Timer none;
+    private final Timer unknown;
+    private final Timer other;
+
+    /**
+     * Environments recently recorded as unknown or other, with the timer they were recorded with
+     */
+    private final Cache<String, Timer> overflow = Caffeine.newBuilder()
+            .maximumSize(MultiEnvAware.DEFAULT_UNKNOWN_ENVIRONMENT_CACHE_SIZE)
+            .expireAfterWrite(MultiEnvAware.DEFAULT_UNKNOWN_ENVIRONMENT_TTL.toNanos(), TimeUnit.NANOSECONDS)
+            .executor(Runnable::run)
+            .build();
+
+    /**
+     * @param registry the registry to register the timers with
+     * @param maxEnvironments the number of environments that get a timer of their own
+     */
+    RequestMetrics(MetricRegistry registry, int maxEnvironments) {
+        this.registry = registry;
+        this.prefix = MetricRegistry.name(EnvironmentIdentifierFilter.class, "requests");
+        this.maxEnvironments = maxEnvironments;
+        this.none = registry.timer(MetricRegistry.name(prefix, NONE));
+        this.unknown = registry.timer(MetricRegistry.name(prefix, UNKNOWN));
+        this.other = registry.timer(MetricRegistry.name(prefix, OTHER));
+    }
+
+    /**
+     * @param environment the environment of the request, may be null
+     * @param known tells whether an environment is known, asked for environments without a timer of their own that
+     * weren't recorded as unknown or other recently
+     * @return the timer to record the request with
+     */
+    Timer timer(String environment, Predicate<String> known) {
+        if (environment == null) {
+            return none;
+        }
+        Timer timer = timers.get(environment);
+        if (timer == null) {
+            timer = overflow.getIfPresent(environment);
+        }
+        if (timer != null) {
+            return timer;
+        }
+        if (!known.test(environment)) {
+            timer = unknown;
+        } else if (timers.size() < maxEnvironments) {
+            // Racing requests may overshoot the bound by a few environments, which isn't worth a lock
+            return timers.computeIfAbsent(environment, key -> registry.timer(MetricRegistry.name(prefix, key)));
+        } else {
+            timer = other;
+        }
+        overflow.put(environment, timer);
+        return timer;
+    }
+
+    /**
+     * Remove the timers from the registry
+     */
+    void remove() {
+        registry.removeMatching((metricName, metric) -> metricName.startsWith(prefix + "."));
+    }
+}
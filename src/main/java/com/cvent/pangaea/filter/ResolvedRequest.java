@@ -0,0 +1,75 @@
+package com.cvent.pangaea.filter;
+
+import java.util.Objects;
+
+/**
+ * The values resolved for the environment of the request being processed by the current thread, one slot per
+ * {@link RequestEnvironment} registered with the filter. Set by the request filter and cleared by the response filter.
+ */
+final class ResolvedRequest {
+
+    private static final ThreadLocal<ResolvedRequest> CURRENT = new ThreadLocal<>();
+
+    private final EnvironmentIdentifierFilter filter;
+    private final String environment;
+    private final Object[] values;
+
+    ResolvedRequest(EnvironmentIdentifierFilter filter, String environment, int size) {
+        this.filter = filter;
+        this.environment = environment;
+        this.values = new Object[size];
+    }
+
+    /**
+     * @return the request being processed by the current thread, or null
+     */
+    static ResolvedRequest current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param request the request the current thread starts processing
+     */
+    static void begin(ResolvedRequest request) {
+        CURRENT.set(request);
+    }
+
+    /**
+     * The current thread is done with its request
+     */
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @param owner the filter that registered the handle asking
+     * @param currentEnvironment the environment the current thread runs with
+     * @return {@code true} if the values of this request apply
+     */
+    boolean isFor(EnvironmentIdentifierFilter owner, String currentEnvironment) {
+        return filter == owner && Objects.equals(environment, currentEnvironment);
+    }
+
+    /**
+     * @return the number of slots
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * @param index the slot
+     * @return the value resolved for the slot, or null if it hasn't been resolved yet
+     */
+    Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param index the slot
+     * @param value the value resolved for the slot
+     */
+    void set(int index, Object value) {
+        values[index] = value;
+    }
+}
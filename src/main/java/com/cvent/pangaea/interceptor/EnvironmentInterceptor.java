@@ -3,6 +3,7 @@ package com.cvent.pangaea.interceptor;
 
 import retrofit.RequestInterceptor;
 
+import com.cvent.pangaea.EnvironmentAliases;
 import com.cvent.pangaea.MultiEnvAware;
 import com.cvent.pangaea.util.EnvironmentUtil;
 
@@ -18,6 +19,7 @@ import com.cvent.pangaea.util.EnvironmentUtil;
 public class EnvironmentInterceptor implements RequestInterceptor {
 
     private String environment;
+    private EnvironmentAliases aliases = EnvironmentAliases.NONE;
     
     public EnvironmentInterceptor() {
     }
@@ -26,13 +28,22 @@ public class EnvironmentInterceptor implements RequestInterceptor {
         this.environment = environment;
     }
     
+    /**
+     * Send the environment an alias stands for instead of the alias
+     *
+     * @param aliases the aliases, or null for none
+     */
+    public void setAliases(EnvironmentAliases aliases) {
+        this.aliases = aliases == null ? EnvironmentAliases.NONE : aliases;
+    }
+
     @Override
     public void intercept(RequestFacade request) {
         if (environment != null && !environment.isEmpty()) {
-            request.addQueryParam(MultiEnvAware.ENVIRONMENT, environment);
+            request.addQueryParam(MultiEnvAware.ENVIRONMENT, aliases.canonical(environment));
         } else if (EnvironmentUtil.getEnvironment() != null
                 && !EnvironmentUtil.getEnvironment().isEmpty()) {
-            request.addQueryParam(MultiEnvAware.ENVIRONMENT, EnvironmentUtil.getEnvironment());
+            request.addQueryParam(MultiEnvAware.ENVIRONMENT, aliases.canonical(EnvironmentUtil.getEnvironment()));
         }
         
     }
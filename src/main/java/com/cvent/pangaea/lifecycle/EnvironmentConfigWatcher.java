@@ -0,0 +1,247 @@
+package com.cvent.pangaea.lifecycle;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.MultiEnvSupportException;
+import com.cvent.pangaea.ReloadReport;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.validation.BaseValidator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reloads the environment configuration of a running application when its configuration file changes.
+ *
+ * Only the section holding the environments is parsed again, and only the environments whose configuration changed are
+ * bound again, see {@link MultiEnvAware#reload}. Environments whose configuration didn't change keep their
+ * instances, so their connection pools and clients aren't rebuilt. A configuration that can't be read, bound or
+ * validated is logged and ignored, the application keeps using the environments it has.
+ *
+ * <pre>
+ *    environment.lifecycle().manage(new EnvironmentConfigWatcher&lt;&gt;(config.getEnvironmentConfig(),
+ *            DatabaseConfiguration.class, Paths.get(configFile), environment.getObjectMapper()));
+ * </pre>
+ *
+ * The file is watched with a {@link WatchService} on its directory. When the configuration is replaced in a way the
+ * watcher can't see (for example through a symbolic link to another directory), call {@link #reload()} instead.
+ *
+ * @param <T> - configuration object for specific environment
+ */
+public class EnvironmentConfigWatcher<T> implements Managed {
+
+    /**
+     * Where the environments are in the configuration file by default
+     */
+    public static final String DEFAULT_SECTION = "/environmentConfig";
+
+    /**
+     * How long the file has to stay untouched before it is read, editors tend to write a file in several steps
+     */
+    static final Duration QUIET_PERIOD = Duration.ofMillis(200);
+
+    /**
+     * How long stopping waits for the watching thread to finish
+     */
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final Logger LOG = LoggerFactory.getLogger(EnvironmentConfigWatcher.class);
+
+    private final MultiEnvAware<T> environments;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final Path file;
+    private final Path directory;
+    private final JsonPointer section;
+    private final ConfigurationSourceProvider provider;
+    private final Validator validator;
+
+    private JsonNode current;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Watch the environments in the {@link #DEFAULT_SECTION} of a configuration file
+     *
+     * @param environments the environments to reconfigure
+     * @param type the configuration class of a single environment
+     * @param file the configuration file the environments were read from
+     * @param mapper the object mapper the configuration was read with
+     */
+    public EnvironmentConfigWatcher(MultiEnvAware<T> environments, Class<T> type, Path file, ObjectMapper mapper) {
+        this(environments, type, file, DEFAULT_SECTION, mapper, new FileConfigurationSourceProvider(),
+                BaseValidator.newValidator());
+    }
+
+    /**
+     * @param environments the environments to reconfigure
+     * @param type the configuration class of a single environment
+     * @param file the configuration file the environments were read from
+     * @param section a JSON pointer to the environments in the configuration file
+     * @param mapper the object mapper the configuration was read with
+     * @param provider reads the configuration file, for example a {@code SubstitutingSourceProvider} when the
+     * configuration uses environment variables
+     * @param validator validates changed environments
+     */
+    public EnvironmentConfigWatcher(MultiEnvAware<T> environments, Class<T> type, Path file, String section,
+            ObjectMapper mapper, ConfigurationSourceProvider provider, Validator validator) {
+        this.environments = environments;
+        this.mapper = mapper;
+        this.reader = mapper.readerFor(type);
+        this.file = file.toAbsolutePath();
+        this.directory = this.file.getParent();
+        if (directory == null) {
+            throw new IllegalArgumentException(String.format("%s is not a configuration file", file));
+        }
+        this.section = JsonPointer.compile(section);
+        this.provider = provider;
+        this.validator = validator;
+    }
+
+    @Override
+    public void start() throws Exception {
+        synchronized (this) {
+            current = readSection();
+        }
+        watchService = file.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "pangaea-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (watchService != null) {
+            watchService.close();
+            thread.join(STOP_TIMEOUT.toMillis());
+        }
+    }
+
+    /**
+     * Read the configuration file and reconfigure the environments that changed since it was last read
+     *
+     * Throws a {@link MultiEnvSupportException} if the configuration file has no environments, or they can't be bound
+     * or aren't valid.
+     *
+     * @return {@code true} if any environment was added, changed or removed
+     * @throws IOException if the configuration file can't be read
+     */
+    public synchronized boolean reload() throws IOException {
+        JsonNode next = readSection();
+        if (next.equals(current)) {
+            return false;
+        }
+
+        ReloadReport report = environments.reload(current, next, this::bind);
+        current = next;
+        LOG.info("Reloaded environment configuration from {}, {}", file, report);
+        return !report.isEmpty();
+    }
+
+    private T bind(String key, JsonNode node) {
+        T value;
+        try {
+            value = reader.readValue(node);
+        } catch (IOException ex) {
+            throw new MultiEnvSupportException(String.format("Failed to bind environment configuration from %s", file),
+                    ex);
+        }
+        validate(key, value);
+        return value;
+    }
+
+    private void validate(String key, T value) {
+        Set<ConstraintViolation<T>> violations = validator.validate(value);
+        if (!violations.isEmpty()) {
+            throw new MultiEnvSupportException(String.format("Invalid %s configuration for environment %s: %s",
+                    value.getClass().getSimpleName(), key, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "))));
+        }
+    }
+
+    private JsonNode readSection() throws IOException {
+        return readSection(file, section, mapper, provider);
+    }
+
+    /**
+     * Throws a {@link MultiEnvSupportException} if the configuration file has no environments.
+     *
+     * @param file the configuration file
+     * @param section a JSON pointer to the environments in the configuration file
+     * @param mapper the object mapper to read the configuration with
+     * @param provider reads the configuration file
+     * @return the environments section of the configuration file
+     * @throws IOException if the configuration file can't be read
+     */
+    static JsonNode readSection(Path file, JsonPointer section, ObjectMapper mapper,
+            ConfigurationSourceProvider provider) throws IOException {
+        JsonNode root;
+        try (InputStream input = provider.open(file.toString())) {
+            root = mapper.readTree(new YAMLFactory().createParser(input));
+        }
+        JsonNode node = root == null ? null : root.at(section);
+        if (node == null || !node.isObject()) {
+            throw new MultiEnvSupportException(String.format("No environment configuration at %s in %s",
+                    section, file));
+        }
+        return node;
+    }
+
+    private void watch() {
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                if (touched(watchService.take(), name)) {
+                    // Wait for the writes to settle before reading the file
+                    for (WatchKey key = watchService.poll(QUIET_PERIOD.toMillis(), TimeUnit.MILLISECONDS); key != null;
+                            key = watchService.poll(QUIET_PERIOD.toMillis(), TimeUnit.MILLISECONDS)) {
+                        touched(key, name);
+                    }
+                    reloadQuietly();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            LOG.debug("Stopped watching {}", file);
+        }
+    }
+
+    private boolean touched(WatchKey key, Path name) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            touched |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+        }
+        key.reset();
+        return touched;
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (IOException | RuntimeException ex) {
+            LOG.error("Failed to reload environment configuration from {}, keeping the current one", file, ex);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.cvent.pangaea.lifecycle;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.PreloadReport;
+import io.dropwizard.lifecycle.Managed;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preloads a list of environments while the application starts.
+ *
+ * Dropwizard starts managed objects before it opens the application connectors, so registering this with
+ * {@code environment.lifecycle().manage(...)} keeps the node from answering (and from passing load balancer health
+ * checks) until every listed environment has been resolved:
+ *
+ * <pre>
+ *    environment.lifecycle().manage(new EnvironmentPreloader(config.getEnvironmentConfig(),
+ *            Arrays.asList("S115", "S116", "S410")));
+ * </pre>
+ */
+public class EnvironmentPreloader implements Managed {
+
+    /**
+     * How long startup waits for the preload by default
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(5);
+
+    private final MultiEnvAware<?> environments;
+    private final List<String> keys;
+    private final int parallelism;
+    private final Duration timeout;
+    private final boolean failOnError;
+    private volatile PreloadReport report;
+
+    /**
+     * Preload with one thread per available processor, waiting up to {@link #DEFAULT_TIMEOUT} and failing startup if
+     * any environment couldn't be resolved
+     *
+     * @param environments the environments to preload from
+     * @param keys the environments to preload
+     */
+    public EnvironmentPreloader(MultiEnvAware<?> environments, Collection<String> keys) {
+        this(environments, keys, Runtime.getRuntime().availableProcessors(), DEFAULT_TIMEOUT, true);
+    }
+
+    /**
+     * @param environments the environments to preload from
+     * @param keys the environments to preload
+     * @param parallelism the maximum number of environments to resolve at the same time
+     * @param timeout how long startup waits for the preload
+     * @param failOnError {@code true} to fail startup if any environment couldn't be resolved
+     */
+    public EnvironmentPreloader(MultiEnvAware<?> environments, Collection<String> keys, int parallelism,
+            Duration timeout, boolean failOnError) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("'parallelism' must be at least 1");
+        }
+        this.environments = environments;
+        this.keys = new ArrayList<>(keys);
+        this.parallelism = parallelism;
+        this.timeout = timeout;
+        this.failOnError = failOnError;
+    }
+
+    @Override
+    public void start() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "pangaea-preload-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            report = environments.preload(keys, executor, parallelism).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException(String.format("Preloading %d environments took longer than %d ms",
+                    keys.size(), timeout.toMillis()), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failOnError && !report.isSuccessful()) {
+            IllegalStateException failed = new IllegalStateException(report.toString());
+            report.getFailures().values().forEach(failed::addSuppressed);
+            throw failed;
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Nothing to stop, the preloaded environments belong to the MultiEnvAware instance
+    }
+
+    /**
+     * @return the report of the last preload, or null if it hasn't finished yet
+     */
+    public PreloadReport getReport() {
+        return report;
+    }
+}
@@ -0,0 +1,229 @@
+package com.cvent.pangaea.lifecycle;
+
+import com.cvent.pangaea.MultiEnvAware;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.lifecycle.Managed;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the resolved environments of a {@link MultiEnvAware} in a file between runs of the application, so a restarted
+ * node doesn't resolve every environment from its template again before it takes traffic.
+ *
+ * Starting reads the snapshot written by the previous run, if there is one, and adds its environments with
+ * {@link MultiEnvAware#restoreResolved}. Stopping (or {@link #save()}) writes the environments resolved by now. The
+ * snapshot is keyed by a hash of the environment section of the configuration file: when the configuration changed
+ * between runs the snapshot is ignored and replaced on the next save, so it never hands out environments resolved
+ * from an old template. Register it before an {@link EnvironmentPreloader}, which then finds the restored environments
+ * in place:
+ *
+ * <pre>
+ *    environment.lifecycle().manage(new EnvironmentSnapshot&lt;&gt;(config.getEnvironmentConfig(),
+ *            DatabaseConfiguration.class, Paths.get("/var/cache/app/environments.snapshot"), Paths.get(configFile),
+ *            environment.getObjectMapper()));
+ *    environment.lifecycle().manage(new EnvironmentPreloader(config.getEnvironmentConfig(), silos));
+ * </pre>
+ *
+ * The snapshot is a short header (format version and hash) followed by the environments written with the object
+ * mapper, and is read through a memory mapped file. Resolved environments have to survive being written and read
+ * with the object mapper, which is what template resolution does with them anyway.
+ *
+ * @param <T> - configuration object for specific environment
+ */
+public class EnvironmentSnapshot<T> implements Managed {
+
+    /**
+     * Marks a snapshot file, "PGSN"
+     */
+    private static final int MAGIC = 0x5047534e;
+    private static final int VERSION = 1;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = Integer.BYTES * 2 + HASH_LENGTH;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EnvironmentSnapshot.class);
+
+    private final MultiEnvAware<T> environments;
+    private final Class<T> type;
+    private final Path snapshot;
+    private final Path directory;
+    private final Path file;
+    private final JsonPointer section;
+    private final ObjectMapper mapper;
+    private final ConfigurationSourceProvider provider;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    private byte[] hash;
+    private volatile Set<String> restored = Collections.emptySet();
+
+    /**
+     * Keep a snapshot of the environments in the {@link EnvironmentConfigWatcher#DEFAULT_SECTION} of a configuration
+     * file
+     *
+     * @param environments the environments to snapshot
+     * @param type the configuration class of a single environment
+     * @param snapshot the snapshot file, its directory has to exist
+     * @param file the configuration file the environments were read from
+     * @param mapper the object mapper the configuration was read with
+     */
+    public EnvironmentSnapshot(MultiEnvAware<T> environments, Class<T> type, Path snapshot, Path file,
+            ObjectMapper mapper) {
+        this(environments, type, snapshot, file, EnvironmentConfigWatcher.DEFAULT_SECTION, mapper,
+                new FileConfigurationSourceProvider());
+    }
+
+    /**
+     * @param environments the environments to snapshot
+     * @param type the configuration class of a single environment
+     * @param snapshot the snapshot file, its directory has to exist
+     * @param file the configuration file the environments were read from
+     * @param section a JSON pointer to the environments in the configuration file
+     * @param mapper the object mapper the configuration was read with
+     * @param provider reads the configuration file, for example a {@code SubstitutingSourceProvider} when the
+     * configuration uses environment variables
+     */
+    public EnvironmentSnapshot(MultiEnvAware<T> environments, Class<T> type, Path snapshot, Path file, String section,
+            ObjectMapper mapper, ConfigurationSourceProvider provider) {
+        JavaType mapType = mapper.getTypeFactory().constructMapType(Map.class, String.class, type);
+        this.environments = environments;
+        this.type = type;
+        this.snapshot = snapshot.toAbsolutePath();
+        this.directory = this.snapshot.getParent();
+        if (directory == null) {
+            throw new IllegalArgumentException(String.format("%s is not a snapshot file", snapshot));
+        }
+        this.file = file.toAbsolutePath();
+        this.section = JsonPointer.compile(section);
+        this.mapper = mapper;
+        this.provider = provider;
+        this.reader = mapper.readerFor(mapType);
+        this.writer = mapper.writerFor(mapType);
+    }
+
+    /**
+     * Restore the environments of the snapshot if it was taken from the same configuration. A snapshot that can't be
+     * read is logged and ignored, the environments are resolved as usual then.
+     *
+     * @throws IOException if the configuration file can't be read
+     */
+    @Override
+    public synchronized void start() throws IOException {
+        hash = hash(EnvironmentConfigWatcher.readSection(file, section, mapper, provider));
+        if (!Files.isRegularFile(snapshot)) {
+            LOG.info("No environment snapshot at {}", snapshot);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!matches(buffer)) {
+                LOG.info("Environment snapshot {} was taken from another configuration, ignoring it", snapshot);
+                return;
+            }
+            Map<String, T> values = reader.readValue(new ByteBufferBackedInputStream(buffer));
+            restored = Collections.unmodifiableSet(environments.restoreResolved(values));
+            LOG.info("Restored {} of {} environments from {}", restored.size(), values.size(), snapshot);
+        } catch (IOException | RuntimeException ex) {
+            LOG.warn("Failed to read environment snapshot {}, resolving environments instead", snapshot, ex);
+        }
+    }
+
+    /**
+     * Save the resolved environments, a failure is logged so it doesn't get in the way of stopping the application
+     */
+    @Override
+    public void stop() {
+        try {
+            save();
+        } catch (IOException | RuntimeException ex) {
+            LOG.error("Failed to save environment snapshot {}", snapshot, ex);
+        }
+    }
+
+    /**
+     * Write the environments resolved by now, replacing the previous snapshot. Readers never see a partially written
+     * snapshot, it is written to a temporary file that then replaces the snapshot.
+     *
+     * @return the number of environments written
+     * @throws IOException if the snapshot can't be written
+     * @throws IllegalStateException if this hasn't been started, so the configuration hash isn't known
+     */
+    public synchronized int save() throws IOException {
+        if (hash == null) {
+            throw new IllegalStateException("The environment snapshot has to be started before it can be saved");
+        }
+        Map<String, T> resolved = environments.getResolvedEnvironments();
+        Path temporary = Files.createTempFile(directory, String.valueOf(snapshot.getFileName()), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.write(hash);
+                writer.writeValue((OutputStream) output, resolved);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        LOG.info("Saved {} environments to {}", resolved.size(), snapshot);
+        return resolved.size();
+    }
+
+    /**
+     * @return the environments restored from the snapshot when this was started
+     */
+    public Set<String> getRestored() {
+        return restored;
+    }
+
+    private boolean matches(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return false;
+        }
+        byte[] stored = new byte[HASH_LENGTH];
+        buffer.get(stored);
+        return Arrays.equals(stored, hash);
+    }
+
+    /**
+     * @return the hash of the configuration class and the environment configuration
+     */
+    private byte[] hash(JsonNode configuration) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(type.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update(mapper.writeValueAsBytes(configuration));
+        return digest.digest();
+    }
+}
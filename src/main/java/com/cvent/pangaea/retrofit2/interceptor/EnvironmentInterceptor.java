@@ -1,5 +1,6 @@
 package com.cvent.pangaea.retrofit2.interceptor;
 
+import com.cvent.pangaea.EnvironmentAliases;
 import com.cvent.pangaea.MultiEnvAware;
 import com.cvent.pangaea.filter.EnvironmentIdentifierFilter;
 import com.cvent.pangaea.util.EnvironmentUtil;
@@ -17,6 +18,7 @@ import okhttp3.Response;
 public class EnvironmentInterceptor implements Interceptor {
 
     private String environment;
+    private EnvironmentAliases aliases = EnvironmentAliases.NONE;
 
     public EnvironmentInterceptor() {
     }
@@ -25,17 +27,28 @@ public class EnvironmentInterceptor implements Interceptor {
         this.environment = environment;
     }
 
+    /**
+     * Send the environment an alias stands for instead of the alias
+     *
+     * @param aliases the aliases, or null for none
+     */
+    public void setAliases(EnvironmentAliases aliases) {
+        this.aliases = aliases == null ? EnvironmentAliases.NONE : aliases;
+    }
+
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request request = chain.request();
 
         if (environment != null && !environment.isEmpty()) {
-            HttpUrl url = request.url().newBuilder().addQueryParameter(MultiEnvAware.ENVIRONMENT, environment).build();
+            HttpUrl url = request.url().newBuilder()
+                    .addQueryParameter(MultiEnvAware.ENVIRONMENT, aliases.canonical(environment)).build();
             request = request.newBuilder().url(url).build();
         } else if (EnvironmentUtil.getEnvironment() != null
                            && !EnvironmentUtil.getEnvironment().isEmpty()) {
             HttpUrl url = request.url().newBuilder()
-                    .addQueryParameter(MultiEnvAware.ENVIRONMENT, EnvironmentUtil.getEnvironment()).build();
+                    .addQueryParameter(MultiEnvAware.ENVIRONMENT, aliases.canonical(EnvironmentUtil.getEnvironment()))
+                    .build();
             request = request.newBuilder().url(url).build();
 
         }
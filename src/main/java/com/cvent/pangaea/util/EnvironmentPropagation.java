@@ -0,0 +1,149 @@
+package com.cvent.pangaea.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Carries the environment of the current request (see {@link EnvironmentUtil}) over to work that runs on other
+ * threads. Every wrapper captures the environment when it is created, and runs the wrapped work with that environment
+ * wherever it ends up running:
+ *
+ * <pre>
+ *    ExecutorService executor = EnvironmentPropagation.executorService(Executors.newFixedThreadPool(8));
+ *    CompletableFuture&lt;Event&gt; event = EnvironmentPropagation.supplyAsync(() -&gt; eventDao.find(id), executor)
+ *            .thenApplyAsync(EnvironmentPropagation.function(this::enrich), executor);
+ * </pre>
+ *
+ * Wrapped executors capture the environment of the thread that submits each task, so one executor can be shared by
+ * every request.
+ */
+public final class EnvironmentPropagation {
+
+    /**
+     * Private constructor for Utility class
+     */
+    private EnvironmentPropagation() {
+    }
+
+    /**
+     * @param task the task to wrap
+     * @return a task that runs {@code task} with the current environment
+     */
+    public static Runnable runnable(Runnable task) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return () -> EnvironmentUtil.runWithEnvironment(environment, task);
+    }
+
+    /**
+     * @param <V> the result type of the task
+     * @param task the task to wrap
+     * @return a task that calls {@code task} with the current environment
+     */
+    public static <V> Callable<V> callable(Callable<V> task) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return () -> EnvironmentUtil.callWithEnvironment(environment, task);
+    }
+
+    /**
+     * @param <V> the type of the value
+     * @param supplier the supplier to wrap
+     * @return a supplier that calls {@code supplier} with the current environment
+     */
+    public static <V> Supplier<V> supplier(Supplier<V> supplier) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return () -> EnvironmentUtil.supplyWithEnvironment(environment, supplier);
+    }
+
+    /**
+     * @param <T> the type of the input
+     * @param <R> the type of the result
+     * @param function the function to wrap, for example a {@link CompletableFuture} continuation
+     * @return a function that applies {@code function} with the current environment
+     */
+    public static <T, R> Function<T, R> function(Function<T, R> function) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return input -> EnvironmentUtil.supplyWithEnvironment(environment, () -> function.apply(input));
+    }
+
+    /**
+     * @param <T> the type of the first input
+     * @param <U> the type of the second input
+     * @param <R> the type of the result
+     * @param function the function to wrap, for example a {@link CompletableFuture#handle} continuation
+     * @return a function that applies {@code function} with the current environment
+     */
+    public static <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> function) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return (first, second) -> EnvironmentUtil.supplyWithEnvironment(environment,
+                () -> function.apply(first, second));
+    }
+
+    /**
+     * @param <T> the type of the input
+     * @param consumer the consumer to wrap, for example a {@link CompletableFuture#thenAccept} continuation
+     * @return a consumer that accepts with the current environment
+     */
+    public static <T> Consumer<T> consumer(Consumer<T> consumer) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return input -> EnvironmentUtil.runWithEnvironment(environment, () -> consumer.accept(input));
+    }
+
+    /**
+     * @param <T> the type of the first input
+     * @param <U> the type of the second input
+     * @param consumer the consumer to wrap, for example a {@link CompletableFuture#whenComplete} continuation
+     * @return a consumer that accepts with the current environment
+     */
+    public static <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> consumer) {
+        String environment = EnvironmentUtil.getEnvironment();
+        return (first, second) -> EnvironmentUtil.runWithEnvironment(environment,
+                () -> consumer.accept(first, second));
+    }
+
+    /**
+     * @param executor the executor to wrap
+     * @return an executor that runs every task with the environment of the thread that submitted it
+     */
+    public static Executor executor(Executor executor) {
+        return command -> executor.execute(runnable(command));
+    }
+
+    /**
+     * @param executor the executor service to wrap
+     * @return an executor service that runs every task with the environment of the thread that submitted it, and
+     * shuts down {@code executor} when it is shut down
+     */
+    public static ExecutorService executorService(ExecutorService executor) {
+        return new PropagatingExecutorService(executor);
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, Executor)}, with the current environment
+     *
+     * @param <V> the type of the value
+     * @param supplier supplies the value
+     * @param executor the executor to run on
+     * @return the future value
+     */
+    public static <V> CompletableFuture<V> supplyAsync(Supplier<V> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(supplier(supplier), executor);
+    }
+
+    /**
+     * Like {@link CompletableFuture#runAsync(Runnable, Executor)}, with the current environment
+     *
+     * @param task the task to run
+     * @param executor the executor to run on
+     * @return a future that completes when the task is done
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(runnable(task), executor);
+    }
+}
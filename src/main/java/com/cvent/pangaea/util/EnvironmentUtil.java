@@ -1,6 +1,9 @@
 
 package com.cvent.pangaea.util;
 
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
 /**
  * @author n.golani
  *This is the utility class which contains threadLocal variable environment which is set 
@@ -13,15 +16,27 @@ package com.cvent.pangaea.util;
  * so that wrong values are not passes from one request to another. The cleaning of threadLocal 
  * variable is done in EnvironmentIdentifierFilter.
  * 
- * This utility should not be used if asynchronous execution is performed as the async flow
- * will be performed in different thread which cannot have access to threadLocal variable of 
- * parent thread or request initiating thread. 
+ * Asynchronous work runs on other threads, which don't see the environment of the request that started it. Wrap
+ * that work with {@link EnvironmentPropagation} (or run it with {@link #runWithEnvironment}) so it carries the
+ * environment along.
  *
+ * On JDKs that have {@code java.lang.ScopedValue}, setting the {@link #SCOPED_VALUE_PROPERTY} system property to
+ * {@code true} binds the environment of propagated work to a ScopedValue instead of a ThreadLocal, which suits virtual
+ * threads better. The request filter still uses the ThreadLocal; work running in a scope must not call
+ * {@link #setEnvironment}, since the scope takes precedence, even when it binds no environment.
  */
 public final class EnvironmentUtil {
     
+    /**
+     * System property that makes propagated work use a ScopedValue, where the JDK has one
+     */
+    public static final String SCOPED_VALUE_PROPERTY = "pangaea.environment.scopedValue";
+
     private static final ThreadLocal<String> ENVIRONMENT = new ThreadLocal<>();
 
+    private static final ScopedEnvironment SCOPED = Boolean.getBoolean(SCOPED_VALUE_PROPERTY)
+            ? ScopedEnvironment.create() : null;
+
     /**
      * Private constructor for Utility class
      */
@@ -32,7 +47,7 @@ public final class EnvironmentUtil {
      * @return the environment
      */
     public static String getEnvironment() {
-        return ENVIRONMENT.get();
+        return SCOPED != null ? SCOPED.get(ENVIRONMENT) : ENVIRONMENT.get();
     }
     
     /**
@@ -51,4 +66,73 @@ public final class EnvironmentUtil {
         ENVIRONMENT.remove();
     }
 
+    /**
+     * @return {@code true} if propagated work binds the environment to a ScopedValue rather than a ThreadLocal
+     */
+    public static boolean isScopedValueEnabled() {
+        return SCOPED != null;
+    }
+
+    /**
+     * Run a task with the given environment, and restore the environment of the current thread afterwards
+     *
+     * @param environment the environment, or null to run without one
+     * @param task the task to run
+     */
+    public static void runWithEnvironment(String environment, Runnable task) {
+        supplyWithEnvironment(environment, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Get a value with the given environment, and restore the environment of the current thread afterwards
+     *
+     * @param <V> the type of the value
+     * @param environment the environment, or null to run without one
+     * @param task supplies the value
+     * @return the value
+     */
+    public static <V> V supplyWithEnvironment(String environment, Supplier<V> task) {
+        try {
+            return callWithEnvironment(environment, task::get);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            // A Supplier can't throw checked exceptions
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Call a task with the given environment, and restore the environment of the current thread afterwards
+     *
+     * @param <V> the result type of the task
+     * @param environment the environment, or null to run without one
+     * @param task the task to call
+     * @return the result of the task
+     * @throws Exception if the task throws
+     */
+    public static <V> V callWithEnvironment(String environment, Callable<V> task) throws Exception {
+        if (SCOPED != null) {
+            return SCOPED.call(environment, task);
+        }
+        String previous = ENVIRONMENT.get();
+        set(environment);
+        try {
+            return task.call();
+        } finally {
+            set(previous);
+        }
+    }
+
+    private static void set(String environment) {
+        if (environment == null) {
+            ENVIRONMENT.remove();
+        } else {
+            ENVIRONMENT.set(environment);
+        }
+    }
+
 }
@@ -0,0 +1,134 @@
+package com.cvent.pangaea.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Callable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the environment in a {@code java.lang.ScopedValue} on JDKs that have one. This library is built for Java 8, so
+ * the ScopedValue API is looked up at runtime.
+ */
+final class ScopedEnvironment {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScopedEnvironment.class);
+
+    private final Object scopedValue;
+    private final MethodHandle where;
+    private final MethodHandle run;
+    private final MethodHandle isBound;
+    private final MethodHandle get;
+
+    private ScopedEnvironment(Object scopedValue, MethodHandle where, MethodHandle run, MethodHandle isBound,
+            MethodHandle get) {
+        this.scopedValue = scopedValue;
+        this.where = where;
+        this.run = run;
+        this.isBound = isBound;
+        this.get = get;
+    }
+
+    /**
+     * @return an instance backed by a new ScopedValue, or null if this JDK has no (usable) ScopedValue
+     */
+    static ScopedEnvironment create() {
+        return create("java.lang.ScopedValue");
+    }
+
+    /**
+     * @param scopedValueClassName the class with the API of {@code java.lang.ScopedValue}
+     * @return an instance backed by a new instance of the class, or null if it has no (usable) ScopedValue API
+     */
+    static ScopedEnvironment create(String scopedValueClassName) {
+        try {
+            Class<?> scopedValueClass = Class.forName(scopedValueClassName);
+            Class<?> carrierClass = Class.forName(scopedValueClassName + "$Carrier");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Object scopedValue = lookup.findStatic(scopedValueClass, "newInstance", MethodType.methodType(
+                    scopedValueClass)).invoke();
+            MethodHandle where = lookup.findStatic(scopedValueClass, "where", MethodType.methodType(carrierClass,
+                    scopedValueClass, Object.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class));
+            MethodHandle run = lookup.findVirtual(carrierClass, "run", MethodType.methodType(void.class,
+                    Runnable.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Runnable.class));
+            MethodHandle isBound = lookup.findVirtual(scopedValueClass, "isBound", MethodType.methodType(
+                    boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            MethodHandle get = lookup.findVirtual(scopedValueClass, "get", MethodType.methodType(Object.class))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            return new ScopedEnvironment(scopedValue, where, run, isBound, get);
+        } catch (Throwable ex) {
+            LOG.warn("ScopedValue is not available on this JDK, the environment is kept in a ThreadLocal", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param unscoped the environment of the thread
+     * @return the environment bound to the current scope, which may be null for work that was started without one,
+     * or the environment of the thread if the current code doesn't run in a scope
+     */
+    String get(ThreadLocal<String> unscoped) {
+        try {
+            return (boolean) isBound.invokeExact(scopedValue) ? (String) (Object) get.invokeExact(scopedValue)
+                    : unscoped.get();
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * Run a task with the environment bound to a new scope
+     *
+     * @param environment the environment
+     * @param task the task to run
+     */
+    void run(String environment, Runnable task) {
+        try {
+            Object carrier = (Object) where.invokeExact(scopedValue, (Object) environment);
+            run.invokeExact(carrier, task);
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * Call a task with the environment bound to a new scope
+     *
+     * @param <V> the result type of the task
+     * @param environment the environment
+     * @param task the task to call
+     * @return the result of the task
+     * @throws Exception if the task throws
+     */
+    <V> V call(String environment, Callable<V> task) throws Exception {
+        Object[] result = new Object[1];
+        Exception[] failure = new Exception[1];
+        run(environment, () -> {
+            try {
+                result[0] = task.call();
+            } catch (Exception ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V) result[0];
+        return value;
+    }
+
+    private static RuntimeException propagate(Throwable ex) {
+        if (ex instanceof RuntimeException) {
+            return (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        return new IllegalStateException(ex);
+    }
+}
@@ -0,0 +1,113 @@
+package com.cvent.pangaea;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test code for CompiledSiloTemplateResolver
+ */
+public class CompiledSiloTemplateResolverTest {
+
+    private ObjectMapper mapper;
+    private Config template;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+        template = new Config();
+        template.setTemplate(true);
+        template.url = "jdbc:sqlserver://a1-dba-XXX.a1.cvent.com\\dev_silo;database=XXX_DB";
+        template.port = 1433;
+        template.database = new Database();
+        template.database.user = "user";
+        template.database.password = "XXX-password";
+        template.hosts = Arrays.asList("a.cvent.com", "b-XXX.cvent.com");
+        template.shards = new LinkedHashMap<>();
+        template.shards.put("shardXXX", "XXX");
+        template.shards.put("static", "value");
+        template.ignored = "ignored";
+    }
+
+    @Test
+    public void testResolve_matchesSiloTemplateResolver() throws Exception {
+        SiloTemplateResolver<Config> expected = new SiloTemplateResolver<>(Config.class, mapper);
+        CompiledSiloTemplateResolver<Config> unit = new CompiledSiloTemplateResolver<>(Config.class, mapper);
+
+        for (String key : new String[]{"S115", "S9", "S1000", "P2"}) {
+            Config resolved = unit.resolve(key, template);
+            assertThat(mapper.writeValueAsString(resolved),
+                    is(mapper.writeValueAsString(expected.resolve(key, template))));
+            assertThat(resolved.ignored, nullValue());
+        }
+    }
+
+    @Test
+    public void testResolve_returnsNewInstances() {
+        CompiledSiloTemplateResolver<Config> unit = new CompiledSiloTemplateResolver<>(Config.class, mapper);
+
+        Config first = unit.resolve("S1", template);
+        Config second = unit.resolve("S1", template);
+        assertThat(first, not(sameInstance(second)));
+        assertThat(first.database, not(sameInstance(second.database)));
+        assertThat(first.url, is("jdbc:sqlserver://a1-dba-1.a1.cvent.com\\dev_silo;database=1_DB"));
+    }
+
+    @Test
+    public void testResolve_recompilesForNewTemplate() {
+        CompiledSiloTemplateResolver<Config> unit = new CompiledSiloTemplateResolver<>(Config.class, mapper);
+        unit.resolve("S1", template);
+
+        Config other = new Config();
+        other.url = "other-XXX";
+        assertThat(unit.resolve("S2", other).url, is("other-2"));
+    }
+
+    @Test
+    public void testResolve_noTemplate() {
+        CompiledSiloTemplateResolver<Config> unit = new CompiledSiloTemplateResolver<>(Config.class, mapper);
+        assertThat(unit.resolve("S1", null), nullValue());
+    }
+
+    /**
+     * Test class for multi env configs
+     */
+    private static class Config extends BaseEnvironmentConfiguration {
+
+        @JsonProperty
+        private String url;
+        @JsonProperty
+        private int port;
+        @JsonProperty
+        private Database database;
+        @JsonProperty
+        private List<String> hosts;
+        @JsonProperty
+        private Map<String, String> shards;
+        @JsonIgnore
+        private String ignored;
+    }
+
+    /**
+     * Test class for nested configs
+     */
+    private static class Database {
+
+        @JsonProperty
+        private String user;
+        @JsonProperty
+        private String password;
+    }
+}
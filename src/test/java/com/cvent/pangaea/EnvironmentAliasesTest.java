@@ -0,0 +1,59 @@
+package com.cvent.pangaea;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test code for EnvironmentAliases
+ */
+public class EnvironmentAliasesTest {
+
+    @Test
+    public void testCanonical() {
+        EnvironmentAliases aliases = EnvironmentAliases.builder()
+                .alias("P2", "production", "prod", "pr01")
+                .alias("S410", "staging")
+                .build();
+
+        assertThat(aliases.canonical("prod"), is("P2"));
+        assertThat(aliases.canonical("pr01"), sameInstance(aliases.canonical("production")));
+        assertThat(aliases.canonical("staging"), is("S410"));
+        assertThat(aliases.canonical("PROD"), is("PROD"));
+        assertThat(aliases.canonical("S999"), is("S999"));
+        assertThat(aliases.canonical(null), nullValue());
+        assertThat(EnvironmentAliases.NONE.canonical("prod"), is("prod"));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        Map<String, List<String>> configured = new LinkedHashMap<>();
+        configured.put("P2", Arrays.asList("production", "prod"));
+        configured.put("S410", Collections.emptyList());
+        EnvironmentAliases aliases = EnvironmentAliases.of(configured, true);
+
+        assertThat(aliases.canonical("PROD"), is("P2"));
+        assertThat(aliases.canonical("Production"), is("P2"));
+        assertThat(aliases.canonical("p2"), is("P2"));
+        assertThat(aliases.canonical("s410"), is("S410"));
+        assertThat(aliases.canonical("s411"), is("s411"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAliasOfTwoEnvironments() {
+        EnvironmentAliases.builder()
+                .alias("P2", "prod")
+                .alias("P3", "PROD")
+                .caseInsensitive(true)
+                .build();
+    }
+}
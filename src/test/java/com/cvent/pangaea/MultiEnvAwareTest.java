@@ -2,16 +2,57 @@ package com.cvent.pangaea;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import javax.validation.constraints.NotNull;
+import org.slf4j.LoggerFactory;
 
 /**
  * Test code for MultiEnvAware
@@ -185,6 +226,793 @@ public class MultiEnvAwareTest {
         assertThat(unit.containsKey("key2"), is(false));
     }
 
+    @Test
+    public void testGet_concurrentMissesCreateValueOnce() throws Exception {
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        unit.setCreationFunction(env -> {
+            creations.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new MultiEnvConfig();
+        });
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<MultiEnvConfig>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> unit.get("S1")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            MultiEnvConfig first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<MultiEnvConfig> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), is(first));
+            }
+            assertThat(creations.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGet_failedCreationIsNotCached() {
+        AtomicInteger creations = new AtomicInteger();
+        MultiEnvConfig value = new MultiEnvConfig();
+        unit.setCreationFunction(env -> {
+            if (creations.incrementAndGet() == 1) {
+                throw new IllegalStateException("pool unavailable");
+            }
+            return value;
+        });
+
+        try {
+            unit.get("S1");
+            fail("Expected the first creation to fail");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("pool unavailable"));
+        }
+        assertThat(unit.get("S1"), is(value));
+        assertThat(creations.get(), is(2));
+    }
+
+    @Test
+    public void testGet_waitingCallerTimesOut() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        unit.setCreationTimeout(Duration.ofMillis(50));
+        unit.setCreationFunction(env -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new MultiEnvConfig();
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MultiEnvConfig> builder = executor.submit(() -> unit.get("S1"));
+            started.await(5, TimeUnit.SECONDS);
+
+            exception.expect(MultiEnvSupportException.class);
+            exception.expectMessage("Timed out");
+            try {
+                unit.get("S1");
+            } finally {
+                release.countDown();
+                builder.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBoundedResolvedEntries_evictsAndClosesResolvedButKeepsConfigured() throws Exception {
+        MultiEnvAware<ClosableConfig> bounded = new MultiEnvAware<>();
+        ClosableConfig configured = new ClosableConfig();
+        bounded.put("P2", configured);
+        bounded.setResolvedEntryBounds(2, null, null);
+        AtomicInteger shutDowns = new AtomicInteger();
+        bounded.setCreationExecutor(task -> {
+            shutDowns.incrementAndGet();
+            task.run();
+        });
+        List<ClosableConfig> created = new ArrayList<>();
+        bounded.setCreationFunction(env -> {
+            ClosableConfig value = new ClosableConfig();
+            synchronized (created) {
+                created.add(value);
+            }
+            return value;
+        });
+
+        for (int i = 0; i < 50; i++) {
+            bounded.get("S" + i);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bounded.size() > 3 && System.currentTimeMillis() < deadline) {
+            bounded.get("P2");
+            Thread.sleep(10);
+        }
+        assertThat(bounded.size() <= 3, is(true));
+        assertThat(bounded.get("P2"), is(configured));
+        assertThat(configured.closed.get(), is(false));
+        long closed = created.stream().filter(value -> value.closed.get()).count();
+        assertThat(closed, is((long) (created.size() - (bounded.size() - 1))));
+        assertThat(shutDowns.get(), is((int) closed));
+    }
+
+    @Test
+    public void testBoundedResolvedEntries_idleEntriesExpire() throws Exception {
+        unit.setResolvedEntryBounds(100, Duration.ofMillis(20), null);
+        unit.setCreationFunction(env -> new MultiEnvConfig());
+        MultiEnvConfig first = unit.get("S1");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (unit.containsKey("S1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(30);
+            unit.get("S2");
+        }
+        assertThat(unit.containsKey("S1"), is(false));
+        assertThat(unit.get("S1") == first, is(false));
+    }
+
+    @Test
+    public void testRefreshAfterWrite_servesTheOldValueUntilTheNewOneIsBuilt() throws Exception {
+        MultiEnvAware<String> refreshing = new MultiEnvAware<>();
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        refreshing.setCreationFunction(env -> {
+            int build = builds.incrementAndGet();
+            if (build > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return env + "-" + build;
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            refreshing.setResolvedEntryBounds(Long.MAX_VALUE, null, null, Duration.ofMillis(20), executor);
+            assertThat(refreshing.get("S1"), is("S1-1"));
+            Thread.sleep(40);
+
+            // Due for a refresh, which is stuck building the new value
+            assertThat(refreshing.get("S1"), is("S1-1"));
+            assertThat(refreshing.get("S1"), is("S1-1"));
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"S1-2".equals(refreshing.get("S1")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(refreshing.get("S1"), is("S1-2"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGetAsync_sharesTheCreationInFlight() throws Exception {
+        AtomicInteger creations = new AtomicInteger();
+        CompletableFuture<MultiEnvConfig> pool = new CompletableFuture<>();
+        unit.setAsyncCreationFunction(env -> {
+            creations.incrementAndGet();
+            return pool;
+        });
+
+        CompletableFuture<MultiEnvConfig> first = unit.getAsync("S1");
+        CompletableFuture<MultiEnvConfig> second = unit.getAsync("S1");
+        assertThat(first.isDone() || second.isDone(), is(false));
+
+        MultiEnvConfig created = new MultiEnvConfig();
+        pool.complete(created);
+        assertThat(first.get(1, TimeUnit.SECONDS), sameInstance(created));
+        assertThat(second.get(1, TimeUnit.SECONDS), sameInstance(created));
+        assertThat(unit.get("S1"), sameInstance(created));
+        assertThat(unit.getAsync("S1").isDone(), is(true));
+        assertThat(creations.get(), is(1));
+    }
+
+    @Test
+    public void testGetAsync_resolvesFromTheTemplateOrFails() throws Exception {
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        unit.put("template", template);
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new SiloTemplateResolver<>(MultiEnvConfig.class, new ObjectMapper()));
+
+        MultiEnvConfig resolved = templated.getAsync("S999").get(1, TimeUnit.SECONDS);
+        assertThat(resolved.surveyUrlDefaultDomain, is("a1-999-dba.a1.cvent.com"));
+        assertThat(templated.get("S999"), sameInstance(resolved));
+
+        try {
+            unit.getAsync("S999").get(1, TimeUnit.SECONDS);
+            fail("S999 can't be resolved without a template resolver");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause() instanceof MultiEnvSupportException, is(true));
+        }
+    }
+
+    @Test
+    public void testUnknownEnvironment_stacklessRejectionIsReused() {
+        unit.setUnknownEnvironmentHandling(10, Duration.ofMinutes(1), Duration.ofMinutes(1), true);
+
+        MultiEnvSupportException first = rejection(() -> unit.get("unknown"));
+        MultiEnvSupportException second = rejection(() -> unit.get("unknown"));
+        assertThat(second == first, is(true));
+        assertThat(first.getStackTrace().length, is(0));
+        assertThat(first.getMessage(), is("Fail to find configuration for environment unknown"));
+    }
+
+    @Test
+    public void testUnknownEnvironment_pendingRejectionsAreLoggedAfterAQuietPeriod() throws Exception {
+        Logger logger = (Logger) LoggerFactory.getLogger(MultiEnvAware.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            unit.setUnknownEnvironmentHandling(10, Duration.ofMinutes(1), Duration.ofMillis(100), true);
+
+            rejection(() -> unit.get("unknown"));
+            rejection(() -> unit.get("unknown"));
+            rejection(() -> unit.get("other"));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (rejectionLogs(appender).size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            List<String> logs = rejectionLogs(appender);
+            assertThat(logs.size(), is(2));
+            assertThat(logs.get(0).contains("{unknown=1}"), is(true));
+            assertThat(logs.get(1).contains("unknown=1"), is(true));
+            assertThat(logs.get(1).contains("other=1"), is(true));
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
+    private static List<String> rejectionLogs(ListAppender<ILoggingEvent> appender) {
+        List<String> logs = new ArrayList<>();
+        synchronized (appender) {
+            for (ILoggingEvent event : appender.list) {
+                if (event.getFormattedMessage().startsWith("Failed to find environments")) {
+                    logs.add(event.getFormattedMessage());
+                }
+            }
+        }
+        return logs;
+    }
+
+    @Test
+    public void testUnknownEnvironment_rejectionIsForgottenWhenEnvironmentIsAdded() {
+        rejection(() -> unit.get("S1"));
+        MultiEnvConfig value = new MultiEnvConfig();
+        unit.put("S1", value);
+        assertThat(unit.get("S1"), is(value));
+
+        rejection(() -> unit.get("S2"));
+        unit.setCreationFunction(env -> value);
+        assertThat(unit.get("S2"), is(value));
+    }
+
+    @Test
+    public void testLazyBinding_bindsEnvironmentsOnFirstAccess() throws Exception {
+        String json = "{\"environmentConfig\": {"
+                + "\"S1\": {\"url\": \"s1\"},"
+                + "\"S2\": {\"url\": \"s2\"},"
+                + "\"bad\": {},"
+                + "\"P2\": {\"url\": \"p2\", \"defaultEnvironmentConfiguration\": true},"
+                + "\"template\": {\"url\": \"XXX\", \"template\": true}}}";
+        // Read the same way dropwizard reads configurations, through a tree parser without a codec
+        AtomicInteger bound = new AtomicInteger();
+        ObjectMapper mapper = countingMapper(bound);
+        LazyConfig config = mapper.readValue(new TreeTraversingParser(mapper.readTree(json)), LazyConfig.class);
+        MultiEnvAware<LazyEnvConfig> environments = config.environmentConfig;
+
+        assertThat(bound.get(), is(2));
+        assertThat(environments.size(), is(5));
+        assertThat(environments.containsKey("S1"), is(true));
+        assertThat(environments.get().url, is("p2"));
+        assertThat(environments.getTemplate().url, is("XXX"));
+
+        assertThat(environments.get("S1").url, is("s1"));
+        assertThat(environments.get("S1") == environments.get("S1"), is(true));
+        assertThat(bound.get(), is(3));
+
+        try {
+            environments.get("bad");
+            fail("Expected validation to fail");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("Invalid LazyEnvConfig configuration for environment bad: url may not be "
+                    + "null"));
+        }
+
+        try {
+            environments.bindAllAsync(Runnable::run).join();
+            fail("Expected background binding to fail");
+        } catch (CompletionException ex) {
+            assertThat(ex.getCause().getMessage(), is("Failed to bind configuration for environments [bad]"));
+        }
+        assertThat(environments.get("S2").url, is("s2"));
+        assertThat(environments.convert((env, conf) -> conf.url).get("S2"), is("s2"));
+    }
+
+    @Test
+    public void testPreload_resolvesInParallelAndReportsEachEnvironment() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        unit.setCreationFunction(env -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            if (env.equals("bad")) {
+                throw new IllegalStateException("bad environment");
+            }
+            return new MultiEnvConfig();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<String> keys = Arrays.asList("S1", "S2", "bad", "S3", "S4", "S5", "S1");
+            PreloadReport report = unit.preload(keys, executor, 2).get(5, TimeUnit.SECONDS);
+
+            assertThat(new ArrayList<>(report.getResults().keySet()),
+                    is(Arrays.asList("S1", "S2", "bad", "S3", "S4", "S5")));
+            assertThat(report.isSuccessful(), is(false));
+            assertThat(report.getFailures().get("bad").getMessage(), is("bad environment"));
+            assertThat(report.getResults().get("S1").getDuration().toMillis() >= 20, is(true));
+            assertThat(maxRunning.get() <= 2, is(true));
+            assertThat(unit.containsKey("S5"), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testView_convertsLazilyAndFollowsSourceChanges() {
+        MultiEnvConfig p2 = new MultiEnvConfig();
+        p2.setDefaultEnvironmentConfiguration(true);
+        unit.put("P2", p2);
+        unit.put("S1", new MultiEnvConfig());
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        unit.put("template", template);
+
+        AtomicInteger conversions = new AtomicInteger();
+        MultiEnvAware<String> view = unit.view((env, conf) -> {
+            conversions.incrementAndGet();
+            return env + "_" + conf.getSurveyUrlDefaultDomain();
+        }, new SiloTemplateResolver<>(String.class, new ObjectMapper()));
+
+        assertThat(conversions.get(), is(0));
+        assertThat(view.size(), is(3));
+        assertThat(view.get(), is("P2_a1-XXX-dba.a1.cvent.com"));
+        assertThat(view.get("S1"), sameInstance(view.get("S1")));
+        assertThat(view.get("S999"), is("template_a1-999-dba.a1.cvent.com"));
+        assertThat(conversions.get(), is(3));
+
+        MultiEnvConfig changed = new MultiEnvConfig();
+        changed.surveyUrlDefaultDomain = "changed";
+        unit.put("S1", changed);
+        assertThat(view.get("S1"), is("S1_changed"));
+        unit.put("S2", changed);
+        assertThat(view.containsKey("S2"), is(true));
+        unit.remove("S2");
+        assertThat(view.containsKey("S2"), is(false));
+        assertThat(conversions.get(), is(4));
+    }
+
+    private static MultiEnvSupportException rejection(Runnable lookup) {
+        try {
+            lookup.run();
+        } catch (MultiEnvSupportException ex) {
+            return ex;
+        }
+        fail("Expected a MultiEnvSupportException");
+        return null;
+    }
+
+    @Test
+    public void testReconfigure_keepsUnchangedInstancesAndShutsDownReplacedOnes() {
+        MultiEnvAware<ClosableConfig> envs = new MultiEnvAware<>();
+        ClosableConfig s1 = new ClosableConfig();
+        s1.setDefaultEnvironmentConfiguration(true);
+        ClosableConfig s2 = new ClosableConfig();
+        ClosableConfig s4 = new ClosableConfig();
+        envs.put("S1", s1);
+        envs.put("S2", s2);
+        envs.put("S4", s4);
+
+        Map<String, ClosableConfig> changed = new HashMap<>();
+        ClosableConfig newS2 = new ClosableConfig();
+        changed.put("S2", newS2);
+        changed.put("S3", new ClosableConfig());
+
+        Set<String> affected = envs.reconfigure(changed, Collections.singleton("S1"));
+
+        assertThat(affected, is(new TreeSet<>(Arrays.asList("S2", "S3", "S4"))));
+        assertThat(envs.get("S1"), sameInstance(s1));
+        assertThat(envs.get(), sameInstance(s1));
+        assertThat(envs.get("S2"), sameInstance(newS2));
+        assertThat(envs.containsKey("S3"), is(true));
+        assertThat(envs.containsKey("S4"), is(false));
+        assertThat(s1.closed.get(), is(false));
+        assertThat(s2.closed.get(), is(true));
+        assertThat(s4.closed.get(), is(true));
+    }
+
+    @Test
+    public void testReconfigure_movesDefaultEnvironmentAndRejectsConflicts() {
+        MultiEnvAware<MultiEnvConfig> envs = new MultiEnvAware<>();
+        MultiEnvConfig s1 = new MultiEnvConfig();
+        s1.setDefaultEnvironmentConfiguration(true);
+        envs.put("S1", s1);
+        envs.put("S2", new MultiEnvConfig());
+
+        MultiEnvConfig newS2 = new MultiEnvConfig();
+        newS2.setDefaultEnvironmentConfiguration(true);
+        try {
+            envs.reconfigure(Collections.singletonMap("S2", newS2), Collections.singleton("S1"));
+            fail("Expected two default environments to be rejected");
+        } catch (MultiEnvSupportException ex) {
+            assertThat(envs.getDefaultKey(), is("S1"));
+        }
+
+        envs.reconfigure(Collections.singletonMap("S2", newS2), Collections.emptySet());
+
+        assertThat(envs.getDefaultKey(), is("S2"));
+        assertThat(envs.get(), sameInstance(newS2));
+        assertThat(envs.containsKey("S1"), is(false));
+    }
+
+    @Test
+    public void testFreeze_readsLikeTheOriginalAndRejectsChanges() {
+        MultiEnvAware<MultiEnvConfig> envs = new MultiEnvAware<>();
+        MultiEnvConfig s1 = new MultiEnvConfig();
+        s1.setDefaultEnvironmentConfiguration(true);
+        MultiEnvConfig s2 = new MultiEnvConfig();
+        envs.put("S1", s1);
+        envs.put("S2", s2);
+        envs.setCreationFunction(env -> new MultiEnvConfig());
+
+        MultiEnvAware<MultiEnvConfig> frozen = envs.freeze();
+
+        assertThat(frozen.get("S1"), sameInstance(s1));
+        assertThat(frozen.get("S2"), sameInstance(s2));
+        assertThat(frozen.get(), sameInstance(s1));
+        assertThat(frozen.get(" "), sameInstance(s1));
+        assertThat(frozen.getDefaultKey(), is("S1"));
+        assertThat(frozen.get("S3"), sameInstance(envs.get("S3")));
+        assertThat(frozen.containsKey("S3"), is(true));
+        assertThat(frozen.size(), is(3));
+        assertThat(frozen, sameInstance(envs));
+        assertThat(frozen.freeze(), sameInstance(frozen));
+        try {
+            frozen.put("S4", new MultiEnvConfig());
+            fail("Expected a frozen instance to reject changes");
+        } catch (UnsupportedOperationException ex) {
+            assertThat(frozen.containsKey("S4"), is(false));
+        }
+
+        MultiEnvAware<MultiEnvConfig> source = new MultiEnvAware<>();
+        source.put("S1", s1);
+        MultiEnvAware<MultiEnvConfig> view = source.view((env, conf) -> conf).freeze();
+        assertThat(view.get("S1"), sameInstance(s1));
+        source.put("S1", s2);
+        assertThat(view.get("S1"), sameInstance(s2));
+    }
+
+    @Test
+    public void testFreeze_keepsTheTableInUseWhenTheSourceChanges() {
+        MultiEnvConfig s1 = new MultiEnvConfig();
+        MultiEnvConfig s2 = new MultiEnvConfig();
+        MultiEnvConfig s3 = new MultiEnvConfig();
+        MultiEnvAware<MultiEnvConfig> source = new MultiEnvAware<>();
+        source.put("S1", s1);
+        source.put("S2", s2);
+        MultiEnvAware<MultiEnvConfig> view = source.view((env, conf) -> conf).freeze();
+        assertThat(view.isFrozen("S1"), is(true));
+        assertThat(view.isFrozen("S2"), is(true));
+
+        source.put("S1", s3);
+        assertThat(view.isFrozen("S1"), is(false));
+        assertThat(view.isFrozen("S2"), is(true));
+        assertThat(view.get("S1"), sameInstance(s3));
+        assertThat(view.isFrozen("S1"), is(true));
+
+        assertThat(view.evict("S2"), is(true));
+        assertThat(view.isFrozen("S2"), is(false));
+        assertThat(view.get("S2"), sameInstance(s2));
+        assertThat(view.isFrozen("S2"), is(true));
+        assertThat(view.refresh("S2"), sameInstance(s2));
+        assertThat(view.isFrozen("S2"), is(true));
+    }
+
+    @Test
+    public void testAliases_lookUpTheCanonicalEnvironment() {
+        MultiEnvConfig p2 = new MultiEnvConfig();
+        unit.put("P2", p2);
+        unit.setAliases(EnvironmentAliases.builder().alias("P2", "production", "prod").caseInsensitive(true).build());
+
+        assertThat(unit.get("prod"), sameInstance(p2));
+        assertThat(unit.get("Production"), sameInstance(p2));
+        assertThat(unit.containsKey("PROD"), is(true));
+        assertThat(unit.getKeyOrDefault("prod"), is("P2"));
+        assertThat(unit.isResolvable("p2"), is(true));
+        assertThat(unit.keySet(), is(Collections.singleton("P2")));
+        assertThat(unit.freeze().get("prod"), sameInstance(p2));
+        assertThat(unit.view((env, config) -> env).get("prod"), is("P2"));
+    }
+
+    @Test
+    public void testMetrics_countLookupsAndTimeTemplateResolution() {
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        MultiEnvConfig p2 = new MultiEnvConfig();
+        p2.setDefaultEnvironmentConfiguration(true);
+        unit.put("template", template);
+        unit.put("P2", p2);
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new SiloTemplateResolver<>(MultiEnvConfig.class, new ObjectMapper()));
+        MetricRegistry registry = new MetricRegistry();
+        templated.setMetrics(registry, "config");
+
+        templated.get("P2");
+        templated.get("S999");
+        templated.get("S999");
+        templated.get("");
+        templated.freeze().get("P2");
+
+        String prefix = "com.cvent.pangaea.MultiEnvAware.config.";
+        assertThat(registry.counter(prefix + "hits").getCount(), is(4L));
+        assertThat(registry.counter(prefix + "misses").getCount(), is(1L));
+        assertThat(registry.counter(prefix + "defaults").getCount(), is(1L));
+        assertThat(registry.counter(prefix + "templateFallbacks").getCount(), is(1L));
+        assertThat(registry.timer(prefix + "templateResolution").getCount(), is(1L));
+        assertThat(registry.getGauges().get(prefix + "resolved").getValue(), is(1));
+
+        templated.setMetrics(null, null);
+        assertThat(registry.getNames().isEmpty(), is(true));
+        templated.get("P2");
+        assertThat(registry.getNames().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testTemplateRoutes_resolveEachFamilyFromItsTemplate() {
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        MultiEnvConfig preview = new MultiEnvConfig();
+        preview.surveyUrlDefaultDomain = "{{branch}}.preview-{{number}}.cvent.com";
+        unit.put("template", template);
+        unit.put("preview-template", preview);
+        unit.setTemplateRoutes(TemplateRoutes.builder()
+                .route("pr-{number:digits}-{branch}", "preview-template")
+                .route("loadtest-{pod}", "loadtest-template")
+                .build());
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new RoutedTemplateResolver<>(MultiEnvConfig.class, new ObjectMapper()));
+
+        assertThat(templated.get("pr-118-search").surveyUrlDefaultDomain, is("search.preview-118.cvent.com"));
+        assertThat(templated.get("S999").surveyUrlDefaultDomain, is("a1-999-dba.a1.cvent.com"));
+        // The loadtest template isn't configured, so those fall back to the template environment
+        assertThat(templated.getKeyOrDefault("loadtest-a"), is("template"));
+        assertThat(templated.getKeyOrDefault("pr-7-x"), is("preview-template"));
+        assertThat(templated.isResolvable("pr-7-x"), is(true));
+
+        MultiEnvConfig resolvedPreview = templated.get("pr-118-search");
+        MultiEnvConfig resolvedSilo = templated.get("S999");
+        MultiEnvConfig newPreview = new MultiEnvConfig();
+        newPreview.surveyUrlDefaultDomain = "{{branch}}.pr{{number}}.cvent.com";
+        templated.reconfigure(Collections.singletonMap("preview-template", newPreview),
+                Collections.singleton("template"));
+
+        assertThat(templated.get("S999"), sameInstance(resolvedSilo));
+        assertThat(templated.get("pr-118-search") == resolvedPreview, is(false));
+        assertThat(templated.get("pr-118-search").surveyUrlDefaultDomain, is("search.pr118.cvent.com"));
+    }
+
+    @Test
+    public void testSiloIndex_getBySiloNumber() {
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        MultiEnvConfig s410 = new MultiEnvConfig();
+        MultiEnvConfig p2 = new MultiEnvConfig();
+        unit.put("template", template);
+        unit.put("S410", s410);
+        unit.setSiloIndex(true);
+        unit.put("P2", p2);
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new SiloTemplateResolver<>(MultiEnvConfig.class, new ObjectMapper()));
+
+        assertThat(unit.hasSiloIndex(), is(true));
+        assertThat(templated.hasSiloIndex(), is(true));
+        assertThat(unit.get(410), sameInstance(s410));
+        assertThat(unit.get("S410"), sameInstance(s410));
+        assertThat(unit.get("P2"), sameInstance(p2));
+        assertThat(templated.get(999).surveyUrlDefaultDomain, is("a1-999-dba.a1.cvent.com"));
+        assertThat(templated.get(999), sameInstance(templated.get("S999")));
+        assertThat(new TreeSet<>(templated.keySet()), is(new TreeSet<>(Arrays.asList("P2", "S410", "S999",
+                "template"))));
+
+        templated.reconfigure(Collections.emptyMap(), Collections.singleton("template"));
+        assertThat(templated.get(999), sameInstance(templated.get("S999")));
+        assertThat(templated.containsKey("S410"), is(false));
+
+        MultiEnvConfig s411 = new MultiEnvConfig();
+        templated.put("S411", s411);
+        templated.freeze();
+        assertThat(templated.get(411), sameInstance(s411));
+        assertThat(templated.get(999), sameInstance(templated.get("S999")));
+    }
+
+    @Test
+    public void testConvertToPrimitive_derivesAndRederivesAfterChanges() {
+        MultiEnvConfig template = new MultiEnvConfig();
+        template.setTemplate(true);
+        MultiEnvConfig s410 = new MultiEnvConfig();
+        s410.surveyUrlDefaultDomain = "a1-410-dba.a1.cvent.com";
+        s410.setDefaultEnvironmentConfiguration(true);
+        unit.put("template", template);
+        unit.put("S410", s410);
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new SiloTemplateResolver<>(MultiEnvConfig.class, new ObjectMapper()));
+        MultiEnvInt length = templated.convertToInt((env, conf) -> conf.surveyUrlDefaultDomain.length());
+        MultiEnvLong silo = templated.convertToLong((env, conf) -> Long.parseLong(env.substring(1)));
+        MultiEnvBoolean resolved = templated.convertToBoolean((env, c) -> c.surveyUrlDefaultDomain.contains("-9"));
+
+        assertThat(length.getAsInt("S410"), is(23));
+        assertThat(length.getAsInt(), is(23));
+        assertThat(silo.getAsLong("S99999"), is(99_999L));
+        assertThat(resolved.getAsBoolean("S999"), is(true));
+        assertThat(resolved.getAsBoolean(null), is(false));
+
+        MultiEnvConfig changed = new MultiEnvConfig();
+        changed.surveyUrlDefaultDomain = "S410.example.com";
+        templated.put("S410", changed);
+        assertThat(length.getAsInt("S410"), is(16));
+
+        MultiEnvConfig newTemplate = new MultiEnvConfig();
+        newTemplate.setTemplate(true);
+        newTemplate.surveyUrlDefaultDomain = "XXX.example.com";
+        templated.reconfigure(Collections.singletonMap("template", newTemplate), Collections.emptySet());
+        assertThat(resolved.getAsBoolean("S999"), is(false));
+        assertThat(length.getAsInt("S999"), is(15));
+
+        exception.expect(MultiEnvSupportException.class);
+        exception.expectMessage("Fail to find configuration for environment");
+        new MultiEnvAware<MultiEnvConfig>().convertToInt((env, conf) -> 1).getAsInt("P2");
+    }
+
+    @Test
+    public void testReload_rebindsOnlyChangedEnvironments() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String config = "{\"S1\": {\"surveyUrlDefaultDomain\": \"s1\", \"hosts\": [\"a\", \"b\"]},"
+                + " \"P2\": {\"surveyUrlDefaultDomain\": \"p2\"},"
+                + " \"template\": {\"surveyUrlDefaultDomain\": \"a1-XXX\", \"template\": true}}";
+        JsonNode previous = mapper.readTree(config);
+        ObjectNode first = (ObjectNode) mapper.readTree(config);
+        first.with("S1").withArray("hosts").set(1, first.textNode("c"));
+        BiFunction<String, JsonNode, MultiEnvConfig> binder = (env, node) -> mapper.convertValue(node,
+                MultiEnvConfig.class);
+
+        assertThat(unit.reload(null, previous, binder).getAdded(), is(new TreeSet<>(Arrays.asList("P2", "S1",
+                "template"))));
+        MultiEnvAware<MultiEnvConfig> templated = unit.convert((env, conf) -> conf,
+                new SiloTemplateResolver<>(MultiEnvConfig.class, mapper));
+        MultiEnvConfig p2 = templated.get("P2");
+        MultiEnvConfig s999 = templated.get("S999");
+
+        ReloadReport report = templated.reload(previous, first, binder);
+        assertThat(report.getChanged(), is(Collections.singletonMap("S1", Collections.singletonList("/hosts/1"))));
+        assertThat(report.getUnchanged(), is(new TreeSet<>(Arrays.asList("P2", "template"))));
+        assertThat(report.getInvalidated().isEmpty(), is(true));
+        assertThat(templated.get("P2"), sameInstance(p2));
+        assertThat(templated.get("S999"), sameInstance(s999));
+
+        ObjectNode second = first.deepCopy();
+        second.remove("P2");
+        second.with("template").put("surveyUrlDefaultDomain", "b2-XXX");
+        report = templated.reload(first, second, binder);
+        assertThat(report.getRemoved(), is(Collections.singleton("P2")));
+        assertThat(report.getChangedTemplates(), is(Collections.singleton("template")));
+        assertThat(report.getInvalidated(), is(Collections.singleton("S999")));
+        assertThat(templated.get("S999").surveyUrlDefaultDomain, is("b2-999"));
+        assertThat(templated.containsKey("P2"), is(false));
+        assertThat(templated.reload(second, second, binder).isEmpty(), is(true));
+    }
+
+    /**
+     * Test class for lazily bound configurations
+     */
+    private static class LazyConfig {
+
+        @JsonProperty
+        @JsonDeserialize(using = LazyBindingDeserializer.class)
+        private MultiEnvAware<LazyEnvConfig> environmentConfig;
+    }
+
+    /**
+     * Test class for lazily bound environments
+     */
+    private static class LazyEnvConfig extends BaseEnvironmentConfiguration {
+
+        @JsonProperty
+        @NotNull
+        private String url;
+    }
+
+    /**
+     * @param bound - counts the environments that are bound
+     * @return a mapper that counts every {@link LazyEnvConfig} it binds
+     */
+    private static ObjectMapper countingMapper(AtomicInteger bound) {
+        SimpleModule module = new SimpleModule();
+        module.setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc,
+                    JsonDeserializer<?> deserializer) {
+                return beanDesc.getBeanClass() == LazyEnvConfig.class
+                        ? new CountingDeserializer(deserializer, bound) : deserializer;
+            }
+        });
+        return new ObjectMapper().registerModule(module);
+    }
+
+    /**
+     * Test class that counts the values a deserializer binds
+     */
+    private static class CountingDeserializer extends DelegatingDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger count;
+
+        CountingDeserializer(JsonDeserializer<?> delegate, AtomicInteger count) {
+            super(delegate);
+            this.count = count;
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> delegate) {
+            return new CountingDeserializer(delegate, count);
+        }
+
+        @Override
+        public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            count.incrementAndGet();
+            return super.deserialize(p, ctxt);
+        }
+    }
+
+    /**
+     * Test class for values that need to be shut down when evicted
+     */
+    private static class ClosableConfig extends BaseEnvironmentConfiguration implements AutoCloseable {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
     /**
      * Test class for multi env configs
      */
@@ -193,6 +1021,9 @@ public class MultiEnvAwareTest {
         @JsonProperty
         private String surveyUrlDefaultDomain = "a1-XXX-dba.a1.cvent.com";
 
+        @JsonProperty
+        private List<String> hosts;
+
         @Override
         public String toString() {
             return "DEFAULT";
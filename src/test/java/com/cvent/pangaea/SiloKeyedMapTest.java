@@ -0,0 +1,66 @@
+package com.cvent.pangaea;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test code for SiloKeyedMap
+ */
+public class SiloKeyedMapTest {
+
+    @Test
+    public void testSilo_parsesOnlyCanonicalSiloNames() {
+        assertThat(SiloKeyedMap.silo("S0"), is(0));
+        assertThat(SiloKeyedMap.silo("S410"), is(410));
+        assertThat(SiloKeyedMap.silo("S65535"), is(65_535));
+        for (String key : Arrays.asList("S", "S010", "s410", "P2", "S4a", "S65536", "S1234567", "")) {
+            assertThat(key, SiloKeyedMap.silo(key), is(-1));
+        }
+        assertThat(SiloKeyedMap.silo(null), is(-1));
+    }
+
+    @Test
+    public void testMap_behavesLikeAHashMap() {
+        SiloKeyedMap<String> unit = new SiloKeyedMap<>();
+        Map<String, String> expected = new HashMap<>();
+        for (String key : Arrays.asList("S1", "S410", "S4000", "S010", "P2", "S99999")) {
+            unit.put(key, key + "-value");
+            expected.put(key, key + "-value");
+        }
+
+        assertThat(unit, is(expected));
+        assertThat(unit.size(), is(6));
+        assertThat(unit.get(410), is("S410-value"));
+        assertThat(unit.get(10), nullValue());
+        assertThat(unit.get("S010"), is("S010-value"));
+        assertThat(unit.putIfAbsent("S1", "other"), is("S1-value"));
+        assertThat(unit.replace("S1", "S1-value", "replaced"), is(true));
+        assertThat(unit.remove("S1", "S1-value"), is(false));
+        assertThat(unit.remove("S1", "replaced"), is(true));
+        assertThat(unit.containsKey("S1"), is(false));
+
+        for (Iterator<Map.Entry<String, String>> entries = unit.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<String, String> entry = entries.next();
+            if (entry.getKey().equals("S4000")) {
+                entries.remove();
+            } else if (entry.getKey().equals("S410")) {
+                entry.setValue("updated");
+            }
+        }
+        assertThat(unit.get("S4000"), nullValue());
+        assertThat(unit.get(410), is("updated"));
+        assertThat(unit.keySet().size(), is(4));
+
+        unit.clear();
+        assertThat(unit.isEmpty(), is(true));
+        assertThat(unit.get(410), nullValue());
+    }
+}
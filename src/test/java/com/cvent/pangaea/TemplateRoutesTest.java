@@ -0,0 +1,74 @@
+package com.cvent.pangaea;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test code for TemplateRoutes
+ */
+public class TemplateRoutesTest {
+
+    private final TemplateRoutes routes = TemplateRoutes.builder()
+            .route("S{silo:digits}", "silo-template")
+            .route("S-canary", "canary-template")
+            .route("loadtest-{pod:alnum}", "loadtest-template")
+            .route("pr-{number:digits}-{branch}", "preview-template")
+            .route("{region}.{name}", "regional-template")
+            .build();
+
+    @Test
+    public void testMatch_capturesVariables() {
+        assertThat(routes.match("S410").getTemplateEnvironment(), is("silo-template"));
+        assertThat(routes.match("S410").getVariables(), is(Collections.singletonMap("silo", "410")));
+        assertThat(routes.match("loadtest-7b").getVariables(), is(Collections.singletonMap("pod", "7b")));
+
+        Map<String, String> preview = new LinkedHashMap<>();
+        preview.put("number", "118");
+        preview.put("branch", "search-fix");
+        assertThat(routes.match("pr-118-search-fix").getTemplateEnvironment(), is("preview-template"));
+        assertThat(routes.match("pr-118-search-fix").getVariables(), is(preview));
+
+        Map<String, String> regional = new LinkedHashMap<>();
+        regional.put("region", "eu");
+        regional.put("name", "S1.a");
+        assertThat(routes.match("eu.S1.a").getVariables(), is(regional));
+    }
+
+    @Test
+    public void testMatch_literalTextWinsAndMisses() {
+        assertThat(routes.match("S-canary").getTemplateEnvironment(), is("canary-template"));
+        assertThat(routes.match("S-canary2"), nullValue());
+        assertThat(routes.match("S"), nullValue());
+        assertThat(routes.match("S41a"), nullValue());
+        assertThat(routes.match("loadtest-"), nullValue());
+        assertThat(routes.match("pr-x-branch"), nullValue());
+        assertThat(routes.match(null), nullValue());
+        assertThat(TemplateRoutes.NONE.match("S410"), nullValue());
+    }
+
+    @Test
+    public void testBuild_rejectsAmbiguousPatterns() {
+        for (String pattern : new String[]{"S{a:digits}{b}", "S{n:digits}1", "S{n:hex}", "S{n", "S{1n}", "{a}-{a}"}) {
+            try {
+                TemplateRoutes.builder().route(pattern, "template").build();
+                fail("Expected " + pattern + " to be rejected");
+            } catch (IllegalArgumentException ex) {
+                assertThat(ex.getMessage().contains(pattern), is(true));
+            }
+        }
+        try {
+            TemplateRoutes.builder().route("S{silo:digits}", "a").route("S{number:digits}", "b").build();
+            fail("Expected patterns matching the same environments to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage().contains("match the same environments"), is(true));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.cvent.pangaea;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test code for ValueDeduplicator
+ */
+public class ValueDeduplicatorTest {
+
+    private ObjectMapper mapper;
+    private Config template;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+        template = new Config();
+        template.setTemplate(true);
+        template.url = "jdbc:sqlserver://a1-dba-XXX.a1.cvent.com;database=XXX_DB";
+        template.user = "service-user";
+        template.hosts = new ArrayList<>(Arrays.asList("a.cvent.com", "b-XXX.cvent.com"));
+        template.pool = new Pool();
+        template.pool.driver = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+        template.pool.maxSize = 32;
+        template.pool.timeout = Duration.seconds(30);
+    }
+
+    @Test
+    public void testWrap_sharesWhatIsIdentical() {
+        ValueDeduplicator unit = ValueDeduplicator.builder().share(Pool.class).mapper(mapper).build();
+        TemplateResolver<Config> resolver = unit.wrap(new CompiledSiloTemplateResolver<>(Config.class, mapper));
+
+        Config first = resolver.resolve("S1", template);
+        Config second = resolver.resolve("S2", template);
+
+        assertThat(first.pool, sameInstance(second.pool));
+        assertThat(first.pool, sameInstance(template.pool));
+        assertThat(first.user, sameInstance(second.user));
+        assertThat(first.hosts.get(0), sameInstance(second.hosts.get(0)));
+
+        assertThat(first.url, is("jdbc:sqlserver://a1-dba-1.a1.cvent.com;database=1_DB"));
+        assertThat(second.url, is("jdbc:sqlserver://a1-dba-2.a1.cvent.com;database=2_DB"));
+        assertThat(first.hosts.get(1), is("b-1.cvent.com"));
+        assertThat(first.hosts, not(sameInstance(second.hosts)));
+
+        DeduplicationReport report = unit.getReport();
+        assertThat(report.getValues(), is(2L));
+        assertThat(report.getSharedObjects(), is(2L));
+        assertThat(report.getSharedValues(), greaterThan(0L));
+        assertThat(report.getBytesSaved(), greaterThan(0L));
+    }
+
+    @Test
+    public void testWrap_leavesTemplatesAsTheyAre() {
+        ValueDeduplicator unit = ValueDeduplicator.builder().share(Pool.class).mapper(mapper).build();
+        TemplateResolver<Config> resolver = unit.wrap(new CompiledSiloTemplateResolver<>(Config.class, mapper));
+        Config other = copy(template);
+        Pool otherPool = other.pool;
+
+        Config first = resolver.resolve("S1", template);
+        Config second = resolver.resolve("S2", other);
+        Config third = resolver.resolve("S3", template);
+        Config fourth = resolver.resolve("S4", other);
+
+        assertThat(other.pool, sameInstance(otherPool));
+        assertThat(first.pool, sameInstance(template.pool));
+        assertThat(second.pool, sameInstance(template.pool));
+        assertThat(third.pool, sameInstance(template.pool));
+        assertThat(fourth.pool, sameInstance(template.pool));
+        assertThat(unit.getReport().getValues(), is(4L));
+    }
+
+    @Test
+    public void testWrap_keepsTheVariablesOfRoutes() {
+        ValueDeduplicator unit = ValueDeduplicator.builder().share(Pool.class).mapper(mapper).build();
+        Config preview = copy(template);
+        preview.setTemplate(false);
+        preview.url = "https://{{branch}}.preview.cvent.com/pr/{{number}}";
+        MultiEnvAware<Config> environments = new MultiEnvAware<>();
+        environments.put("template", template);
+        environments.put("preview-template", preview);
+        environments.setTemplateRoutes(TemplateRoutes.builder()
+                .route("pr-{number:digits}-{branch}", "preview-template")
+                .build());
+        MultiEnvAware<Config> routed = environments.convert((env, conf) -> conf,
+                unit.wrap(new RoutedTemplateResolver<>(Config.class, mapper)));
+
+        Config resolved = routed.get("pr-118-search");
+
+        assertThat(resolved.url, is("https://search.preview.cvent.com/pr/118"));
+        assertThat(resolved.pool, sameInstance(routed.get("S1").pool));
+    }
+
+    @Test
+    public void testDeduplicate_keepsDifferentObjects() {
+        ValueDeduplicator unit = ValueDeduplicator.builder().share(Pool.class).build();
+
+        Config first = unit.deduplicate(copy(template));
+        Config second = copy(template);
+        second.pool.maxSize = 64;
+        second = unit.deduplicate(second);
+
+        assertThat(first.pool, not(sameInstance(second.pool)));
+        assertThat(second.pool.maxSize, is(64));
+        assertThat(first.pool.driver, sameInstance(second.pool.driver));
+        assertThat(first.pool.timeout, sameInstance(second.pool.timeout));
+        assertThat(unit.getReport().getSharedObjects(), is(0L));
+    }
+
+    @Test
+    public void testDeduplicate_sharesEqualValuesAndLeavesFinalFields() {
+        ValueDeduplicator unit = ValueDeduplicator.builder().share(Endpoint.class).build();
+
+        Endpoint first = unit.deduplicate(new Endpoint(new String("a1-dba.cvent.com")));
+        Endpoint second = unit.deduplicate(new Endpoint(new String("a1-dba.cvent.com")));
+        Labeled labeled = new Labeled(new String("service-user"));
+        Labeled other = unit.deduplicate(new Labeled(new String("service-user")));
+        unit.deduplicate(labeled);
+
+        assertThat(second, sameInstance(first));
+        assertThat(unit.getReport().getSharedObjects(), is(1L));
+        assertThat(labeled.label, not(sameInstance(other.label)));
+    }
+
+    private Config copy(Config config) {
+        return mapper.convertValue(mapper.valueToTree(config), Config.class);
+    }
+
+    /**
+     * Test class for multi env configs
+     */
+    private static class Config extends BaseEnvironmentConfiguration {
+
+        @JsonProperty
+        private String url;
+        @JsonProperty
+        private String user;
+        @JsonProperty
+        private List<String> hosts;
+        @JsonProperty
+        private Pool pool;
+    }
+
+    /**
+     * Test class for a nested config that doesn't depend on the environment
+     */
+    private static class Pool {
+
+        @JsonProperty
+        private String driver;
+        @JsonProperty
+        private int maxSize;
+        @JsonProperty
+        private Duration timeout;
+    }
+
+    /**
+     * Test class for a shared config that defines equals
+     */
+    private static final class Endpoint {
+
+        private String host;
+
+        private Endpoint(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Endpoint && host.equals(((Endpoint) other).host);
+        }
+
+        @Override
+        public int hashCode() {
+            return host.hashCode();
+        }
+    }
+
+    /**
+     * Test class with a final field, which is never rewritten
+     */
+    private static final class Labeled {
+
+        private final String label;
+
+        private Labeled(String label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.cvent.pangaea.admin;
+
+import com.cvent.pangaea.EnvironmentEntry;
+import com.cvent.pangaea.MultiEnvAware;
+import com.google.common.collect.ImmutableMultimap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for MultiEnvAdmin and its tasks
+ */
+public class MultiEnvAdminTest {
+
+    private MultiEnvAware<Pool> pools;
+    private MultiEnvAdmin admin;
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Before
+    public void initialize() {
+        pools = new MultiEnvAware<>();
+        pools.put("P2", new Pool("P2"));
+        pools.setCreationFunction(env -> {
+            created.incrementAndGet();
+            return new Pool(env);
+        });
+        admin = new MultiEnvAdmin().register("pools", pools);
+    }
+
+    private static String run(MultiEnvTask task, String... parameters) throws Exception {
+        ImmutableMultimap.Builder<String, String> builder = ImmutableMultimap.builder();
+        for (int i = 0; i < parameters.length; i += 2) {
+            builder.put(parameters[i], parameters[i + 1]);
+        }
+        StringWriter output = new StringWriter();
+        task.execute(builder.build(), new PrintWriter(output));
+        return output.toString();
+    }
+
+    @Test
+    public void testListShowsOriginAgeAndAccesses() throws Exception {
+        pools.get("S410");
+        pools.get("S410");
+        pools.get("P2");
+
+        List<EnvironmentEntry> entries = admin.describe("pools").get("pools");
+        assertEquals("P2", entries.get(0).getEnvironment());
+        assertEquals(EnvironmentEntry.Origin.CONFIGURED, entries.get(0).getOrigin());
+        assertNull(entries.get(0).getCreated());
+        assertEquals(1, entries.get(0).getAccessCount());
+        assertEquals(EnvironmentEntry.Origin.CREATED, entries.get(1).getOrigin());
+        assertEquals(2, entries.get(1).getAccessCount());
+        assertTrue(entries.get(1).getAge() != null);
+
+        String listed = run(new EnvironmentListTask(admin));
+        assertTrue(listed, listed.startsWith("pools:\n  P2 CONFIGURED accesses=1\n  S410 CREATED age="));
+    }
+
+    @Test
+    public void testRefreshSwapsAndClosesTheOldValue() throws Exception {
+        Pool old = pools.get("S410");
+
+        assertEquals("S410: refreshed\n", run(new EnvironmentRefreshTask(admin), "environment", "S410"));
+        Pool refreshed = pools.get("S410");
+        assertNotSame(old, refreshed);
+        assertTrue(old.closed);
+        assertFalse(refreshed.closed);
+        assertEquals(1, admin.describe(null).get("pools").get(1).getAccessCount());
+
+        assertEquals("P2: Environment P2 is configured, reconfigure it to replace its value\n",
+                run(new EnvironmentRefreshTask(admin), "instance", "pools", "environment", "P2"));
+    }
+
+    @Test
+    public void testEvictDropsTheValueUntilTheNextRequest() throws Exception {
+        Pool old = pools.get("S410");
+
+        assertEquals("S410: evicted\nS411: not present\n",
+                run(new EnvironmentEvictTask(admin), "environment", "S410,S411"));
+        assertTrue(old.closed);
+        assertFalse(pools.containsKey("S410"));
+        assertNotSame(old, pools.get("S410"));
+        assertSame(pools.get("P2"), pools.get("P2"));
+    }
+
+    @Test
+    public void testPreloadResolvesInParallel() throws Exception {
+        String output = run(new EnvironmentPreloadTask(admin), "environment", "S1", "environment", "S2,S3",
+                "parallelism", "2");
+
+        assertTrue(output, output.contains("S3: "));
+        assertEquals(3, created.get());
+        assertEquals(4, pools.describeEntries().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownInstance() throws Exception {
+        run(new EnvironmentEvictTask(admin), "instance", "clients", "environment", "S410");
+    }
+
+    /**
+     * A value that has to be shut down
+     */
+    private static final class Pool implements AutoCloseable {
+
+        private final String environment;
+        private volatile boolean closed;
+
+        private Pool(String environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public String toString() {
+            return environment;
+        }
+    }
+}
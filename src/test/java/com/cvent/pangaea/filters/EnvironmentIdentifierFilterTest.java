@@ -0,0 +1,131 @@
+package com.cvent.pangaea.filters;
+
+import com.codahale.metrics.MetricRegistry;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.filter.EnvironmentIdentifierFilter;
+import com.cvent.pangaea.filter.RequestEnvironment;
+import com.cvent.pangaea.util.EnvironmentUtil;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.UriInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for EnvironmentIdentifierFilter
+ */
+public class EnvironmentIdentifierFilterTest {
+
+    private EnvironmentIdentifierFilter filter;
+    private MultiEnvAware<String> environments;
+    private RequestEnvironment<String> handle;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void initialize() {
+        filter = new EnvironmentIdentifierFilter();
+        environments = mock(MultiEnvAware.class);
+        when(environments.get("S410")).thenReturn("s410-value");
+        when(environments.get((Object) null)).thenReturn("default-value");
+        handle = filter.register(environments);
+    }
+
+    @After
+    public void cleanup() {
+        filter.filter(null, null);
+    }
+
+    private static ContainerRequestContext request(String environment) {
+        UriInfo info = mock(UriInfo.class);
+        when(info.getRequestUri()).thenReturn(URI.create(environment == null
+                ? "http://localhost/events?limit=5" : "http://localhost/events?limit=5&environment=" + environment));
+        ContainerRequestContext context = mock(ContainerRequestContext.class);
+        when(context.getUriInfo()).thenReturn(info);
+        return context;
+    }
+
+    @Test
+    public void testResolvesOncePerRequest() {
+        filter.filter(request("S410"));
+        assertEquals("S410", EnvironmentUtil.getEnvironment());
+        assertEquals("s410-value", handle.get());
+        assertEquals("s410-value", handle.get());
+        verify(environments, times(1)).get("S410");
+
+        filter.filter(request("S410"), null);
+        assertNull(EnvironmentUtil.getEnvironment());
+
+        filter.filter(request("S410"));
+        assertEquals("s410-value", handle.get());
+        verify(environments, times(2)).get("S410");
+    }
+
+    @Test
+    public void testRequestWithoutEnvironmentGetsDefault() {
+        EnvironmentUtil.setEnvironment("stale");
+        filter.filter(request(null));
+        assertNull(EnvironmentUtil.getEnvironment());
+        assertEquals("default-value", handle.get());
+    }
+
+    @Test
+    public void testOtherEnvironmentBypassesRequestValue() {
+        filter.filter(request("S410"));
+        assertEquals("s410-value", handle.get());
+        when(environments.get("P2")).thenReturn("p2-value");
+        assertEquals("p2-value", EnvironmentUtil.supplyWithEnvironment("P2", handle::get));
+        assertEquals("s410-value", handle.get());
+    }
+
+    @Test
+    public void testMetricsAreBoundedPerEnvironment() {
+        MetricRegistry registry = new MetricRegistry();
+        filter.setMetrics(registry, 1);
+        when(environments.containsKey("S410")).thenReturn(true);
+        when(environments.containsKey("P2")).thenReturn(true);
+        when(environments.isResolvable(anyString())).thenReturn(true);
+
+        for (String environment : new String[]{"S410", "S410", "P2", "P2", "junk", "junk", null}) {
+            ContainerRequestContext context = request(environment);
+            Map<String, Object> properties = new HashMap<>();
+            doAnswer(invocation -> properties.put(invocation.getArgument(0), invocation.getArgument(1)))
+                    .when(context).setProperty(anyString(), any());
+            when(context.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.getArgument(0)));
+            filter.filter(context);
+            filter.filter(context, null);
+        }
+
+        String prefix = "com.cvent.pangaea.filter.EnvironmentIdentifierFilter.requests.";
+        assertEquals(2, registry.timer(prefix + "S410").getCount());
+        assertEquals(2, registry.timer(prefix + "other").getCount());
+        assertEquals(2, registry.timer(prefix + "unknown").getCount());
+        assertEquals(1, registry.timer(prefix + "none").getCount());
+        assertEquals(4, registry.getTimers().size());
+        // Unknown and other environments are remembered after the first request
+        verify(environments, times(1)).containsKey("junk");
+        verify(environments, times(1)).containsKey("P2");
+
+        filter.setMetrics(null, 0);
+        assertTrue(registry.getNames().isEmpty());
+    }
+
+    @Test
+    public void testRegisterTwiceReturnsSameHandle() {
+        assertSame(handle, filter.register(environments));
+    }
+}
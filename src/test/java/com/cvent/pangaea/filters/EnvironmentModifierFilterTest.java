@@ -1,6 +1,11 @@
 package com.cvent.pangaea.filters;
 
+import com.cvent.pangaea.EnvironmentAliases;
+import com.cvent.pangaea.filter.EnvironmentIdentifierFilter;
 import com.cvent.pangaea.filter.EnvironmentModifierFilter;
+import com.cvent.pangaea.util.EnvironmentUtil;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -11,6 +16,7 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.UriInfo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -61,4 +67,61 @@ public class EnvironmentModifierFilterTest {
 
         assertEquals("staging", containerRequestContext.getUriInfo().getQueryParameters().getFirst("environment"));
     }
+
+    private static ContainerRequest request(String uri) {
+        return new ContainerRequest(URI.create("http://www.cvent.com/"), URI.create(uri), "GET", null,
+                new MapPropertiesDelegate());
+    }
+
+    @Test
+    public void testRewritesOnlyTheEnvironment() {
+        ContainerRequest request = request("http://www.cvent.com/events?limit=5&environment=prod&q=a%26b#top");
+        new EnvironmentModifierFilter("P2", "production", "prod").filter(request);
+
+        assertEquals(URI.create("http://www.cvent.com/events?limit=5&environment=P2&q=a%26b#top"),
+                request.getRequestUri());
+        assertEquals("a&b", request.getUriInfo().getQueryParameters().getFirst("q"));
+
+        EnvironmentIdentifierFilter identifierFilter = new EnvironmentIdentifierFilter();
+        identifierFilter.filter(request);
+        assertEquals("P2", EnvironmentUtil.getEnvironment());
+        identifierFilter.filter(request, null);
+    }
+
+    @Test
+    public void testKeepsUnchangedUri() {
+        ContainerRequest request = request("http://www.cvent.com/events?environment=S410&limit=5");
+        URI original = request.getRequestUri();
+        new EnvironmentModifierFilter("P2", "production", "prod").filter(request);
+
+        assertSame(original, request.getRequestUri());
+    }
+
+    @Test
+    public void testDecodesEnvironment() {
+        ContainerRequest request = request("http://www.cvent.com/events?environment=S%34%31%30&environment=P2");
+        EnvironmentIdentifierFilter identifierFilter = new EnvironmentIdentifierFilter();
+        identifierFilter.filter(request);
+        assertEquals("S410", EnvironmentUtil.getEnvironment());
+        identifierFilter.filter(request, null);
+    }
+
+    @Test
+    public void testIdentifiesAliasWithoutRewriting() {
+        EnvironmentAliases aliases = EnvironmentAliases.builder()
+                .alias("P2", "production")
+                .caseInsensitive(true)
+                .build();
+        ContainerRequest request = request("http://www.cvent.com/events?environment=PRODUCTION");
+        URI original = request.getRequestUri();
+        EnvironmentIdentifierFilter identifierFilter = new EnvironmentIdentifierFilter(aliases);
+        identifierFilter.filter(request);
+
+        assertEquals("P2", EnvironmentUtil.getEnvironment());
+        assertSame(original, request.getRequestUri());
+        identifierFilter.filter(request, null);
+
+        new EnvironmentModifierFilter(aliases).filter(request);
+        assertEquals(URI.create("http://www.cvent.com/events?environment=P2"), request.getRequestUri());
+    }
 }
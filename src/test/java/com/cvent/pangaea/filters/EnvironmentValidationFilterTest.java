@@ -0,0 +1,105 @@
+package com.cvent.pangaea.filters;
+
+import com.cvent.pangaea.BaseEnvironmentConfiguration;
+import com.cvent.pangaea.LazyMultiEnvAware;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.filter.EnvironmentValidationFilter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for EnvironmentValidationFilter
+ */
+public class EnvironmentValidationFilterTest {
+
+    private MultiEnvAware<BaseEnvironmentConfiguration> configured;
+    private MultiEnvAware<BaseEnvironmentConfiguration> templated;
+
+    @Before
+    public void initialize() {
+        configured = new MultiEnvAware<>();
+        configured.put("S410", new BaseEnvironmentConfiguration());
+        configured.put("P2", new BaseEnvironmentConfiguration());
+
+        templated = new LazyMultiEnvAware<>((key, value) -> value);
+        BaseEnvironmentConfiguration template = new BaseEnvironmentConfiguration();
+        template.setTemplate(true);
+        BaseEnvironmentConfiguration defaulted = new BaseEnvironmentConfiguration();
+        defaulted.setDefaultEnvironmentConfiguration(true);
+        templated.put("template", template);
+        templated.put("P2", defaulted);
+    }
+
+    private static ContainerRequestContext request(String environment) {
+        UriInfo info = mock(UriInfo.class);
+        when(info.getRequestUri()).thenReturn(URI.create(environment == null
+                ? "http://localhost/events?limit=5" : "http://localhost/events?limit=5&environment=" + environment));
+        ContainerRequestContext context = mock(ContainerRequestContext.class);
+        when(context.getUriInfo()).thenReturn(info);
+        return context;
+    }
+
+    private static String rejection(EnvironmentValidationFilter filter, String environment) {
+        ContainerRequestContext context = request(environment);
+        filter.filter(context);
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(context).abortWith(response.capture());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getValue().getStatus());
+        return new String((byte[]) response.getValue().getEntity(), StandardCharsets.UTF_8);
+    }
+
+    private static void accepted(EnvironmentValidationFilter filter, String environment) {
+        ContainerRequestContext context = request(environment);
+        filter.filter(context);
+        verify(context, never()).abortWith(any());
+    }
+
+    @Test
+    public void testConfiguredEnvironments() {
+        EnvironmentValidationFilter filter = new EnvironmentValidationFilter(Collections.singletonList(configured));
+
+        accepted(filter, null);
+        accepted(filter, "S410");
+        assertEquals("{\"code\":400,\"message\":\"Failed to find configuration for environment S999\"}",
+                rejection(filter, "S999"));
+        assertEquals("{\"code\":400,\"message\":\"[environment] property is mandatory and can't be empty\"}",
+                rejection(filter, ""));
+    }
+
+    @Test
+    public void testTemplateRules() {
+        EnvironmentValidationFilter filter = new EnvironmentValidationFilter(Collections.singletonList(templated),
+                Pattern.compile("S\\d+"));
+
+        accepted(filter, "");
+        accepted(filter, "P2");
+        accepted(filter, "S999");
+        rejection(filter, "junk");
+    }
+
+    @Test
+    public void testEveryInstanceMustResolve() {
+        EnvironmentValidationFilter filter = new EnvironmentValidationFilter(Arrays.asList(configured, templated));
+
+        accepted(filter, "P2");
+        accepted(filter, "S410");
+        rejection(filter, "S999");
+        rejection(filter, "");
+    }
+}
@@ -0,0 +1,123 @@
+package com.cvent.pangaea.lifecycle;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.cvent.pangaea.BaseEnvironmentConfiguration;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.MultiEnvSupportException;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.jackson.Jackson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.validation.constraints.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for EnvironmentConfigWatcher
+ */
+public class EnvironmentConfigWatcherTest {
+
+    private static final String CONFIG = "server:\n"
+            + "  port: 8080\n"
+            + "environmentConfig:\n"
+            + "  S1:\n"
+            + "    url: http://s1\n"
+            + "    defaultEnvironmentConfiguration: true\n"
+            + "  S2:\n"
+            + "    url: http://s2\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+    private Path file;
+    private MultiEnvAware<UrlConfig> envs;
+    private EnvironmentConfigWatcher<UrlConfig> watcher;
+
+    @Before
+    public void setup() throws Exception {
+        file = folder.newFile("config.yml").toPath();
+        write(CONFIG);
+        JsonNode root = mapper.readTree(new YAMLFactory().createParser(file.toFile()));
+        envs = mapper.readerFor(mapper.getTypeFactory().constructParametricType(MultiEnvAware.class, UrlConfig.class))
+                .readValue(root.get("environmentConfig"));
+        watcher = new EnvironmentConfigWatcher<>(envs, UrlConfig.class, file, mapper);
+        watcher.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        watcher.stop();
+    }
+
+    @Test
+    public void testReload_rebindsOnlyChangedEnvironments() throws Exception {
+        UrlConfig s1 = envs.get("S1");
+        UrlConfig s2 = envs.get("S2");
+
+        assertThat(watcher.reload(), is(false));
+
+        write(CONFIG.replace("http://s2", "http://s2-new") + "  S3:\n    url: http://s3\n");
+
+        assertThat(watcher.reload(), is(true));
+        assertThat(envs.get("S1"), sameInstance(s1));
+        assertThat(envs.get(), sameInstance(s1));
+        assertThat(envs.get("S2"), not(sameInstance(s2)));
+        assertThat(envs.get("S2").url, is("http://s2-new"));
+        assertThat(envs.get("S3").url, is("http://s3"));
+    }
+
+    @Test
+    public void testReload_invalidConfigurationKeepsCurrentEnvironments() throws Exception {
+        UrlConfig s2 = envs.get("S2");
+
+        write(CONFIG.replace("    url: http://s2\n", "    defaultEnvironmentConfiguration: false\n"));
+
+        try {
+            watcher.reload();
+            fail("Expected an environment without url to be rejected");
+        } catch (MultiEnvSupportException ex) {
+            assertThat(ex.getMessage(), is("Invalid UrlConfig configuration for environment S2: url may not be null"));
+        }
+        assertThat(envs.get("S2"), sameInstance(s2));
+    }
+
+    @Test
+    public void testWatch_reloadsWhenTheFileChanges() throws Exception {
+        write(CONFIG.replace("http://s2", "http://s2-new"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!"http://s2-new".equals(envs.get("S2").url) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(envs.get("S2").url, is("http://s2-new"));
+    }
+
+    private void write(String config) throws IOException {
+        Files.write(file, config.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test class for reloaded environments
+     */
+    private static class UrlConfig extends BaseEnvironmentConfiguration {
+
+        @NotNull
+        @JsonProperty
+        private String url;
+    }
+}
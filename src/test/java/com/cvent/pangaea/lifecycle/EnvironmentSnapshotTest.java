@@ -0,0 +1,113 @@
+package com.cvent.pangaea.lifecycle;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.cvent.pangaea.BaseEnvironmentConfiguration;
+import com.cvent.pangaea.MultiEnvAware;
+import com.cvent.pangaea.SiloTemplateResolver;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.jackson.Jackson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for EnvironmentSnapshot
+ */
+public class EnvironmentSnapshotTest {
+
+    private static final String CONFIG = "environmentConfig:\n"
+            + "  S1:\n"
+            + "    url: http://s1\n"
+            + "  template:\n"
+            + "    url: http://sXXX\n"
+            + "    template: true\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+    private Path file;
+    private Path snapshot;
+
+    @Before
+    public void setup() throws Exception {
+        file = folder.newFile("config.yml").toPath();
+        snapshot = folder.getRoot().toPath().resolve("environments.snapshot");
+        write(CONFIG);
+    }
+
+    @Test
+    public void testStart_restoresResolvedEnvironmentsOfTheSameConfiguration() throws Exception {
+        MultiEnvAware<UrlConfig> first = read();
+        EnvironmentSnapshot<UrlConfig> unit = new EnvironmentSnapshot<>(first, UrlConfig.class, snapshot, file, mapper);
+        unit.start();
+        assertThat(unit.getRestored().isEmpty(), is(true));
+        first.get("S5");
+        first.get("S6");
+        unit.stop();
+
+        MultiEnvAware<UrlConfig> second = read();
+        unit = new EnvironmentSnapshot<>(second, UrlConfig.class, snapshot, file, mapper);
+        unit.start();
+        assertThat(unit.getRestored(), is(new TreeSet<>(Arrays.asList("S5", "S6"))));
+        assertThat(second.getResolvedEnvironments().keySet(), is(unit.getRestored()));
+        assertThat(second.get("S5").url, is("http://s5"));
+        assertThat(second.get("S1").url, is("http://s1"));
+        assertThat(unit.save(), is(2));
+    }
+
+    @Test
+    public void testStart_ignoresSnapshotOfAnotherConfiguration() throws Exception {
+        MultiEnvAware<UrlConfig> first = read();
+        EnvironmentSnapshot<UrlConfig> unit = new EnvironmentSnapshot<>(first, UrlConfig.class, snapshot, file, mapper);
+        unit.start();
+        first.get("S5");
+        assertThat(unit.save(), is(1));
+
+        write(CONFIG.replace("http://sXXX", "https://sXXX"));
+        MultiEnvAware<UrlConfig> second = read();
+        unit = new EnvironmentSnapshot<>(second, UrlConfig.class, snapshot, file, mapper);
+        unit.start();
+        assertThat(unit.getRestored(), is(Collections.emptySet()));
+        assertThat(second.get("S5").url, is("https://s5"));
+
+        Files.write(snapshot, new byte[]{1, 2, 3});
+        unit = new EnvironmentSnapshot<>(read(), UrlConfig.class, snapshot, file, mapper);
+        unit.start();
+        assertThat(unit.getRestored(), is(Collections.emptySet()));
+    }
+
+    private MultiEnvAware<UrlConfig> read() throws IOException {
+        JsonNode root = mapper.readTree(new YAMLFactory().createParser(file.toFile()));
+        MultiEnvAware<UrlConfig> bound = mapper.readerFor(mapper.getTypeFactory()
+                .constructParametricType(MultiEnvAware.class, UrlConfig.class))
+                .readValue(root.get("environmentConfig"));
+        return bound.convert((env, value) -> value, new SiloTemplateResolver<>(UrlConfig.class, mapper));
+    }
+
+    private void write(String config) throws IOException {
+        Files.write(file, config.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test class for snapshotted environments
+     */
+    private static class UrlConfig extends BaseEnvironmentConfiguration {
+
+        @JsonProperty
+        private String url;
+    }
+}
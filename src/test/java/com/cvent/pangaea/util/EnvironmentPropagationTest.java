@@ -0,0 +1,72 @@
+package com.cvent.pangaea.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for EnvironmentPropagation
+ */
+public class EnvironmentPropagationTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void initialize() {
+        executor = EnvironmentPropagation.executorService(Executors.newSingleThreadExecutor());
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+        EnvironmentUtil.removeEnvironment();
+    }
+
+    @Test
+    public void testExecutorServicePropagatesSubmittingEnvironment() throws Exception {
+        EnvironmentUtil.setEnvironment("S410");
+        Future<String> first = executor.submit(EnvironmentUtil::getEnvironment);
+        EnvironmentUtil.setEnvironment("P2");
+        List<Future<String>> rest = executor.invokeAll(Arrays.<Callable<String>>asList(
+                EnvironmentUtil::getEnvironment));
+        EnvironmentUtil.removeEnvironment();
+        Future<String> none = executor.submit(EnvironmentUtil::getEnvironment);
+
+        assertEquals("S410", first.get());
+        assertEquals("P2", rest.get(0).get());
+        assertNull(none.get());
+    }
+
+    @Test
+    public void testCompletableFuturePropagatesEnvironment() throws Exception {
+        EnvironmentUtil.setEnvironment("S410");
+        CompletableFuture<String> future = EnvironmentPropagation.supplyAsync(EnvironmentUtil::getEnvironment, executor)
+                .thenApplyAsync(EnvironmentPropagation.function(value -> value + EnvironmentUtil.getEnvironment()),
+                        executor);
+
+        assertEquals("S410S410", future.get());
+    }
+
+    @Test
+    public void testRunWithEnvironmentRestoresPrevious() {
+        EnvironmentUtil.setEnvironment("S410");
+        String inner = EnvironmentUtil.supplyWithEnvironment("P2", EnvironmentUtil::getEnvironment);
+
+        assertEquals("P2", inner);
+        assertEquals("S410", EnvironmentUtil.getEnvironment());
+
+        EnvironmentUtil.removeEnvironment();
+        EnvironmentUtil.runWithEnvironment("P2", () -> assertEquals("P2", EnvironmentUtil.getEnvironment()));
+        assertNull(EnvironmentUtil.getEnvironment());
+    }
+}
@@ -0,0 +1,80 @@
+package com.cvent.pangaea.util;
+
+import java.util.NoSuchElementException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for ScopedEnvironment, against a stand-in with the API of {@code java.lang.ScopedValue} since the tests run on
+ * Java 8
+ */
+public class ScopedEnvironmentTest {
+
+    @Test
+    public void testBoundNullHidesTheThreadEnvironment() {
+        ScopedEnvironment unit = ScopedEnvironment.create(FakeScopedValue.class.getName());
+        assertNotNull(unit);
+        ThreadLocal<String> thread = new ThreadLocal<>();
+        thread.set("S410");
+
+        assertEquals("S410", unit.get(thread));
+        unit.run("P2", () -> assertEquals("P2", unit.get(thread)));
+        unit.run(null, () -> assertNull(unit.get(thread)));
+        assertEquals("S410", unit.get(thread));
+    }
+
+    /**
+     * Binds values per thread, like {@code java.lang.ScopedValue}
+     */
+    public static final class FakeScopedValue {
+
+        private final ThreadLocal<Object[]> binding = new ThreadLocal<>();
+
+        public static FakeScopedValue newInstance() {
+            return new FakeScopedValue();
+        }
+
+        public static Carrier where(FakeScopedValue key, Object value) {
+            return new Carrier(key, value);
+        }
+
+        public boolean isBound() {
+            return binding.get() != null;
+        }
+
+        public Object get() {
+            Object[] bound = binding.get();
+            if (bound == null) {
+                throw new NoSuchElementException();
+            }
+            return bound[0];
+        }
+
+        /**
+         * A binding of a value, like {@code java.lang.ScopedValue.Carrier}
+         */
+        public static final class Carrier {
+
+            private final FakeScopedValue key;
+            private final Object value;
+
+            private Carrier(FakeScopedValue key, Object value) {
+                this.key = key;
+                this.value = value;
+            }
+
+            public void run(Runnable task) {
+                Object[] previous = key.binding.get();
+                key.binding.set(new Object[] {value});
+                try {
+                    task.run();
+                } finally {
+                    key.binding.set(previous);
+                }
+            }
+        }
+    }
+}